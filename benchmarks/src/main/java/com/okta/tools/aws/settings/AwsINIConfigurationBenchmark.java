@@ -0,0 +1,82 @@
+/*
+ * Copyright 2019 Okta
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.okta.tools.aws.settings;
+
+import com.okta.tools.benchmarks.Fixtures;
+import org.openjdk.jmh.annotations.*;
+import software.amazon.awssdk.regions.Region;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading and writing AWS credentials files of increasing size.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AwsINIConfigurationBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    public int profiles;
+
+    private String credentialsFile;
+    private AwsINIConfiguration configuration;
+
+    @Setup
+    public void setup() throws IOException {
+        credentialsFile = Fixtures.credentialsFile(profiles);
+        configuration = read();
+    }
+
+    @Benchmark
+    public AwsINIConfiguration read() throws IOException {
+        AwsINIConfiguration iniConfiguration = new AwsINIConfiguration();
+        iniConfiguration.read(new StringReader(credentialsFile));
+        return iniConfiguration;
+    }
+
+    @Benchmark
+    public String write() {
+        StringWriter writer = new StringWriter(credentialsFile.length());
+        configuration.write(writer);
+        return writer.toString();
+    }
+
+    @Benchmark
+    public String updateProfile() throws IOException {
+        return updateProfile(false);
+    }
+
+    @Benchmark
+    public String patchProfile() throws IOException {
+        return updateProfile(true);
+    }
+
+    // What a login does to the file: load it, replace one profile's credentials and save it
+    private String updateProfile(boolean patch) throws IOException {
+        Credentials credentials = new Credentials(new StringReader(credentialsFile), patch);
+        credentials.addOrUpdateProfile("profile" + (profiles / 2), "AKIAUPDATED", "secret", Region.US_EAST_1, "token");
+        StringWriter writer = new StringWriter(credentialsFile.length());
+        credentials.save(writer);
+        return writer.toString();
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2019 Okta
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.okta.tools.aws.settings;
+
+import com.okta.tools.benchmarks.Fixtures;
+import com.okta.tools.models.Profile;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Looking up one profile in a file of increasing size, as every run does before deciding whether to log in.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IniSectionIndexBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    public int profiles;
+
+    private Path directory;
+    private Path profilesFile;
+    private String profile;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("okta-benchmark");
+        profilesFile = Files.write(directory.resolve("profiles"), Fixtures.profilesFile(profiles).getBytes(StandardCharsets.UTF_8));
+        profile = "profile" + (profiles / 2);
+        IniSectionIndex.readSection(profilesFile, profile);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Benchmark
+    public Optional<String> indexedSection() throws IOException {
+        return IniSectionIndex.readSection(profilesFile, profile);
+    }
+
+    @Benchmark
+    public Optional<Profile> parsedFile() throws IOException {
+        return new MultipleProfile(new StringReader(new String(Files.readAllBytes(profilesFile), StandardCharsets.UTF_8)))
+                .getProfile(profile);
+    }
+}
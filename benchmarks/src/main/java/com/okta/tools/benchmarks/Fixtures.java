@@ -0,0 +1,132 @@
+/*
+ * Copyright 2019 Okta
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.okta.tools.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Generates synthetic inputs of a given size for the benchmarks, shaped like what Okta and AWS return.
+ */
+public final class Fixtures {
+    private Fixtures() {}
+
+    /**
+     * @param profiles The number of profiles
+     * @return An AWS credentials file with a session credentials profile for each of the given number
+     */
+    public static String credentialsFile(int profiles) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < profiles; i++) {
+            builder.append("[profile").append(i).append("]\n")
+                    .append("aws_access_key_id = ASIA").append(String.format("%016d", i)).append('\n')
+                    .append("aws_secret_access_key = ").append(repeat('s', 40)).append('\n')
+                    .append("aws_session_token = ").append(repeat('t', 800)).append('\n')
+                    .append("region = us-east-1\n\n");
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @param profiles The number of profiles
+     * @return An ~/.okta/profiles file with an entry for each of the given number
+     */
+    public static String profilesFile(int profiles) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < profiles; i++) {
+            builder.append("[profile").append(i).append("]\n")
+                    .append("source_profile = profile").append(i).append('\n')
+                    .append("okta_roleArn = arn:aws:iam::").append(String.format("%012d", i)).append(":role/Developer\n")
+                    .append("region = us-east-1\n")
+                    .append("profile_expiry = 2030-01-01T00:00:00Z\n\n");
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @param roles The number of role attribute values
+     * @return A base64 encoded SAML response granting the given number of roles, one per account
+     */
+    public static String samlResponse(int roles) {
+        StringBuilder builder = new StringBuilder()
+                .append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>")
+                .append("<saml2p:Response xmlns:saml2p=\"urn:oasis:names:tc:SAML:2.0:protocol\"")
+                .append(" Destination=\"https://signin.aws.amazon.com/saml\" ID=\"id1\" IssueInstant=\"2019-01-08T13:02:03.020Z\" Version=\"2.0\">")
+                .append("<saml2p:Status><saml2p:StatusCode Value=\"urn:oasis:names:tc:SAML:2.0:status:Success\"/></saml2p:Status>")
+                .append("<saml2:Assertion xmlns:saml2=\"urn:oasis:names:tc:SAML:2.0:assertion\" ID=\"id2\" IssueInstant=\"2019-01-08T13:02:03.020Z\" Version=\"2.0\">")
+                .append("<saml2:Issuer>http://www.okta.com/exk00000000000000000</saml2:Issuer>")
+                .append("<saml2:Subject><saml2:NameID>user@example.com</saml2:NameID></saml2:Subject>")
+                .append("<saml2:Conditions NotBefore=\"2019-01-08T12:57:03.020Z\" NotOnOrAfter=\"2019-01-08T13:07:03.020Z\">")
+                .append("<saml2:AudienceRestriction><saml2:Audience>urn:amazon:webservices</saml2:Audience></saml2:AudienceRestriction>")
+                .append("</saml2:Conditions>")
+                .append("<saml2:AuthnStatement AuthnInstant=\"2019-01-08T13:02:03.020Z\" SessionNotOnOrAfter=\"2019-01-08T15:02:03.020Z\">")
+                .append("<saml2:AuthnContext><saml2:AuthnContextClassRef>urn:oasis:names:tc:SAML:2.0:ac:classes:PasswordProtectedTransport</saml2:AuthnContextClassRef></saml2:AuthnContext>")
+                .append("</saml2:AuthnStatement>")
+                .append("<saml2:AttributeStatement>")
+                .append("<saml2:Attribute Name=\"https://aws.amazon.com/SAML/Attributes/Role\">");
+        for (int i = 0; i < roles; i++) {
+            String account = accountId(i);
+            builder.append("<saml2:AttributeValue>arn:aws:iam::").append(account).append(":saml-provider/okta,arn:aws:iam::")
+                    .append(account).append(":role/Role").append(i).append("</saml2:AttributeValue>");
+        }
+        builder.append("</saml2:Attribute>")
+                .append("<saml2:Attribute Name=\"https://aws.amazon.com/SAML/Attributes/RoleSessionName\">")
+                .append("<saml2:AttributeValue>user@example.com</saml2:AttributeValue></saml2:Attribute>")
+                .append("<saml2:Attribute Name=\"https://aws.amazon.com/SAML/Attributes/SessionDuration\">")
+                .append("<saml2:AttributeValue>3600</saml2:AttributeValue></saml2:Attribute>")
+                .append("</saml2:AttributeStatement></saml2:Assertion></saml2p:Response>");
+        return Base64.getEncoder().encodeToString(builder.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param accounts        The number of accounts
+     * @param rolesPerAccount The number of roles listed under each account
+     * @return An AWS SAML sign-in page listing the given accounts and roles
+     */
+    public static String signinPage(int accounts, int rolesPerAccount) {
+        StringBuilder builder = new StringBuilder()
+                .append("<!DOCTYPE html><html><head><title>Amazon Web Services Sign-In</title></head><body>")
+                .append("<form id=\"saml_form\" name=\"saml_form\" action=\"/saml\" method=\"post\">")
+                .append("<p>Select a role:</p><fieldset>");
+        for (int i = 0; i < accounts; i++) {
+            String account = accountId(i);
+            builder.append("<div class=\"saml-account\"><div onclick=\"expandCollapse(").append(i).append(");\">")
+                    .append("<div class=\"saml-account-name\">Account: account-").append(i).append(" (").append(account).append(")</div></div>")
+                    .append("<hr><div id=\"").append(i).append("\" class=\"saml-account\">");
+            for (int j = 0; j < rolesPerAccount; j++) {
+                String roleArn = "arn:aws:iam::" + account + ":role/Role" + j;
+                builder.append("<div class=\"saml-role\" onclick=\"checkRadio(this);\">")
+                        .append("<input type=\"radio\" name=\"roleIndex\" value=\"").append(roleArn)
+                        .append("\" class=\"saml-radio\" id=\"").append(roleArn).append("\">")
+                        .append("<label for=\"").append(roleArn).append("\" class=\"saml-role-description\">Role").append(j).append("</label>")
+                        .append("<span style=\"clear: both;\"></span></div>");
+            }
+            builder.append("</div></div>");
+        }
+        return builder.append("</fieldset></form></body></html>").toString();
+    }
+
+    private static String accountId(int index) {
+        return String.format("%012d", index);
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2019 Okta
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.okta.tools.helpers;
+
+import com.okta.tools.OktaAwsCliEnvironment;
+import org.apache.http.client.CookieStore;
+import org.apache.http.impl.client.BasicCookieStore;
+import org.apache.http.impl.cookie.BasicClientCookie;
+import org.openjdk.jmh.annotations.*;
+import software.amazon.awssdk.regions.Region;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Loading and storing the Okta session cookies file.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CookieHelperBenchmark {
+
+    private static final String OKTA_ORG = "example.okta.com";
+
+    @Param({"5", "50"})
+    public int cookies;
+
+    private Path cookiesDirectory;
+    private CookieHelper cookieHelper;
+    private CookieStore cookieStore;
+
+    @Setup
+    public void setup() throws IOException {
+        cookiesDirectory = Files.createTempDirectory("okta-cookies-benchmark");
+        OktaAwsCliEnvironment environment = new OktaAwsCliEnvironment(false, OKTA_ORG, null, null,
+                cookiesDirectory.toString(), null, null, null, 3600, Region.US_EAST_1, null, false, null);
+        cookieHelper = new CookieHelper(environment);
+        cookieStore = new BasicCookieStore();
+        for (int i = 0; i < cookies; i++) {
+            BasicClientCookie cookie = new BasicClientCookie("cookie" + i, "value" + i + "-0123456789abcdef");
+            cookie.setDomain(OKTA_ORG);
+            cookie.setPath("/");
+            cookieStore.addCookie(cookie);
+        }
+        cookieHelper.storeCookies(cookieStore);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(cookiesDirectory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public CookieStore loadCookies() throws IOException {
+        return cookieHelper.loadCookies();
+    }
+
+    @Benchmark
+    public void storeCookies() throws IOException {
+        cookieHelper.storeCookies(cookieStore);
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2019 Okta
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.okta.tools.helpers;
+
+import com.okta.tools.OktaAwsCliEnvironment;
+import org.openjdk.jmh.annotations.*;
+import software.amazon.awssdk.services.sts.model.AssumeRoleWithSamlResponse;
+import software.amazon.awssdk.services.sts.model.AssumedRoleUser;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deriving the profile name from the assumed role ARN.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProfileHelperBenchmark {
+
+    @Param({
+            "arn:aws:sts::123456789012:assumed-role/Admin/user@example.com",
+            "arn:aws-gov:sts::123456789012:assumed-role/Admin/user@example.com",
+            "arn:aws:sts::123456789012:federated-user/user@example.com"
+    })
+    public String assumedRoleArn;
+
+    private ProfileHelper profileHelper;
+    private AssumeRoleWithSamlResponse assumeResult;
+
+    @Setup
+    public void setup() {
+        profileHelper = new ProfileHelper(null, new OktaAwsCliEnvironment());
+        assumeResult = AssumeRoleWithSamlResponse.builder()
+                .assumedRoleUser(AssumedRoleUser.builder().arn(assumedRoleArn).build())
+                .build();
+    }
+
+    @Benchmark
+    public String getProfileName() {
+        return profileHelper.getProfileName(assumeResult);
+    }
+}
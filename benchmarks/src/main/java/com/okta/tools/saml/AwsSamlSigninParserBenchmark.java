@@ -0,0 +1,61 @@
+/*
+ * Copyright 2019 Okta
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.okta.tools.saml;
+
+import com.okta.tools.benchmarks.Fixtures;
+import com.okta.tools.models.AccountOption;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing AWS sign-in pages listing an increasing number of accounts.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AwsSamlSigninParserBenchmark {
+
+    private static final int ROLES_PER_ACCOUNT = 4;
+
+    @Param({"10", "100", "500"})
+    public int accounts;
+
+    private String signinPage;
+    private Document document;
+
+    @Setup
+    public void setup() {
+        signinPage = Fixtures.signinPage(accounts, ROLES_PER_ACCOUNT);
+        document = Jsoup.parse(signinPage, "https://signin.aws.amazon.com/saml");
+    }
+
+    @Benchmark
+    public List<AccountOption> parseAccountOptions() {
+        return AwsSamlSigninParser.parseAccountOptions(document);
+    }
+
+    @Benchmark
+    public List<AccountOption> parsePageAndAccountOptions() {
+        return AwsSamlSigninParser.parseAccountOptions(Jsoup.parse(signinPage, "https://signin.aws.amazon.com/saml"));
+    }
+}
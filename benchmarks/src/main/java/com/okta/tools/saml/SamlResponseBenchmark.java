@@ -0,0 +1,63 @@
+/*
+ * Copyright 2019 Okta
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.okta.tools.saml;
+
+import com.okta.tools.benchmarks.Fixtures;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Extracting roles from SAML responses of increasing size, through each parser.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SamlResponseBenchmark {
+
+    @Param({"1", "10", "100", "2000"})
+    public int roles;
+
+    private String samlResponse;
+
+    @Setup
+    public void setup() {
+        samlResponse = Fixtures.samlResponse(roles);
+        if (getRoles().size() != roles) {
+            throw new IllegalStateException("Fixture produced the wrong number of roles");
+        }
+    }
+
+    @Benchmark
+    public Map<String, String> getRoles() {
+        return AwsSamlRoleUtils.getRoles(samlResponse);
+    }
+
+    @Benchmark
+    public Optional<SamlAssertion> streamingParser() {
+        return SamlStreamParser.parse(samlResponse);
+    }
+
+    @Benchmark
+    public SamlAssertion openSamlParser() {
+        return SamlResponseUtils.parse(samlResponse);
+    }
+}
@@ -14,6 +14,8 @@
 # limitations under the License.
 #
 function Install-OktaAwsCli {
+    # -Browser also installs browser authentication (OKTA_BROWSER_AUTH) and the JavaFX it needs
+    Param([switch]$Browser)
     if (Test-Path $HOME\.okta\uptodate) {
         return
     }
@@ -21,6 +23,9 @@ function Install-OktaAwsCli {
         if (Test-Path $HOME\.okta\*.jar) {
             Remove-Item $HOME\.okta\*.jar
         }
+        if (Test-Path $HOME\.okta\okta-aws-cli.jsa) {
+            Remove-Item $HOME\.okta\okta-aws-cli.jsa
+        }
         if (Test-Path $HOME\.okta\config.properties) {
             Remove-Item $HOME\.okta\config.properties
         }
@@ -31,9 +36,20 @@ function Install-OktaAwsCli {
     # .NET apparently doesn't default to TLS 1.2 and GitHub requires it
     [System.Net.ServicePointManager]::SecurityProtocol = [System.Net.SecurityProtocolType]::Tls12
     $LatestReleaseResponse = Invoke-RestMethod -Uri "https://api.github.com/repos/oktadev/okta-aws-cli-assume-role/releases/latest"
-    $Asset = $LatestReleaseResponse.assets | Where-Object { $_.content_type -eq "application/java-archive" }
+    $Asset = $LatestReleaseResponse.assets | Where-Object { $_.content_type -eq "application/java-archive" -and $_.name -notlike "okta-aws-cli-browser-*" }
     $Client = New-Object System.Net.WebClient
     $Client.DownloadFile($Asset.browser_download_url, "$Home\.okta\okta-aws-cli.jar")
+    # Loaded from next to okta-aws-cli.jar only when OKTA_BROWSER_AUTH is set
+    if ($Browser) {
+        $BrowserAsset = $LatestReleaseResponse.assets | Where-Object { $_.name -like "okta-aws-cli-browser-*.jar" }
+        $Client.DownloadFile($BrowserAsset.browser_download_url, "$Home\.okta\okta-aws-cli-browser.jar")
+    }
+    # Class-data sharing archive for faster startup; it only matches this JVM and JAR, so it is built here
+    $ClassListAsset = $LatestReleaseResponse.assets | Where-Object { $_.name -eq "okta-aws-cli.classlist" }
+    if ($ClassListAsset) {
+        $Client.DownloadFile($ClassListAsset.browser_download_url, "$Home\.okta\okta-aws-cli.classlist")
+        java -Xshare:dump "-XX:SharedClassListFile=$Home\.okta\okta-aws-cli.classlist" "-XX:SharedArchiveFile=$Home\.okta\okta-aws-cli.jsa" -classpath $Home\.okta\okta-aws-cli.jar 2>&1 | Out-Null
+    }
     Add-Content -Path $Home/.okta/config.properties -Value "
 #OktaAWSCLI
 OKTA_ORG=acmecorp.okta.com.changeme.local
@@ -53,6 +69,10 @@ com.amazonaws.auth.profile.internal.BasicProfileConfigLoader = NONE
 #OktaAWSCLI
 function Invoke-Java {
     Param([string]$MainClass)
+    $CdsOptions = @()
+    if (Test-Path $HOME\.okta\okta-aws-cli.jsa) {
+        $CdsOptions = @("-XX:SharedArchiveFile=$HOME\.okta\okta-aws-cli.jsa", "-Xshare:auto")
+    }
     $InternetOptions = Get-ItemProperty -Path "HKCU:\Software\Microsoft\Windows\CurrentVersion\Internet Settings"
     if ($InternetOptions.ProxyEnable) {
         $ProxyStrings = $InternetOptions.ProxyServer.Split(";")
@@ -82,12 +102,12 @@ function Invoke-Java {
             $NonProxyHosts = ""
         }
         if ($ProxyProtocol -eq "socks") {
-            java "-Djava.util.logging.config.file=$HOME\.okta\logging.properties" "-DsocksProxyHost=$ProxyHost" "-DsocksProxyPort=$ProxyPort" "-Dhttp.nonProxyHosts=$NonProxyHosts" -classpath $HOME\.okta\okta-aws-cli.jar $MainClass @args
+            java @CdsOptions "-Djava.util.logging.config.file=$HOME\.okta\logging.properties" "-DsocksProxyHost=$ProxyHost" "-DsocksProxyPort=$ProxyPort" "-Dhttp.nonProxyHosts=$NonProxyHosts" -classpath $HOME\.okta\okta-aws-cli.jar $MainClass @args
         } else {
-            java "-Djava.util.logging.config.file=$HOME\.okta\logging.properties" "-Dhttp.proxyHost=$ProxyHost" "-Dhttp.proxyPort=$ProxyPort" "-Dhttps.proxyHost=$ProxyHost" "-Dhttps.proxyPort=$ProxyPort" "-Dhttp.nonProxyHosts=$NonProxyHosts" -classpath $HOME\.okta\okta-aws-cli.jar $MainClass @args
+            java @CdsOptions "-Djava.util.logging.config.file=$HOME\.okta\logging.properties" "-Dhttp.proxyHost=$ProxyHost" "-Dhttp.proxyPort=$ProxyPort" "-Dhttps.proxyHost=$ProxyHost" "-Dhttps.proxyPort=$ProxyPort" "-Dhttp.nonProxyHosts=$NonProxyHosts" -classpath $HOME\.okta\okta-aws-cli.jar $MainClass @args
         }
     } else {
-        java "-Djava.util.logging.config.file=$HOME\.okta\logging.properties" -classpath $HOME\.okta\okta-aws-cli.jar $MainClass @args
+        java @CdsOptions "-Djava.util.logging.config.file=$HOME\.okta\logging.properties" -classpath $HOME\.okta\okta-aws-cli.jar $MainClass @args
     }
 }
 
@@ -110,6 +130,21 @@ function Get-OktaRoles {
 }
 New-Alias -Name okta-listroles -value Get-OktaRoles
 
+function Invoke-OktaAssumeAll {
+    Invoke-Java -MainClass com.okta.tools.AssumeAllRoles @args
+}
+New-Alias -Name okta-assume-all -value Invoke-OktaAssumeAll
+
+function Invoke-OktaMultiLogin {
+    Invoke-Java -MainClass com.okta.tools.MultiOrgLogin @args
+}
+New-Alias -Name okta-multi-login -value Invoke-OktaMultiLogin
+
+function Start-OktaAwsAgent {
+    Invoke-Java -MainClass com.okta.tools.OktaAwsAgent
+}
+New-Alias -Name okta-aws-agent -value Start-OktaAwsAgent
+
 function Invoke-OktaAws {
     Param([string]$Profile)
     Invoke-Okta -Profile $Profile aws --profile $Profile @args
@@ -126,4 +161,4 @@ New-Alias -Name okta-sls -value Invoke-OktaSls
     }
 }
 
-Install-OktaAwsCli
+Install-OktaAwsCli -Browser:($env:OKTA_BROWSER_AUTH -eq "true")
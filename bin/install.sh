@@ -19,7 +19,7 @@ dotokta="${HOME}/.okta"
 
 printusage() {
     cat <<EOF >&2
-usage: $(basename $0) [-h | -i]
+usage: $(basename $0) [-h | -i [-b]]
        install Okta AWS CLI Assume Role tool
 EOF
 }
@@ -33,6 +33,9 @@ To execute:
 
     $(basename $0) -i
 
+Add -b to also install browser authentication (OKTA_BROWSER_AUTH) and the
+JavaFX it needs.
+
 This command
 
 1. Installs files into a filesystem location that can be configured
@@ -46,7 +49,7 @@ For details, see ${repo_url}.
 EOF
 }
 
-while getopts ":ih" opt; do
+while getopts ":ihb" opt; do
     case ${opt} in
         h)
             printhelp
@@ -55,6 +58,9 @@ while getopts ":ih" opt; do
         i)
             install=1
             ;;
+        b)
+            browser=1
+            ;;
         \?)
             printusage
             exit 64
@@ -92,6 +98,36 @@ jarpath="${PREFIX}/okta-aws-cli.jar"
 echo "Symlinking ${jarpath} → $(basename ${dest})" | sed "s#$HOME#~#g"
 ln -sf $(basename ${dest}) "${jarpath}"
 
+# Browser authentication is a separate JAR, which the CLI loads from next to
+# its own only when OKTA_BROWSER_AUTH is set
+browserJarpath="${PREFIX}/okta-aws-cli-browser.jar"
+if [[ -n "$browser" ]]; then
+    browserUrl=${repo_url}/releases/download/${releaseTag}/okta-aws-cli-browser-${releaseTag:1}.jar
+    browserDest=${PREFIX}/$(basename ${browserUrl})
+    echo "Fetching browser authentication JAR file → ${browserDest}" | sed "s#$HOME#~#g"
+    curl -Ls -o "${browserDest}" "${browserUrl}"
+    ln -sf $(basename ${browserDest}) "${browserJarpath}"
+elif [[ -e "${browserJarpath}" ]]; then
+    echo "Keeping ${browserJarpath}; it may not match this release" | sed "s#$HOME#~#g" >&2
+fi
+
+# Class-data sharing archive of the classes the commands load, which shortens
+# their startup. It only matches this JVM and JAR, so it is built here from the
+# class list recorded when the release was built.
+classList="${PREFIX}/okta-aws-cli.classlist"
+cdsArchive="${PREFIX}/okta-aws-cli.jsa"
+cdsOptions=""
+rm -f "${cdsArchive}"
+if curl -Lsf -o "${classList}" "${repo_url}/releases/download/${releaseTag}/okta-aws-cli.classlist" &&
+    java -Xshare:dump -XX:SharedClassListFile="${classList}" -XX:SharedArchiveFile="${cdsArchive}" \
+        -classpath "${jarpath}" &>/dev/null; then
+    echo "Created class-data sharing archive ${cdsArchive}" | sed "s#$HOME#~#g"
+    # A JVM that cannot use the archive, e.g. after an upgrade, ignores it
+    cdsOptions="-XX:SharedArchiveFile=${cdsArchive} -Xshare:auto "
+else
+    echo "Skipped the class-data sharing archive; commands will start more slowly" >&2
+fi
+
 # bash functions
 bash_functions="${PREFIX}/bash_functions"
 if ! grep '^#OktaAWSCLI' "${bash_functions}" &>/dev/null; then
@@ -131,14 +167,64 @@ EOF
 
 mkdir -p "${PREFIX}/bin"
 
+# Shell functions used by the generated scripts to ask a running okta-aws-agent
+# for credentials without starting a JVM. okta_agent prints the agent's reply on
+# success. The agent only serves callers whose OKTA_ variables, other than the
+# profile and role it is sent, and working directory config files match its own,
+# which okta_config_fingerprint sums up as the agent does. The token is only sent
+# while the agent process named in its file is alive and owned by this user, so
+# another program bound to the port of a dead agent never receives it.
+agent_shim=$(cat <<'EOF'
+okta_config_fingerprint() {
+    {
+        env | grep '^OKTA_' | grep -v -e '^OKTA_PROFILE=' -e '^OKTA_AWS_ROLE_TO_ASSUME=' | LC_ALL=C sort
+        for configFile in config.properties ${1:+"config.$1.properties"}; do
+            [ -f "$configFile" ] && printf 'config=%s/%s\n' "$(pwd -P)" "$configFile"
+        done
+    } | cksum | awk '{ print $1 "-" $2 }'
+}
+okta_agent() {
+    local agentFile="${HOME}/.okta/agent.properties" port token pid status
+    [ -r "$agentFile" ] || return 1
+    port=$(sed -n 's/^port=//p' "$agentFile")
+    token=$(sed -n 's/^token=//p' "$agentFile")
+    pid=$(sed -n 's/^pid=//p' "$agentFile")
+    [ -n "$port" ] && [ -n "$token" ] && [ -n "$pid" ] || return 1
+    kill -0 "$pid" 2>/dev/null || return 1
+    exec 3<>"/dev/tcp/127.0.0.1/${port}" || return 1
+    printf '%s %s %s %s %s\n' "$token" "$1" "$(okta_config_fingerprint "$2")" "${2:--}" "${3:--}" >&3
+    # The agent never prompts, but a login through the Okta session can be slow
+    if ! IFS= read -r -t 30 status <&3; then
+        exec 3<&-
+        return 1
+    fi
+    if [ "$status" != "OK" ]; then
+        exec 3<&-
+        return 1
+    fi
+    cat <&3
+    exec 3<&-
+}
+EOF
+)
+
 # Create withokta command
 cat <<EOF >"${PREFIX}/bin/withokta"
 #!/bin/bash
+${agent_shim}
+if [ \$# -gt 0 ] && [ "\$1" != "logout" ] && agentEnv=\$(okta_agent env "\${OKTA_PROFILE}" "\${OKTA_AWS_ROLE_TO_ASSUME}" 2>/dev/null); then
+    while IFS='=' read -r name value; do
+        case "\$name" in
+            AWS_ACCESS_KEY_ID|AWS_SECRET_ACCESS_KEY|AWS_SESSION_TOKEN|AWS_DEFAULT_REGION) export "\$name=\$value" ;;
+        esac
+    done <<< "\$agentEnv"
+    exec \$@
+fi
 if [ -n "\$https_proxy" ]; then
     readonly URI_REGEX='^(([^:/?#]+):)?(//((([^:/?#]+)@)?([^:/?#]+)(:([0-9]+))?))?(/([^?#]*))(\?([^#]*))?(#(.*))?'
     [[ \$https_proxy =~ \${URI_REGEX} ]] && PROXY_CONFIG="-Dhttps.proxyHost=\${BASH_REMATCH[7]} -Dhttps.proxyPort=\${BASH_REMATCH[9]}"
 fi
-java \${PROXY_CONFIG} \\
+java ${cdsOptions}\${PROXY_CONFIG} \\
     -Djava.util.logging.config.file=${PREFIX}/logging.properties \\
     -classpath ${PREFIX}/okta-aws-cli.jar \\
     com.okta.tools.WithOkta \$@
@@ -150,12 +236,16 @@ cat <<EOF >"${PREFIX}/bin/okta-credential_process"
 #!/bin/bash
 roleARN="\$1"
 shift;
+${agent_shim}
+if okta_agent credential_process "\${OKTA_PROFILE}" "\$roleARN" 2>/dev/null; then
+    exit 0
+fi
 if [ -n "\$https_proxy" ]; then
     readonly URI_REGEX='^(([^:/?#]+):)?(//((([^:/?#]+)@)?([^:/?#]+)(:([0-9]+))?))?(/([^?#]*))(\?([^#]*))?(#(.*))?'
     [[ \$https_proxy =~ \${URI_REGEX} ]] && PROXY_CONFIG="-Dhttps.proxyHost=\${BASH_REMATCH[7]} -Dhttps.proxyPort=\${BASH_REMATCH[9]}"
 fi
 env OKTA_AWS_ROLE_TO_ASSUME="\$roleARN" \
-    java \${PROXY_CONFIG} \
+    java ${cdsOptions}\${PROXY_CONFIG} \
       -Djava.util.logging.config.file=${PREFIX}/logging.properties \
       -classpath ${PREFIX}/okta-aws-cli.jar \
       com.okta.tools.CredentialProcess
@@ -169,13 +259,55 @@ if [ -n "\$https_proxy" ]; then
     readonly URI_REGEX='^(([^:/?#]+):)?(//((([^:/?#]+)@)?([^:/?#]+)(:([0-9]+))?))?(/([^?#]*))(\?([^#]*))?(#(.*))?'
     [[ \$https_proxy =~ \${URI_REGEX} ]] && PROXY_CONFIG="-Dhttps.proxyHost=\${BASH_REMATCH[7]} -Dhttps.proxyPort=\${BASH_REMATCH[9]}"
 fi
-java \${PROXY_CONFIG} \
+java ${cdsOptions}\${PROXY_CONFIG} \
   -Djava.util.logging.config.file=${PREFIX}/logging.properties \
   -classpath ${PREFIX}/okta-aws-cli.jar \
   com.okta.tools.ListRoles
 EOF
 chmod +x "${PREFIX}/bin/okta-listroles"
 
+# Create okta-assume-all command
+cat <<EOF >"${PREFIX}/bin/okta-assume-all"
+#!/bin/bash
+if [ -n "\$https_proxy" ]; then
+    readonly URI_REGEX='^(([^:/?#]+):)?(//((([^:/?#]+)@)?([^:/?#]+)(:([0-9]+))?))?(/([^?#]*))(\?([^#]*))?(#(.*))?'
+    [[ \$https_proxy =~ \${URI_REGEX} ]] && PROXY_CONFIG="-Dhttps.proxyHost=\${BASH_REMATCH[7]} -Dhttps.proxyPort=\${BASH_REMATCH[9]}"
+fi
+java ${cdsOptions}\${PROXY_CONFIG} \
+  -Djava.util.logging.config.file=${PREFIX}/logging.properties \
+  -classpath ${PREFIX}/okta-aws-cli.jar \
+  com.okta.tools.AssumeAllRoles "\$@"
+EOF
+chmod +x "${PREFIX}/bin/okta-assume-all"
+
+# Create okta-multi-login command
+cat <<EOF >"${PREFIX}/bin/okta-multi-login"
+#!/bin/bash
+if [ -n "\$https_proxy" ]; then
+    readonly URI_REGEX='^(([^:/?#]+):)?(//((([^:/?#]+)@)?([^:/?#]+)(:([0-9]+))?))?(/([^?#]*))(\?([^#]*))?(#(.*))?'
+    [[ \$https_proxy =~ \${URI_REGEX} ]] && PROXY_CONFIG="-Dhttps.proxyHost=\${BASH_REMATCH[7]} -Dhttps.proxyPort=\${BASH_REMATCH[9]}"
+fi
+java ${cdsOptions}\${PROXY_CONFIG} \
+  -Djava.util.logging.config.file=${PREFIX}/logging.properties \
+  -classpath ${PREFIX}/okta-aws-cli.jar \
+  com.okta.tools.MultiOrgLogin "\$@"
+EOF
+chmod +x "${PREFIX}/bin/okta-multi-login"
+
+# Create okta-aws-agent command
+cat <<EOF >"${PREFIX}/bin/okta-aws-agent"
+#!/bin/bash
+if [ -n "\$https_proxy" ]; then
+    readonly URI_REGEX='^(([^:/?#]+):)?(//((([^:/?#]+)@)?([^:/?#]+)(:([0-9]+))?))?(/([^?#]*))(\?([^#]*))?(#(.*))?'
+    [[ \$https_proxy =~ \${URI_REGEX} ]] && PROXY_CONFIG="-Dhttps.proxyHost=\${BASH_REMATCH[7]} -Dhttps.proxyPort=\${BASH_REMATCH[9]}"
+fi
+java ${cdsOptions}\${PROXY_CONFIG} \
+  -Djava.util.logging.config.file=${PREFIX}/logging.properties \
+  -classpath ${PREFIX}/okta-aws-cli.jar \
+  com.okta.tools.OktaAwsAgent
+EOF
+chmod +x "${PREFIX}/bin/okta-aws-agent"
+
 # awscli
 cat <<'EOF' >"${PREFIX}/bin/awscli"
 #!/bin/bash
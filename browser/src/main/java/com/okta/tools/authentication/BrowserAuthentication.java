@@ -58,7 +58,8 @@ public final class BrowserAuthentication extends Application {
     public static String login(OktaAwsCliEnvironment environment) throws InterruptedException {
         BrowserAuthentication.environment = environment;
         cookieHelper = new CookieHelper(BrowserAuthentication.environment);
-        launch();
+        // Named, as finding the caller by name fails when loaded from a plugin JAR
+        launch(BrowserAuthentication.class);
         USER_AUTH_COMPLETE.await();
         return samlResponse.get();
     }
@@ -0,0 +1,29 @@
+/*
+ * Copyright 2019 Okta
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.okta.tools.authentication;
+
+import com.okta.tools.OktaAwsCliEnvironment;
+
+/**
+ * Registered in META-INF/services so that the CLI finds {@link BrowserAuthentication} when OKTA_BROWSER_AUTH is set
+ */
+public final class JavaFxBrowserLogin implements BrowserLogin {
+
+    @Override
+    public String login(OktaAwsCliEnvironment environment) throws InterruptedException {
+        return BrowserAuthentication.login(environment);
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2019 Okta
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.okta.tools;
+
+import java.time.Instant;
+import java.util.Arrays;
+
+/**
+ * Logs in once and writes a profile for every role matching the arguments, see {@link OktaAwsCliAssumeRole#runAll}
+ */
+public class AssumeAllRoles {
+    public static void main(String[] args) throws Exception {
+        OktaAwsCliEnvironment environment = OktaAwsConfig.loadEnvironment();
+        if (environment.oktaEnvMode) {
+            throw new IllegalStateException("okta-assume-all writes profiles to ~/.aws/credentials and cannot be used with OKTA_ENV_MODE");
+        }
+        OktaAwsCliAssumeRole.RunAllResult runAllResult = OktaAwsCliAssumeRole.withEnvironment(environment)
+                .runAll(Instant.now(), Arrays.asList(args));
+        for (OktaAwsCliAssumeRole.RunResult runResult : runAllResult.assumed) {
+            System.out.println(runResult.profileName);
+        }
+        if (!runAllResult.failedRoleArns.isEmpty()) {
+            System.err.println("Assumed " + runAllResult.assumed.size() + " of " +
+                    (runAllResult.assumed.size() + runAllResult.failedRoleArns.size()) + " roles");
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2019 Okta
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.okta.tools;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.lang.StringUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <p>Serves resident credentials in the format of the ECS container credentials endpoint, so that AWS SDKs
+ * configured with {@code AWS_CONTAINER_CREDENTIALS_FULL_URI} and {@code AWS_CONTAINER_AUTHORIZATION_TOKEN}
+ * fetch and renew them over HTTP instead of spawning {@code okta-credential_process}.</p>
+ * <p>Requests are {@code GET /credentials[/<profile>][?role=<role ARN>]} with the agent's access token as the
+ * {@code Authorization} header.</p>
+ */
+final class ContainerCredentialsEndpoint {
+    private static final Logger logger = Logger.getLogger(ContainerCredentialsEndpoint.class.getName());
+
+    static final String PATH = "/credentials";
+
+    private static final String NODELAY_PROPERTY = "sun.net.httpserver.nodelay";
+
+    private final ResidentCredentials residentCredentials;
+    private final String token;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private ContainerCredentialsEndpoint(ResidentCredentials residentCredentials, String token) {
+        this.residentCredentials = residentCredentials;
+        this.token = token;
+    }
+
+    /**
+     * Starts serving on 127.0.0.1
+     *
+     * @param port                The port to listen on, or 0 for any free port
+     * @param token               The value callers must send as the Authorization header
+     * @param residentCredentials The credentials to serve
+     * @param executor            Runs the requests, which may wait for a login
+     * @return The running server
+     * @throws IOException if the port cannot be bound
+     */
+    static HttpServer start(int port, String token, ResidentCredentials residentCredentials, Executor executor) throws IOException {
+        // Headers and body are written separately; with Nagle's algorithm every cache hit waits on a delayed ACK.
+        // Read once, when the first server is created.
+        if (System.getProperty(NODELAY_PROPERTY) == null) {
+            System.setProperty(NODELAY_PROPERTY, "true");
+        }
+        ContainerCredentialsEndpoint endpoint = new ContainerCredentialsEndpoint(residentCredentials, token);
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 50);
+        server.createContext(PATH, endpoint::handle);
+        server.setExecutor(executor);
+        server.start();
+        return server;
+    }
+
+    private void handle(HttpExchange request) throws IOException {
+        try {
+            if (!"GET".equals(request.getRequestMethod())) {
+                respond(request, 405, error("MethodNotAllowed", "Only GET is supported"));
+            } else if (!isAuthorized(request.getRequestHeaders().getFirst("Authorization"))) {
+                respond(request, 401, error("Unauthorized", "Missing or wrong authorization token"));
+            } else {
+                String path = request.getRequestURI().getPath();
+                String profile = StringUtils.removeStart(StringUtils.removeStart(path, PATH), "/");
+                if (profile.contains("/")) {
+                    respond(request, 404, error("NotFound", "No such path: " + path));
+                } else {
+                    respondWithCredentials(request, profile, getQueryParameter(request, "role"));
+                }
+            }
+        } finally {
+            request.close();
+        }
+    }
+
+    private void respondWithCredentials(HttpExchange request, String profile, String roleArn) throws IOException {
+        byte[] body;
+        try {
+            OktaAwsCliAssumeRole.RunResult runResult = residentCredentials.get(profile, roleArn, true);
+            OktaAwsCliEnvironment environment = residentCredentials.getEnvironment(profile, roleArn, true);
+            body = toContainerCredentialsJson(runResult, environment, Instant.now());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            respond(request, 503, error("Interrupted", "The agent is stopping"));
+            return;
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.WARNING, "Container credentials request failed", e);
+            respond(request, 500, error("CredentialsUnavailable", String.valueOf(e.getMessage())));
+            return;
+        }
+        respond(request, 200, body);
+    }
+
+    private byte[] toContainerCredentialsJson(OktaAwsCliAssumeRole.RunResult runResult, OktaAwsCliEnvironment environment,
+                                              Instant now) throws JsonProcessingException {
+        Instant expiration = runResult.expiration != null ?
+                runResult.expiration : now.plus(Duration.of(environment.stsDuration, ChronoUnit.SECONDS));
+        Map<String, Object> credentials = new LinkedHashMap<>(5);
+        credentials.put("AccessKeyId", runResult.accessKeyId);
+        credentials.put("SecretAccessKey", runResult.secretAccessKey);
+        credentials.put("Token", runResult.sessionToken);
+        credentials.put("Expiration", expiration.truncatedTo(ChronoUnit.SECONDS).toString());
+        if (runResult.roleArn != null) {
+            credentials.put("RoleArn", runResult.roleArn);
+        }
+        return objectMapper.writeValueAsBytes(credentials);
+    }
+
+    private byte[] error(String code, String message) throws JsonProcessingException {
+        Map<String, Object> error = new LinkedHashMap<>(2);
+        error.put("Code", code);
+        error.put("Message", message);
+        return objectMapper.writeValueAsBytes(error);
+    }
+
+    private static void respond(HttpExchange request, int status, byte[] body) throws IOException {
+        request.getResponseHeaders().set("Content-Type", "application/json");
+        request.sendResponseHeaders(status, body.length);
+        try (OutputStream responseBody = request.getResponseBody()) {
+            responseBody.write(body);
+        }
+    }
+
+    private boolean isAuthorized(String authorization) {
+        return authorization != null && MessageDigest.isEqual(
+                token.getBytes(StandardCharsets.UTF_8),
+                authorization.trim().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String getQueryParameter(HttpExchange request, String name) {
+        String query = request.getRequestURI().getRawQuery();
+        if (query == null) return null;
+        for (String parameter : query.split("&")) {
+            String[] nameAndValue = parameter.split("=", 2);
+            if (nameAndValue.length == 2 && name.equals(nameAndValue[0])) {
+                return URLDecoder.decode(nameAndValue[1], StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+}
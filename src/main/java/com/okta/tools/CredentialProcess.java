@@ -15,22 +15,66 @@
  */
 package com.okta.tools;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.okta.tools.helpers.CredentialCacheHelper;
+import com.okta.tools.helpers.LoginLockHelper;
+import software.amazon.awssdk.services.sts.model.Credentials;
 
 import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Optional;
 
 public class CredentialProcess {
     public static void main(String[] args) throws Exception {
         OktaAwsCliEnvironment environment = OktaAwsConfig.loadEnvironment();
         environment.oktaEnvMode = true;
         Instant startInstant = Instant.now();
-        Duration sessionLength = Duration.of(environment.stsDuration, ChronoUnit.SECONDS);
-        Instant expirationInstant = startInstant.plus(sessionLength);
-        OktaAwsCliAssumeRole.RunResult runResult = OktaAwsCliAssumeRole.withEnvironment(environment).run(startInstant);
+        // Captured before run() as that may replace it with the role chosen interactively
+        String roleArn = environment.awsRoleToAssume;
+        CredentialCacheHelper credentialCacheHelper = new CredentialCacheHelper(environment);
+        Optional<CredentialCacheHelper.CachedCredentials> cached = credentialCacheHelper.get(roleArn, startInstant);
+        if (cached.isPresent()) {
+            System.out.println(toCredentialJson(toRunResult(cached.get()), environment, startInstant));
+            return;
+        }
+        OktaAwsCliAssumeRole.RunResult runResult;
+        // Concurrent callers wait here for the first one's login and then answer from the cache it filled
+        try (LoginLockHelper.LoginLock loginLock = new LoginLockHelper(environment).acquire(environment.oktaProfile, roleArn)) {
+            cached = credentialCacheHelper.get(roleArn, startInstant);
+            if (cached.isPresent()) {
+                System.out.println(toCredentialJson(toRunResult(cached.get()), environment, startInstant));
+                return;
+            }
+            runResult = OktaAwsCliAssumeRole.withEnvironment(environment).run(startInstant);
+            if (runResult.expiration != null) {
+                credentialCacheHelper.put(roleArn, runResult.profileName, Credentials.builder()
+                        .accessKeyId(runResult.accessKeyId)
+                        .secretAccessKey(runResult.secretAccessKey)
+                        .sessionToken(runResult.sessionToken)
+                        .expiration(runResult.expiration)
+                        .build());
+            }
+        }
+        System.out.println(toCredentialJson(runResult, environment, startInstant));
+    }
+
+    private static OktaAwsCliAssumeRole.RunResult toRunResult(CredentialCacheHelper.CachedCredentials cached) {
+        OktaAwsCliAssumeRole.RunResult runResult = new OktaAwsCliAssumeRole.RunResult();
+        runResult.profileName = cached.profileName;
+        runResult.accessKeyId = cached.credentials.accessKeyId();
+        runResult.secretAccessKey = cached.credentials.secretAccessKey();
+        runResult.sessionToken = cached.credentials.sessionToken();
+        runResult.expiration = cached.credentials.expiration();
+        return runResult;
+    }
+
+    static String toCredentialJson(OktaAwsCliAssumeRole.RunResult runResult, OktaAwsCliEnvironment environment, Instant startInstant) throws JsonProcessingException {
+        Instant expirationInstant = runResult.expiration != null ?
+                runResult.expiration : startInstant.plus(Duration.of(environment.stsDuration, ChronoUnit.SECONDS));
         Map<String, Object> credential = new HashMap<>(5);
         credential.put("Version", 1);
         credential.put("AccessKeyId", runResult.accessKeyId);
@@ -38,7 +82,6 @@ public class CredentialProcess {
         credential.put("SessionToken", runResult.sessionToken);
         credential.put("Expiration", expirationInstant.toString());
         ObjectMapper objectMapper = new ObjectMapper();
-        String credentialJson = objectMapper.writeValueAsString(credential);
-        System.out.println(credentialJson);
+        return objectMapper.writeValueAsString(credential);
     }
 }
@@ -25,6 +25,7 @@ import com.okta.tools.models.AccountOption;
 import com.okta.tools.saml.OktaAppClient;
 import com.okta.tools.saml.OktaAppClientImpl;
 import com.okta.tools.saml.OktaSaml;
+import com.okta.tools.saml.SamlAssertion;
 
 import java.util.List;
 
@@ -39,10 +40,11 @@ public class ListRoles {
         OktaAuthnClient oktaAuthnClient = new OktaAuthnClientImpl();
         OktaAuthentication oktaAuthentication = new OktaAuthentication(environment, oktaMFA, userConsole, oktaAuthnClient);
         OktaAppClient oktaAppClient = new OktaAppClientImpl(cookieHelper);
-        OktaSaml oktaSaml = new OktaSaml(environment, oktaAuthentication, oktaAppClient);
-        String samlResponse = oktaSaml.getSamlResponse();
+        OktaSessionManager oktaSessionManager = new OktaSessionManager(environment, cookieHelper, new OktaSessionClientImpl(environment));
+        OktaSaml oktaSaml = new OktaSaml(environment, oktaAuthentication, oktaAppClient, oktaSessionManager);
+        SamlAssertion samlAssertion = oktaSaml.getSamlAssertion();
         RoleHelper roleHelper = new RoleHelper(environment);
-        List<AccountOption> availableRoles = roleHelper.getAvailableRoles(samlResponse);
+        List<AccountOption> availableRoles = roleHelper.getAvailableRoles(samlAssertion);
         ObjectMapper objectMapper = new ObjectMapper();
         objectMapper.writeValue(System.out, availableRoles);
     }
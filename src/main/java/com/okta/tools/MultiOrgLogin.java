@@ -0,0 +1,108 @@
+/*
+ * Copyright 2019 Okta
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.okta.tools;
+
+import com.okta.tools.helpers.ConsoleLock;
+import org.apache.commons.lang.StringUtils;
+
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Logs in to several Okta profiles, typically each for a different org, at the same time. App launches, SAML
+ * parsing and STS calls run concurrently; prompts are shown for one org at a time, see {@link ConsoleLock}.
+ */
+public class MultiOrgLogin {
+    public static void main(String[] args) throws Exception {
+        List<String> profiles = args.length > 0 ? Arrays.asList(args) : getConfiguredProfiles();
+        if (profiles.isEmpty()) {
+            throw new IllegalStateException("Give the Okta profiles to log in to as arguments or in OKTA_PROFILES");
+        }
+        Map<String, OktaAwsCliEnvironment> environments = new LinkedHashMap<>();
+        for (String profile : profiles) {
+            environments.put(profile, OktaAwsConfig.loadEnvironment(profile));
+        }
+        checkEnvironments(environments);
+
+        ConsoleLock.announceOrg();
+        ExecutorService executor = Executors.newFixedThreadPool(environments.size(), runnable -> {
+            Thread thread = new Thread(runnable, "okta-multi-org-login");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Map<String, Future<OktaAwsCliAssumeRole.RunResult>> futures = new LinkedHashMap<>();
+        environments.forEach((profile, environment) -> futures.put(profile, executor.submit(() ->
+                OktaAwsCliAssumeRole.withEnvironment(environment).run(Instant.now()))));
+        executor.shutdown();
+
+        int failures = 0;
+        for (Map.Entry<String, Future<OktaAwsCliAssumeRole.RunResult>> future : futures.entrySet()) {
+            try {
+                System.out.println(future.getValue().get().profileName);
+            } catch (ExecutionException e) {
+                failures++;
+                System.err.println("Unable to log in to " + future.getKey() + ": " + e.getCause().getMessage());
+            }
+        }
+        // The shared HTTP clients keep non-daemon threads alive
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    private static List<String> getConfiguredProfiles() {
+        String oktaProfiles = OktaAwsConfig.loadEnvironment().oktaProfiles;
+        if (StringUtils.isBlank(oktaProfiles)) {
+            return new ArrayList<>();
+        }
+        return Arrays.asList(oktaProfiles.trim().split("[\\s,]+"));
+    }
+
+    static void checkEnvironments(Map<String, OktaAwsCliEnvironment> environments) {
+        Map<String, List<String>> profilesByCookiesPath = new LinkedHashMap<>();
+        List<String> browserAuthProfiles = new ArrayList<>();
+        environments.forEach((profile, environment) -> {
+            if (environment.oktaEnvMode) {
+                throw new IllegalStateException("Profile " + profile + " sets OKTA_ENV_MODE, whose credentials would be lost");
+            }
+            if (environment.browserAuth) {
+                browserAuthProfiles.add(profile);
+            }
+            String cookiesPath = environment.oktaCookiesPath == null ? "" :
+                    Paths.get(environment.oktaCookiesPath).toAbsolutePath().normalize().toString();
+            profilesByCookiesPath.computeIfAbsent(cookiesPath, key -> new ArrayList<>()).add(profile);
+        });
+        // The browser window can only be opened once per process
+        if (browserAuthProfiles.size() > 1) {
+            throw new IllegalStateException("Only one profile may use OKTA_BROWSER_AUTH, not " + String.join(", ", browserAuthProfiles));
+        }
+        // Each org's session cookies would overwrite the other's
+        for (List<String> sharing : profilesByCookiesPath.values()) {
+            long orgs = sharing.stream().map(profile -> environments.get(profile).oktaOrg).distinct().count();
+            if (orgs > 1) {
+                throw new IllegalStateException("Profiles " + String.join(", ", sharing) + " are for different Okta orgs " +
+                        "but share a cookies file. Set OKTA_COOKIES_PATH in their config.<profile>.properties files.");
+            }
+        }
+    }
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright 2019 Okta
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.okta.tools;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.lang.StringUtils;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <p>Long-lived agent that keeps an initialized tool in memory and serves credentials to the
+ * {@code withokta} and {@code okta-credential_process} scripts over a loopback socket.</p>
+ * <p>The agent listens on 127.0.0.1 and writes its port and a random access token to
+ * {@code ~/.okta/agent.properties}, readable only by the current user. Each connection carries one
+ * request line:</p>
+ * <pre>&lt;token&gt; &lt;command&gt; [&lt;fingerprint&gt; [&lt;profile&gt; [&lt;role ARN&gt;]]]</pre>
+ * <p>where {@code -} stands for an empty argument. The reply is {@code OK} followed by the payload, or
+ * {@code ERROR <message>}. Commands are {@code env}, {@code credential_process}, {@code logout}, {@code ping} and
+ * {@code stop}.</p>
+ * <p>The agent only has its own configuration, so {@code env} and {@code credential_process} are answered with
+ * {@code ERROR} unless the caller's fingerprint, see {@link OktaAwsConfig#getFingerprint}, matches the agent's.
+ * The caller then runs on its own.</p>
+ * <p>When {@code OKTA_CONTAINER_CREDENTIALS_PORT} is set, the same credentials are also served over HTTP to AWS
+ * SDKs, see {@link ContainerCredentialsEndpoint}.</p>
+ */
+public final class OktaAwsAgent {
+    private static final Logger logger = Logger.getLogger(OktaAwsAgent.class.getName());
+
+    private static final String AGENT_FILENAME = "agent.properties";
+    private static final String PORT_PROPERTY = "port";
+    private static final String TOKEN_PROPERTY = "token";
+    private static final String PID_PROPERTY = "pid";
+    private static final String CONTAINER_CREDENTIALS_URI_PROPERTY = "container_credentials_uri";
+    private static final int REQUEST_READ_TIMEOUT_MILLIS = 5000;
+    private static final int CLIENT_CONNECT_TIMEOUT_MILLIS = 1000;
+
+    private final ResidentCredentials residentCredentials;
+    private final ExecutorService requestExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "okta-aws-agent-request");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final String token;
+    private final Path agentFile;
+    private final Map<String, String> environmentVariables;
+    private final Path workingDirectory;
+    private ServerSocket serverSocket;
+    private HttpServer containerCredentialsServer;
+
+    OktaAwsAgent(String token, Path agentFile, ResidentCredentials residentCredentials,
+                 Map<String, String> environmentVariables, Path workingDirectory) {
+        this.token = token;
+        this.agentFile = agentFile;
+        this.residentCredentials = residentCredentials;
+        this.environmentVariables = environmentVariables;
+        this.workingDirectory = workingDirectory;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path agentFile = getAgentFile();
+        Files.createDirectories(agentFile.getParent());
+        OktaAwsAgent agent = new OktaAwsAgent(newToken(), agentFile, new ResidentCredentials(),
+                System.getenv(), Paths.get("").toRealPath());
+        agent.serve(getPort("OKTA_AGENT_PORT"), getPort("OKTA_CONTAINER_CREDENTIALS_PORT"));
+    }
+
+    static Path getAgentFile() {
+        return Paths.get(System.getProperty("user.home")).resolve(".okta").resolve(AGENT_FILENAME);
+    }
+
+    /**
+     * Tells the agent listed in the given file, if it is running, to drop the credentials it holds
+     *
+     * @param agentFile The agent file, normally {@link #getAgentFile()}
+     */
+    static void logout(Path agentFile) {
+        if (!sendCommand(agentFile, "logout")) {
+            logger.fine(() -> "No running agent listed in " + agentFile + " to log out");
+        }
+    }
+
+    // Whether the agent listed in the file is still running and answered OK
+    private static boolean sendCommand(Path agentFile, String command) {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(agentFile, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        } catch (IOException e) {
+            return false;
+        }
+        String port = properties.getProperty(PORT_PROPERTY);
+        String agentToken = properties.getProperty(TOKEN_PROPERTY);
+        String pid = properties.getProperty(PID_PROPERTY);
+        if (StringUtils.isBlank(port) || StringUtils.isBlank(agentToken) || !isRunning(pid)) {
+            // Whatever listens on the port now is not the agent, and must not see the token
+            return false;
+        }
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(port)),
+                    CLIENT_CONNECT_TIMEOUT_MILLIS);
+            socket.setSoTimeout(REQUEST_READ_TIMEOUT_MILLIS);
+            Writer writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+            writer.write(agentToken + " " + command + "\n");
+            writer.flush();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            return "OK".equals(reader.readLine());
+        } catch (IOException | NumberFormatException e) {
+            logger.log(Level.FINE, "Unable to reach the agent listed in " + agentFile, e);
+            return false;
+        }
+    }
+
+    private static boolean isRunning(String pid) {
+        try {
+            return pid != null && ProcessHandle.of(Long.parseLong(pid.trim())).map(ProcessHandle::isAlive).orElse(false);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static Integer getPort(String name) {
+        String port = System.getenv(name);
+        return StringUtils.isBlank(port) ? null : Integer.parseInt(port);
+    }
+
+    private static String newToken() {
+        byte[] bytes = new byte[32];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder token = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            token.append(String.format("%02x", b));
+        }
+        return token.toString();
+    }
+
+    void serve(Integer port, Integer containerCredentialsPort) throws IOException {
+        if (sendCommand(agentFile, "ping")) {
+            throw new IllegalStateException("An Okta AWS agent is already running, see " + agentFile);
+        }
+        serverSocket = new ServerSocket(port == null ? 0 : port, 50, InetAddress.getLoopbackAddress());
+        String containerCredentialsUri = null;
+        if (containerCredentialsPort != null) {
+            containerCredentialsServer = ContainerCredentialsEndpoint.start(containerCredentialsPort, token, residentCredentials, requestExecutor);
+            containerCredentialsUri = "http://127.0.0.1:" + containerCredentialsServer.getAddress().getPort() + ContainerCredentialsEndpoint.PATH;
+        }
+        writeAgentFile(serverSocket.getLocalPort(), containerCredentialsUri);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::deleteAgentFile));
+        System.err.println("Okta AWS agent listening on 127.0.0.1:" + serverSocket.getLocalPort());
+        if (containerCredentialsUri != null) {
+            System.err.println("Container credentials served at " + containerCredentialsUri);
+        }
+
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                requestExecutor.execute(() -> handle(socket));
+            } catch (SocketException e) {
+                if (!serverSocket.isClosed()) throw e;
+            }
+        }
+        if (containerCredentialsServer != null) {
+            containerCredentialsServer.stop(0);
+        }
+        requestExecutor.shutdown();
+        deleteAgentFile();
+    }
+
+    private void writeAgentFile(int port, String containerCredentialsUri) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(PORT_PROPERTY, Integer.toString(port));
+        properties.setProperty(TOKEN_PROPERTY, token);
+        if (containerCredentialsUri != null) {
+            properties.setProperty(CONTAINER_CREDENTIALS_URI_PROPERTY, containerCredentialsUri);
+        }
+        properties.setProperty(PID_PROPERTY, Long.toString(ProcessHandle.current().pid()));
+        Files.deleteIfExists(agentFile);
+        Files.createFile(agentFile);
+        try {
+            Files.setPosixFilePermissions(agentFile, PosixFilePermissions.fromString("rw-------"));
+        } catch (UnsupportedOperationException e) {
+            logger.fine(() -> "Unable to restrict permissions of " + agentFile + " on this file system");
+        }
+        try (Writer writer = Files.newBufferedWriter(agentFile, StandardCharsets.UTF_8)) {
+            properties.store(writer, "Okta AWS agent started at: " + Instant.now());
+        }
+    }
+
+    private void deleteAgentFile() {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(agentFile, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        } catch (NoSuchFileException e) {
+            return;
+        } catch (IOException e) {
+            logger.log(Level.FINE, "Unable to read " + agentFile, e);
+            return;
+        }
+        if (!token.equals(properties.getProperty(TOKEN_PROPERTY))) {
+            // Written by an agent started after this one
+            logger.fine(() -> agentFile + " belongs to another agent, leaving it in place");
+            return;
+        }
+        try {
+            Files.deleteIfExists(agentFile);
+        } catch (IOException e) {
+            logger.log(Level.FINE, "Unable to delete " + agentFile, e);
+        }
+    }
+
+    private void handle(Socket socket) {
+        try (Socket client = socket;
+             BufferedReader reader = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter writer = new PrintWriter(new OutputStreamWriter(client.getOutputStream(), StandardCharsets.UTF_8))) {
+            client.setSoTimeout(REQUEST_READ_TIMEOUT_MILLIS);
+            String requestLine = reader.readLine();
+            // Logins through the saved Okta session can take longer than reading the request
+            client.setSoTimeout(0);
+            try {
+                respond(requestLine, writer);
+            } catch (Exception e) {
+                logger.log(Level.WARNING, "Agent request failed", e);
+                writer.print("ERROR " + String.valueOf(e.getMessage()).replace('\n', ' ') + "\n");
+            }
+            writer.flush();
+        } catch (IOException e) {
+            logger.log(Level.FINE, "Agent connection failed", e);
+        }
+    }
+
+    private void respond(String requestLine, PrintWriter writer) throws IOException, InterruptedException {
+        String[] request = requestLine == null ? new String[0] : requestLine.trim().split("\\s+");
+        if (request.length < 2 || !isAuthorized(request[0])) {
+            throw new IllegalArgumentException("Unauthorized request");
+        }
+        String command = request[1];
+        String fingerprint = argument(request, 2);
+        String profile = argument(request, 3);
+        String roleArn = argument(request, 4);
+        switch (command) {
+            case "ping":
+                writer.print("OK\n");
+                break;
+            case "stop":
+                writer.print("OK\n");
+                serverSocket.close();
+                break;
+            case "logout":
+                residentCredentials.clear();
+                writer.print("OK\n");
+                break;
+            case "env":
+                checkFingerprint(fingerprint, profile);
+                respondWithEnvironment(profile, roleArn, writer);
+                break;
+            case "credential_process":
+                checkFingerprint(fingerprint, profile);
+                respondWithCredentialProcess(profile, roleArn, writer);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown command: " + command);
+        }
+    }
+
+    private void respondWithEnvironment(String profile, String roleArn, PrintWriter writer) throws IOException, InterruptedException {
+        OktaAwsCliEnvironment environment = residentCredentials.getEnvironment(profile, roleArn, false);
+        OktaAwsCliAssumeRole.RunResult runResult = residentCredentials.get(profile, roleArn, false);
+        writer.print("OK\n");
+        // Mirrors WithOkta: credentials only travel through the environment in OKTA_ENV_MODE
+        if (environment.oktaEnvMode) {
+            writer.print("AWS_ACCESS_KEY_ID=" + runResult.accessKeyId + "\n");
+            writer.print("AWS_SECRET_ACCESS_KEY=" + runResult.secretAccessKey + "\n");
+            writer.print("AWS_SESSION_TOKEN=" + runResult.sessionToken + "\n");
+            writer.print("AWS_DEFAULT_REGION=" + environment.awsRegion.id() + "\n");
+        }
+    }
+
+    private void respondWithCredentialProcess(String profile, String roleArn, PrintWriter writer) throws IOException, InterruptedException {
+        OktaAwsCliEnvironment environment = residentCredentials.getEnvironment(profile, roleArn, true);
+        OktaAwsCliAssumeRole.RunResult runResult = residentCredentials.get(profile, roleArn, true);
+        writer.print("OK\n");
+        writer.print(CredentialProcess.toCredentialJson(runResult, environment, Instant.now()) + "\n");
+    }
+
+    private void checkFingerprint(String fingerprint, String profile) {
+        if (!OktaAwsConfig.getFingerprint(environmentVariables, workingDirectory, profile).equals(fingerprint)) {
+            throw new IllegalStateException("The caller's OKTA_ variables or config files differ from the agent's");
+        }
+    }
+
+    private boolean isAuthorized(String requestToken) {
+        return MessageDigest.isEqual(
+                token.getBytes(StandardCharsets.UTF_8),
+                requestToken.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String argument(String[] request, int index) {
+        if (request.length <= index || "-".equals(request[index])) return null;
+        return request[index];
+    }
+}
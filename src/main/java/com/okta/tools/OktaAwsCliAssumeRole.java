@@ -18,6 +18,9 @@ package com.okta.tools;
 import java.io.IOException;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import com.okta.tools.authentication.*;
@@ -31,14 +34,19 @@ import software.amazon.awssdk.services.sts.model.AssumeRoleWithSamlResponse;
 import com.okta.tools.models.Profile;
 import com.okta.tools.models.Session;
 import com.okta.tools.saml.OktaSaml;
+import com.okta.tools.saml.SamlAssertion;
 import software.amazon.awssdk.services.sts.model.Credentials;
 
-final class OktaAwsCliAssumeRole {
+class OktaAwsCliAssumeRole {
     final private OktaAwsCliEnvironment environment;
 
     private SessionHelper sessionHelper;
+    private CredentialsHelper credentialsHelper;
+    private CookieHelper cookieHelper;
     private RoleHelper roleHelper;
     private ProfileHelper profileHelper;
+    private LoginLockHelper loginLockHelper;
+    private OktaSessionManager oktaSessionManager;
 
     private OktaSaml oktaSaml;
 
@@ -54,39 +62,239 @@ final class OktaAwsCliAssumeRole {
     }
 
     private void init() throws IOException {
-        CookieHelper cookieHelper = new CookieHelper(environment);
-        CredentialsHelper credentialsHelper  = new CredentialsHelper();
-        sessionHelper = new SessionHelper(environment, cookieHelper, credentialsHelper);
-        roleHelper = new RoleHelper(environment);
-        profileHelper = new ProfileHelper(credentialsHelper, environment);
-        MenuHelper menuHelper = new MenuHelperImpl();
-        OktaFactorSelector factorSelector = new OktaFactorSelectorImpl(environment, menuHelper);
-        OktaMFA oktaMFA = new OktaMFA(factorSelector);
-        UserConsole userConsole = new UserConsoleImpl();
-        OktaAuthnClient oktaAuthnClient = new OktaAuthnClientImpl();
-        OktaAuthentication oktaAuthentication = new OktaAuthentication(environment, oktaMFA, userConsole, oktaAuthnClient);
-        OktaAppClient oktaAppClient = new OktaAppClientImpl(cookieHelper);
+        initSession();
+        initProfile();
+    }
 
-        oktaSaml = new OktaSaml(environment, oktaAuthentication, oktaAppClient);
+    private void initSession() throws IOException {
+        // Helpers are kept for the lifetime of this instance so a resident agent can reuse them across runs
+        if (sessionHelper == null) {
+            initSessionHelpers();
+        }
 
         currentSession = sessionHelper.getCurrentSession();
 
         if (StringUtils.isEmpty(environment.oktaProfile) && currentSession.isPresent()) {
             environment.oktaProfile = currentSession.get().profileName;
         }
+    }
 
+    private void initProfile() throws IOException {
         currentProfile = sessionHelper.getFromMultipleProfiles();
     }
 
+    // Enough to tell whether the session is still active, which is all most runs need
+    private void initSessionHelpers() {
+        credentialsHelper = new CredentialsHelper(environment);
+        sessionHelper = new SessionHelper(environment, this::getCookieHelper, credentialsHelper);
+    }
+
+    // Only created once a login is needed, so that an active session never loads the HTTP, JSON, HTML and AWS SDK
+    // classes behind them
+    private void initLoginHelpers() {
+        if (oktaSaml != null) return;
+        if (sessionHelper == null) {
+            initSessionHelpers();
+        }
+        roleHelper = new RoleHelper(environment);
+        profileHelper = new ProfileHelper(credentialsHelper, environment);
+        loginLockHelper = new LoginLockHelper(environment);
+        oktaSessionManager = LoginHelpers.createOktaSessionManager(environment, getCookieHelper());
+        oktaSaml = LoginHelpers.createOktaSaml(environment, getCookieHelper(), oktaSessionManager);
+    }
+
+    private CookieHelper getCookieHelper() {
+        if (cookieHelper == null) {
+            cookieHelper = new CookieHelper(environment);
+        }
+        return cookieHelper;
+    }
+
+    // A class of its own because verifying the code that wires the login collaborators together loads their types
+    private static final class LoginHelpers {
+        private LoginHelpers() {}
+
+        static OktaSessionManager createOktaSessionManager(OktaAwsCliEnvironment environment, CookieHelper cookieHelper) {
+            return new OktaSessionManager(environment, cookieHelper, new OktaSessionClientImpl(environment));
+        }
+
+        static OktaSaml createOktaSaml(OktaAwsCliEnvironment environment, CookieHelper cookieHelper,
+                                       OktaSessionManager oktaSessionManager) {
+            MenuHelper menuHelper = new MenuHelperImpl();
+            OktaFactorSelector factorSelector = new OktaFactorSelectorImpl(environment, menuHelper);
+            OktaMFA oktaMFA = new OktaMFA(factorSelector);
+            UserConsole userConsole = new UserConsoleImpl();
+            OktaAuthnClient oktaAuthnClient = new OktaAuthnClientImpl();
+            OktaAuthentication oktaAuthentication = new OktaAuthentication(environment, oktaMFA, userConsole, oktaAuthnClient);
+            OktaAppClient oktaAppClient = new OktaAppClientImpl(cookieHelper);
+            return new OktaSaml(environment, oktaAuthentication, oktaAppClient, oktaSessionManager);
+        }
+    }
+
     RunResult run(Instant startInstant) throws IOException, InterruptedException {
-        init();
+        return run(startInstant, true);
+    }
+
+    /**
+     * Returns the active session or profile, or logs in and assumes the configured role
+     *
+     * @param startInstant The instant the run started
+     * @param interactive  Whether the user may be prompted; if not, only the saved Okta session is used
+     * @return The result of the run
+     * @throws IOException if file system, permissions or network errors are encountered
+     * @throws IllegalStateException if not interactive and logging in would prompt
+     */
+    RunResult run(Instant startInstant, boolean interactive) throws IOException, InterruptedException {
+        initSession();
+
+        // The current session file is a few properties, while the profiles file takes an INI parser to read
+        Optional<RunResult> activeRunResult = getActiveSessionRunResult(startInstant);
+        if (activeRunResult.isPresent()) {
+            return activeRunResult.get();
+        }
+
+        initProfile();
 
         environment.awsRoleToAssume = currentProfile.map(profile1 -> profile1.roleArn).orElse(environment.awsRoleToAssume);
 
+        activeRunResult = getActiveRunResult(startInstant);
+        if (activeRunResult.isPresent()) {
+            return activeRunResult.get();
+        }
+
+        initLoginHelpers();
+        try (LoginLockHelper.LoginLock loginLock = loginLockHelper.acquire(environment.oktaProfile, environment.awsRoleToAssume)) {
+            // Another process may have logged in while this one waited for the lock
+            init();
+
+            environment.awsRoleToAssume = currentProfile.map(profile1 -> profile1.roleArn).orElse(environment.awsRoleToAssume);
+
+            activeRunResult = getActiveRunResult(startInstant);
+            if (activeRunResult.isPresent()) {
+                return activeRunResult.get();
+            }
+
+            return toRunResult(doRequest(startInstant, interactive));
+        }
+    }
+
+    /**
+     * Assumes the given role again using only the saved Okta session, even if the current credentials are still
+     * valid, so that a resident process can renew them before anyone has to wait for a login
+     *
+     * @param startInstant The instant the renewal started
+     * @param roleArn      The role assumed before
+     * @return The renewed credentials
+     * @throws IOException if file system, permissions or network errors are encountered
+     * @throws IllegalStateException if the Okta session has ended or no longer grants the role
+     */
+    RunResult refresh(Instant startInstant, String roleArn) throws IOException, InterruptedException {
+        init();
+
+        environment.awsRoleToAssume = roleArn;
+
+        initLoginHelpers();
+        try (LoginLockHelper.LoginLock loginLock = loginLockHelper.acquire(environment.oktaProfile, environment.awsRoleToAssume)) {
+            // Extended now, the Okta session outlives these credentials and the next renewal needs no login
+            oktaSessionManager.extendSession();
+            return toRunResult(doRequest(startInstant, false));
+        }
+    }
+
+    /**
+     * Gets when the saved Okta session ends, as last learned from Okta
+     *
+     * @return The expiry of the Okta session
+     * @throws IOException if the cookies file cannot be loaded
+     */
+    Optional<Instant> getOktaSessionExpiry() throws IOException {
+        initLoginHelpers();
+        return oktaSessionManager.getSessionExpiry();
+    }
+
+    /**
+     * Logs in once and assumes every role matching the patterns with the same SAML assertion, writing a profile
+     * named roleName_account for each
+     *
+     * @param startInstant The instant the run started
+     * @param rolePatterns Globs or /regular expressions/ selecting roles, see
+     *                     {@link RoleHelper#chooseAwsRolesToAssume(SamlAssertion, List)}; none selects every role
+     * @return The results of the roles that were assumed, and the roles that could not be
+     * @throws IOException if file system, permissions or network errors are encountered
+     * @throws IllegalStateException if no role matches
+     */
+    RunAllResult runAll(Instant startInstant, List<String> rolePatterns) throws IOException, InterruptedException {
+        init();
+        initLoginHelpers();
+
+        SamlAssertion samlAssertion = oktaSaml.getSamlAssertion();
+        List<AssumeRoleWithSamlRequest> assumeRequests;
+        try (Timings.Phase phase = Timings.phase("chooseRole")) {
+            assumeRequests = roleHelper.chooseAwsRolesToAssume(samlAssertion, rolePatterns);
+        }
+        if (assumeRequests.isEmpty()) {
+            throw new IllegalStateException("No role matches " + String.join(" ", rolePatterns));
+        }
+        // The assertion is only accepted for a few minutes; Okta's is 5
+        Instant notOnOrAfter = samlAssertion.getNotOnOrAfter().orElse(startInstant.plus(5, ChronoUnit.MINUTES));
+        Map<String, AssumeRoleWithSamlResponse> assumeResults;
+        try (Timings.Phase phase = Timings.phase("assumeRole")) {
+            assumeResults = roleHelper.assumeChosenAwsRoles(assumeRequests, notOnOrAfter);
+        }
+
+        List<ProfileSAMLResult> profileSAMLResults = new ArrayList<>();
+        assumeResults.forEach((roleArn, assumeResult) ->
+                profileSAMLResults.add(new ProfileSAMLResult(assumeResult, profileHelper.getRoleProfileName(assumeResult), roleArn)));
+        if (!environment.oktaEnvMode && !profileSAMLResults.isEmpty()) {
+            Instant sessionExpiry = startInstant.plus((long) environment.stsDuration - (long) 30, ChronoUnit.SECONDS);
+            // All profiles are written together, in one replacement of each file
+            try (Timings.Phase phase = Timings.phase("writeFiles");
+                 FileTransaction transaction = FileTransaction.begin()) {
+                for (ProfileSAMLResult profileSAMLResult : profileSAMLResults) {
+                    profileHelper.createAwsProfile(profileSAMLResult.assumeRoleWithSAMLResult, profileSAMLResult.profileName);
+                    sessionHelper.addOrUpdateProfile(profileSAMLResult.profileName, profileSAMLResult.roleArn, sessionExpiry);
+                }
+                transaction.commit();
+            }
+        }
+
+        RunAllResult runAllResult = new RunAllResult();
+        for (ProfileSAMLResult profileSAMLResult : profileSAMLResults) {
+            runAllResult.assumed.add(toRunResult(profileSAMLResult));
+        }
+        for (AssumeRoleWithSamlRequest assumeRequest : assumeRequests) {
+            if (!assumeResults.containsKey(assumeRequest.roleArn())) {
+                runAllResult.failedRoleArns.add(assumeRequest.roleArn());
+            }
+        }
+        return runAllResult;
+    }
+
+    private static RunResult toRunResult(ProfileSAMLResult profileSAMLResult) {
+        RunResult runResult = new RunResult();
+        runResult.profileName = profileSAMLResult.profileName;
+        runResult.roleArn = profileSAMLResult.roleArn;
+        Credentials credentials = profileSAMLResult.assumeRoleWithSAMLResult.credentials();
+        runResult.accessKeyId = credentials.accessKeyId();
+        runResult.secretAccessKey = credentials.secretAccessKey();
+        runResult.sessionToken = credentials.sessionToken();
+        runResult.expiration = credentials.expiration();
+        return runResult;
+    }
+
+    private Optional<RunResult> getActiveSessionRunResult(Instant startInstant) {
         if (currentSession.isPresent() && sessionHelper.sessionIsActive(startInstant, currentSession.get())) {
             RunResult runResult = new RunResult();
             runResult.profileName = currentSession.get().profileName;
-            return runResult;
+            return Optional.of(runResult);
+        }
+        return Optional.empty();
+    }
+
+    private Optional<RunResult> getActiveRunResult(Instant startInstant) {
+        Optional<RunResult> activeSessionRunResult = getActiveSessionRunResult(startInstant);
+        if (activeSessionRunResult.isPresent()) {
+            return activeSessionRunResult;
         }
 
         if (currentProfile.isPresent()) {
@@ -95,27 +303,25 @@ final class OktaAwsCliAssumeRole {
             if (sessionHelper.sessionIsActive(startInstant, profileSession)) {
                 RunResult runResult = new RunResult();
                 runResult.profileName = environment.oktaProfile;
-                return runResult;
+                return Optional.of(runResult);
             }
         }
 
-        ProfileSAMLResult profileSAMLResult = doRequest(startInstant);
-
-        RunResult runResult = new RunResult();
-        runResult.profileName = profileSAMLResult.profileName;
-        Credentials credentials = profileSAMLResult.assumeRoleWithSAMLResult.credentials();
-        runResult.accessKeyId = credentials.accessKeyId();
-        runResult.secretAccessKey = credentials.secretAccessKey();
-        runResult.sessionToken = credentials.sessionToken();
-
-        return runResult;
+        return Optional.empty();
     }
 
-    class RunResult {
+    static class RunResult {
         String profileName;
+        String roleArn;
         String accessKeyId;
         String secretAccessKey;
         String sessionToken;
+        Instant expiration;
+    }
+
+    static class RunAllResult {
+        final List<RunResult> assumed = new ArrayList<>();
+        final List<String> failedRoleArns = new ArrayList<>();
     }
 
     AssumeRoleWithSamlResponse getAssumeRoleWithSAMLResult(Instant startInstant) throws IOException, InterruptedException {
@@ -123,24 +329,48 @@ final class OktaAwsCliAssumeRole {
 
         environment.awsRoleToAssume = currentProfile.map(profile1 -> profile1.roleArn).orElse(environment.awsRoleToAssume);
 
-        ProfileSAMLResult profileSAMLResult = doRequest(startInstant);
+        initLoginHelpers();
+        ProfileSAMLResult profileSAMLResult = doRequest(startInstant, true);
 
         return profileSAMLResult.assumeRoleWithSAMLResult;
     }
 
-    private ProfileSAMLResult doRequest(Instant startInstant) throws IOException, InterruptedException {
-        String samlResponse = oktaSaml.getSamlResponse();
-        AssumeRoleWithSamlRequest assumeRequest = roleHelper.chooseAwsRoleToAssume(samlResponse);
+    private ProfileSAMLResult doRequest(Instant startInstant, boolean interactive) throws IOException, InterruptedException {
+        SamlAssertion samlAssertion;
+        if (interactive) {
+            samlAssertion = oktaSaml.getSamlAssertion();
+        } else {
+            // Choosing among the roles would prompt
+            if (StringUtils.isEmpty(environment.awsRoleToAssume)) {
+                throw new IllegalStateException("No role to assume is configured, choosing one needs a prompt");
+            }
+            samlAssertion = oktaSaml.getSamlAssertionFromSession();
+            if (!samlAssertion.getRoles().containsKey(environment.awsRoleToAssume)) {
+                throw new IllegalStateException("The Okta session no longer grants " + environment.awsRoleToAssume);
+            }
+        }
+        AssumeRoleWithSamlRequest assumeRequest;
+        try (Timings.Phase phase = Timings.phase("chooseRole")) {
+            assumeRequest = roleHelper.chooseAwsRoleToAssume(samlAssertion);
+        }
         Instant sessionExpiry = startInstant.plus((long) assumeRequest.durationSeconds() - (long) 30, ChronoUnit.SECONDS);
-        AssumeRoleWithSamlResponse assumeResult = roleHelper.assumeChosenAwsRole(assumeRequest);
+        AssumeRoleWithSamlResponse assumeResult;
+        try (Timings.Phase phase = Timings.phase("assumeRole")) {
+            assumeResult = roleHelper.assumeChosenAwsRole(assumeRequest);
+        }
 
         String profileName = profileHelper.getProfileName(assumeResult);
         if (!environment.oktaEnvMode) {
-            profileHelper.createAwsProfile(assumeResult, profileName);
-            updateConfig(assumeRequest, sessionExpiry, profileName);
+            // Credentials, profiles and the current session are replaced together, or not at all
+            try (Timings.Phase phase = Timings.phase("writeFiles");
+                 FileTransaction transaction = FileTransaction.begin()) {
+                profileHelper.createAwsProfile(assumeResult, profileName);
+                updateConfig(assumeRequest, sessionExpiry, profileName);
+                transaction.commit();
+            }
         }
 
-        return new ProfileSAMLResult(assumeResult, profileName);
+        return new ProfileSAMLResult(assumeResult, profileName, assumeRequest.roleArn());
     }
 
     private void updateConfig(AssumeRoleWithSamlRequest assumeRequest, Instant sessionExpiry, String profileName) throws IOException {
@@ -153,11 +383,13 @@ final class OktaAwsCliAssumeRole {
     // Holds the values for the profile name and SAML result shared by CLI and SDK implementations
     static private class ProfileSAMLResult {
         String profileName;
+        String roleArn;
         AssumeRoleWithSamlResponse assumeRoleWithSAMLResult;
 
-        ProfileSAMLResult(AssumeRoleWithSamlResponse pAssumeRoleWithSAMLResult, String pProfileName) {
+        ProfileSAMLResult(AssumeRoleWithSamlResponse pAssumeRoleWithSAMLResult, String pProfileName, String pRoleArn) {
             assumeRoleWithSAMLResult = pAssumeRoleWithSAMLResult;
             profileName = pProfileName;
+            roleArn = pRoleArn;
         }
     }
 
@@ -165,5 +397,7 @@ final class OktaAwsCliAssumeRole {
         init();
 
         sessionHelper.logoutCurrentSession();
+        new CredentialCacheHelper(environment).clear();
+        OktaAwsAgent.logout(OktaAwsAgent.getAgentFile());
     }
 }
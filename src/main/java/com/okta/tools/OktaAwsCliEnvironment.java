@@ -36,6 +36,25 @@ public class OktaAwsCliEnvironment {
 
     public String oktaIgnoreSaml;
 
+    public boolean credentialCache = true;
+
+    public int loginLockTimeout = 120;
+
+    public boolean iniPatchMode;
+
+    public double refreshAhead = 0.75;
+
+    public boolean oktaSessionKeepAlive = true;
+
+    public int assumeRoleConcurrency = 8;
+
+    public String oktaProfiles;
+
+    public String stsEndpoint;
+    public String stsProbeRegions;
+
+    public boolean preconnect = true;
+
     public OktaAwsCliEnvironment()
     {
         this(false, null, null, null, null, null, null, null, 0, null, null, false, null);
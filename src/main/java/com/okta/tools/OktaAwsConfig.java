@@ -20,9 +20,14 @@ import org.apache.commons.lang.SystemUtils;
 import software.amazon.awssdk.regions.Region;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Properties;
 import java.util.logging.Logger;
@@ -35,6 +40,9 @@ final class OktaAwsConfig {
     private static final String CONFIG_FILENAME = "config.properties";
     private static final String CONFIG_PROFILE_FILENAME_FORMAT = "config.%s.properties";
 
+    // Sent to okta-aws-agent as arguments of their own, so they are left out of the fingerprint
+    private static final List<String> FINGERPRINT_EXCLUDED_VARIABLES = Arrays.asList("OKTA_PROFILE", "OKTA_AWS_ROLE_TO_ASSUME");
+
     static OktaAwsCliEnvironment loadEnvironment() {
         return loadEnvironment(System.getenv("OKTA_PROFILE"));
     }
@@ -64,7 +72,7 @@ final class OktaAwsConfig {
             }
         }
 
-        return new OktaAwsCliEnvironment(
+        OktaAwsCliEnvironment environment = new OktaAwsCliEnvironment(
                 Boolean.parseBoolean(getEnvOrConfig(properties, "OKTA_BROWSER_AUTH")),
                 getEnvOrConfig(properties, "OKTA_ORG"),
                 getEnvOrConfig(properties, "OKTA_USERNAME"),
@@ -79,6 +87,70 @@ final class OktaAwsConfig {
                 Boolean.parseBoolean(getEnvOrConfig(properties, "OKTA_ENV_MODE")),
                 getEnvOrConfig(properties, "OKTA_IGNORE_SAML_REQ_CONTAIN")
         );
+        environment.credentialCache = getBooleanOrDefault(getEnvOrConfig(properties, "OKTA_CREDENTIAL_CACHE"), true);
+        environment.loginLockTimeout = getIntegerOrDefault(getEnvOrConfig(properties, "OKTA_LOGIN_LOCK_TIMEOUT"), 120);
+        environment.iniPatchMode = getBooleanOrDefault(getEnvOrConfig(properties, "OKTA_INI_PATCH_MODE"), false);
+        environment.refreshAhead = getDoubleOrDefault(getEnvOrConfig(properties, "OKTA_REFRESH_AHEAD"), 0.75);
+        environment.oktaSessionKeepAlive = getBooleanOrDefault(getEnvOrConfig(properties, "OKTA_SESSION_KEEP_ALIVE"), true);
+        environment.assumeRoleConcurrency = getIntegerOrDefault(getEnvOrConfig(properties, "OKTA_ASSUME_ROLE_CONCURRENCY"), 8);
+        environment.oktaProfiles = getEnvOrConfig(properties, "OKTA_PROFILES");
+        environment.stsEndpoint = getEnvOrConfig(properties, "OKTA_STS_ENDPOINT");
+        environment.stsProbeRegions = getEnvOrConfig(properties, "OKTA_STS_PROBE_REGIONS");
+        environment.preconnect = getBooleanOrDefault(getEnvOrConfig(properties, "OKTA_PRECONNECT"), true);
+        return environment;
+    }
+
+    /**
+     * Gets a fingerprint of the settings a process picks up from where it runs: its OKTA_ environment variables, other
+     * than the profile and role, and the config files in its working directory. It is the POSIX {@code cksum} of the
+     * same lines the generated scripts build, so that okta-aws-agent can tell whether a caller would have loaded the
+     * configuration it did.
+     *
+     * @param environmentVariables The process environment
+     * @param workingDirectory     The real path of the working directory
+     * @param profile              The profile whose config file is also looked for, or null
+     * @return The checksum and length, separated by a dash
+     */
+    static String getFingerprint(Map<String, String> environmentVariables, Path workingDirectory, String profile) {
+        List<String> lines = environmentVariables.entrySet().stream()
+                .filter(variable -> variable.getKey().startsWith("OKTA_"))
+                .filter(variable -> !FINGERPRINT_EXCLUDED_VARIABLES.contains(variable.getKey()))
+                .map(variable -> variable.getKey() + "=" + variable.getValue())
+                .sorted()
+                .collect(Collectors.toList());
+        List<String> configFiles = new ArrayList<>();
+        configFiles.add(CONFIG_FILENAME);
+        if (StringUtils.isNotEmpty(profile)) {
+            configFiles.add(String.format(CONFIG_PROFILE_FILENAME_FORMAT, profile));
+        }
+        for (String configFile : configFiles) {
+            if (Files.isRegularFile(workingDirectory.resolve(configFile))) {
+                lines.add("config=" + workingDirectory + "/" + configFile);
+            }
+        }
+        StringBuilder text = new StringBuilder();
+        lines.forEach(line -> text.append(line).append('\n'));
+        return cksum(text.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    // The CRC of POSIX cksum: polynomial 0x04C11DB7, most significant bit first, followed by the length
+    static String cksum(byte[] bytes) {
+        int crc = 0;
+        for (byte b : bytes) {
+            crc = updateCrc(crc, b);
+        }
+        for (long length = bytes.length; length != 0; length >>>= 8) {
+            crc = updateCrc(crc, (byte) length);
+        }
+        return Integer.toUnsignedString(~crc) + "-" + bytes.length;
+    }
+
+    private static int updateCrc(int crc, byte b) {
+        crc ^= (b & 0xFF) << 24;
+        for (int bit = 0; bit < 8; bit++) {
+            crc = (crc & 0x80000000) != 0 ? (crc << 1) ^ 0x04C11DB7 : crc << 1;
+        }
+        return crc;
     }
 
     private static InterruptibleSupplier<String> deferProgram(String oktaPasswordCommand) {
@@ -162,6 +234,18 @@ final class OktaAwsConfig {
         return (stsDuration == null) ? 3600 : Integer.parseInt(stsDuration);
     }
 
+    private static boolean getBooleanOrDefault(String value, boolean defaultValue) {
+        return (value == null) ? defaultValue : Boolean.parseBoolean(value);
+    }
+
+    private static int getIntegerOrDefault(String value, int defaultValue) {
+        return (value == null) ? defaultValue : Integer.parseInt(value);
+    }
+
+    private static double getDoubleOrDefault(String value, double defaultValue) {
+        return (value == null) ? defaultValue : Double.parseDouble(value);
+    }
+
     private static Region getAwsRegionOrDefault(String region) {
         return Region.of((region == null) ? "us-east-1" : region);
     }
@@ -0,0 +1,272 @@
+/*
+ * Copyright 2019 Okta
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.okta.tools;
+
+import com.okta.tools.helpers.CredentialCacheHelper;
+import org.apache.commons.lang.StringUtils;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps initialized {@link OktaAwsCliAssumeRole} instances and their latest credentials in memory so that a
+ * long-lived process can answer repeated requests without re-reading configuration or logging in again.
+ * <p>
+ * Logins never prompt, since nobody may be watching the console the process was started from: one that would need
+ * the user (no saved Okta session, an app sign on rule, a role to choose) fails, and the caller logs in itself.
+ * <p>
+ * Credentials are renewed in the background once {@link OktaAwsCliEnvironment#refreshAhead} of their lifetime has
+ * passed, using the saved Okta session, so that requests keep being served from memory. A renewal that would need
+ * the user (an ended Okta session, an app sign on rule) is given up and left to the next request.
+ */
+final class ResidentCredentials {
+    private static final Logger logger = Logger.getLogger(ResidentCredentials.class.getName());
+
+    // Same safety margin used when recording session expiry in OktaAwsCliAssumeRole
+    private static final Duration EXPIRY_SKEW = Duration.ofSeconds(30);
+
+    // Renewals are never scheduled sooner than this, so a short-lived role cannot make the agent spin
+    private static final Duration MIN_REFRESH_DELAY = Duration.ofSeconds(10);
+
+    // Up to this fraction of the lifetime is taken off each renewal so residents issued together spread out
+    private static final double REFRESH_JITTER = 0.1;
+
+    private final Map<Key, Resident> residents = new ConcurrentHashMap<>();
+
+    private final Function<String, OktaAwsCliEnvironment> environments;
+    private final Function<OktaAwsCliEnvironment, OktaAwsCliAssumeRole> assumeRoles;
+    private final Clock clock;
+    private final ScheduledExecutorService refresher;
+
+    ResidentCredentials() {
+        this(OktaAwsConfig::loadEnvironment, OktaAwsCliAssumeRole::withEnvironment, Clock.systemUTC(),
+                Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "okta-aws-agent-refresh");
+                    thread.setDaemon(true);
+                    return thread;
+                }));
+    }
+
+    ResidentCredentials(Function<String, OktaAwsCliEnvironment> environments,
+                        Function<OktaAwsCliEnvironment, OktaAwsCliAssumeRole> assumeRoles,
+                        Clock clock, ScheduledExecutorService refresher) {
+        this.environments = environments;
+        this.assumeRoles = assumeRoles;
+        this.clock = clock;
+        this.refresher = refresher;
+    }
+
+    /**
+     * Gets credentials for the given profile and role, logging in only if no unexpired result is held
+     *
+     * @param profile    The Okta profile name, or null to use the configured default
+     * @param roleArn    The role to assume, or null to use the configured default
+     * @param oktaEnvMode Whether the credentials are handed to the caller rather than written to ~/.aws
+     * @return The result of the (possibly cached) run
+     * @throws IOException if file system, permissions or network errors are encountered
+     * @throws InterruptedException if the login is interrupted
+     * @throws IllegalStateException if logging in would prompt
+     */
+    OktaAwsCliAssumeRole.RunResult get(String profile, String roleArn, boolean oktaEnvMode) throws IOException, InterruptedException {
+        Key key = new Key(profile, roleArn, oktaEnvMode);
+        Resident resident = residents.computeIfAbsent(key, this::newResident);
+        synchronized (resident) {
+            Instant now = clock.instant();
+            if (resident.isFresh(now)) {
+                logger.fine(() -> "Serving resident credentials for " + key);
+                return resident.result;
+            }
+            resident.result = resident.assumeRole.run(now, false);
+            scheduleRefresh(key, resident, now);
+            return resident.result;
+        }
+    }
+
+    // Callers hold the resident's monitor
+    private void scheduleRefresh(Key key, Resident resident, Instant issued) {
+        if (resident.refresh != null) {
+            resident.refresh.cancel(false);
+            resident.refresh = null;
+        }
+        OktaAwsCliAssumeRole.RunResult result = resident.result;
+        if (resident.environment.refreshAhead <= 0 || result == null || result.expiration == null || result.roleArn == null) {
+            return;
+        }
+
+        long lifetimeMillis = Duration.between(issued, result.expiration).toMillis();
+        long jitterMillis = ThreadLocalRandom.current().nextLong((long) (lifetimeMillis * REFRESH_JITTER) + 1);
+        Instant refreshAt = issued.plusMillis((long) (lifetimeMillis * resident.environment.refreshAhead) - jitterMillis);
+
+        Instant latest = result.expiration.minus(resident.getMinimumRemainingValidity());
+        Optional<Instant> oktaSessionExpiry = getOktaSessionExpiry(resident);
+        if (oktaSessionExpiry.isPresent() && oktaSessionExpiry.get().isBefore(latest)) {
+            // Past this point there is no session to renew with
+            latest = oktaSessionExpiry.get().minus(EXPIRY_SKEW);
+        }
+        if (refreshAt.isAfter(latest)) {
+            refreshAt = latest;
+        }
+
+        Instant earliest = clock.instant().plus(MIN_REFRESH_DELAY);
+        if (refreshAt.isBefore(earliest)) {
+            logger.fine(() -> "Not renewing " + key + " ahead of expiry: credentials expire " + result.expiration +
+                    ", Okta session expires " + oktaSessionExpiry.map(Instant::toString).orElse("(unknown)"));
+            return;
+        }
+
+        long delayMillis = Duration.between(clock.instant(), refreshAt).toMillis();
+        Instant scheduledAt = refreshAt;
+        logger.fine(() -> "Renewing " + key + " at " + scheduledAt + ", credentials expire " + result.expiration +
+                ", Okta session expires " + oktaSessionExpiry.map(Instant::toString).orElse("(unknown)"));
+        resident.refresh = refresher.schedule(() -> refresh(key, resident), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void refresh(Key key, Resident resident) {
+        synchronized (resident) {
+            resident.refresh = null;
+            if (resident.result == null || resident.result.roleArn == null) {
+                return;
+            }
+            Instant now = clock.instant();
+            try {
+                resident.result = resident.assumeRole.refresh(now, resident.result.roleArn);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException | RuntimeException e) {
+                // The credentials held are still valid; the next request after they expire logs in as usual
+                logger.log(Level.INFO, e, () -> "Could not renew " + key + " ahead of expiry: " + e.getMessage());
+                return;
+            }
+            logger.fine(() -> "Renewed " + key + " ahead of expiry");
+            scheduleRefresh(key, resident, now);
+        }
+    }
+
+    private static Optional<Instant> getOktaSessionExpiry(Resident resident) {
+        try {
+            return resident.assumeRole.getOktaSessionExpiry();
+        } catch (IOException e) {
+            logger.log(Level.FINE, "Could not read the Okta session cookie", e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Drops all held credentials and their scheduled renewals, so the next request logs in again
+     */
+    void clear() {
+        for (Key key : residents.keySet()) {
+            Resident resident = residents.remove(key);
+            if (resident == null) continue;
+            synchronized (resident) {
+                if (resident.refresh != null) {
+                    resident.refresh.cancel(false);
+                    resident.refresh = null;
+                }
+                // A renewal already started finds nothing to renew
+                resident.result = null;
+            }
+        }
+        logger.fine("Dropped all resident credentials");
+    }
+
+    OktaAwsCliEnvironment getEnvironment(String profile, String roleArn, boolean oktaEnvMode) {
+        return residents.computeIfAbsent(new Key(profile, roleArn, oktaEnvMode), this::newResident).environment;
+    }
+
+    private Resident newResident(Key key) {
+        OktaAwsCliEnvironment environment = environments.apply(key.profile);
+        if (StringUtils.isNotBlank(key.roleArn)) {
+            environment.awsRoleToAssume = key.roleArn;
+        }
+        environment.oktaEnvMode = environment.oktaEnvMode || key.oktaEnvMode;
+        return new Resident(environment, assumeRoles.apply(environment));
+    }
+
+    private static final class Resident {
+        final OktaAwsCliEnvironment environment;
+        final OktaAwsCliAssumeRole assumeRole;
+        OktaAwsCliAssumeRole.RunResult result;
+        ScheduledFuture<?> refresh;
+
+        Resident(OktaAwsCliEnvironment environment, OktaAwsCliAssumeRole assumeRole) {
+            this.environment = environment;
+            this.assumeRole = assumeRole;
+        }
+
+        boolean isFresh(Instant now) {
+            // Results without an expiration refer to an active ~/.aws profile, which run() re-checks cheaply
+            return result != null && result.expiration != null &&
+                    now.isBefore(result.expiration.minus(getMinimumRemainingValidity()));
+        }
+
+        Duration getMinimumRemainingValidity() {
+            // Credentials handed to the caller may end up in an AWS SDK, which would refresh them straight away
+            return environment.oktaEnvMode ? CredentialCacheHelper.MINIMUM_REMAINING_VALIDITY : EXPIRY_SKEW;
+        }
+    }
+
+    private static final class Key {
+        final String profile;
+        final String roleArn;
+        final boolean oktaEnvMode;
+
+        Key(String profile, String roleArn, boolean oktaEnvMode) {
+            this.profile = StringUtils.trimToNull(profile);
+            this.roleArn = StringUtils.trimToNull(roleArn);
+            this.oktaEnvMode = oktaEnvMode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return oktaEnvMode == key.oktaEnvMode &&
+                    Objects.equals(profile, key.profile) &&
+                    Objects.equals(roleArn, key.roleArn);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(profile, roleArn, oktaEnvMode);
+        }
+
+        @Override
+        public String toString() {
+            return "Key{" +
+                    "profile='" + profile + '\'' +
+                    ", roleArn='" + roleArn + '\'' +
+                    ", oktaEnvMode=" + oktaEnvMode +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2019 Okta
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.okta.tools.authentication;
+
+import com.okta.tools.OktaAwsCliEnvironment;
+
+import java.io.IOException;
+
+/**
+ * Signs in to Okta in a browser window, for OKTA_BROWSER_AUTH. Implementations ship separately from the CLI, in
+ * okta-aws-cli-browser.jar, and are found with {@link java.util.ServiceLoader} only when browser authentication is used.
+ */
+public interface BrowserLogin {
+
+    /**
+     * Shows the Okta AWS app in a browser window until the user has signed in
+     *
+     * @param environment The environment naming the app and the cookies file to start from
+     * @return The SAML response posted to AWS
+     * @throws IOException if the cookies file cannot be read
+     * @throws InterruptedException if interrupted while waiting for the user
+     */
+    String login(OktaAwsCliEnvironment environment) throws IOException, InterruptedException;
+}
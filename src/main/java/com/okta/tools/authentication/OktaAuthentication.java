@@ -16,6 +16,8 @@
 package com.okta.tools.authentication;
 
 import com.okta.tools.OktaAwsCliEnvironment;
+import com.okta.tools.helpers.ConnectionWarmer;
+import com.okta.tools.helpers.Timings;
 import com.okta.tools.models.AuthResult;
 import org.apache.http.HttpStatus;
 import org.json.JSONObject;
@@ -84,7 +86,9 @@ public final class OktaAuthentication {
                 throw new IllegalStateException("Invalid value - should never happen.");
             case MFA_REQUIRED:
                 // Handle second-factor
-                return oktaMFA.promptForFactor(primaryAuthResult);
+                try (Timings.Phase phase = Timings.phase("mfa")) {
+                    return oktaMFA.promptForFactor(primaryAuthResult);
+                }
             case SUCCESS:
                 if (primaryAuthResult.has(sessionProperty)) {
                     return primaryAuthResult.getString(sessionProperty);
@@ -123,6 +127,8 @@ public final class OktaAuthentication {
      * @throws IOException If an error occurs during the api call or during the processing of the result.
      */
     private String getPrimaryAuthResponse(String oktaOrg) throws IOException, InterruptedException {
+        // Handshakes, slow through some proxies, then happen while the user types
+        ConnectionWarmer.start(environment);
         while (true) {
             AuthResult response = oktaAuthnClient.primaryAuthentication(getUsername(), getPassword(), oktaOrg);
             int requestStatus = response.statusLine.getStatusCode();
@@ -16,11 +16,13 @@
 package com.okta.tools.authentication;
 
 import com.okta.tools.helpers.HttpHelper;
+import com.okta.tools.helpers.Timings;
+import com.okta.tools.jfr.OktaAuthnEvent;
 import com.okta.tools.models.AuthResult;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
 import org.json.JSONObject;
 
 import java.io.ByteArrayOutputStream;
@@ -50,13 +52,20 @@ public class OktaAuthnClientImpl implements OktaAuthnClient {
         httpPost.setEntity(entity);
 
         logger.finer("Calling okta authn service at " + httpPost.getURI());
-        try (CloseableHttpClient httpClient = HttpHelper.createClient()) {
-            CloseableHttpResponse authnResponse = httpClient.execute(httpPost);
-
+        OktaAuthnEvent event = new OktaAuthnEvent();
+        event.begin();
+        try (Timings.Phase phase = Timings.phase("authn");
+             CloseableHttpResponse authnResponse = HttpHelper.getClient().execute(httpPost, HttpHelper.newContext())) {
             ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(65536);
             authnResponse.getEntity().writeTo(byteArrayOutputStream);
+            EntityUtils.consume(authnResponse.getEntity());
 
+            event.httpStatus = authnResponse.getStatusLine().getStatusCode();
+            event.responseBytes = byteArrayOutputStream.size();
             return new AuthResult(authnResponse.getStatusLine(), byteArrayOutputStream.toString());
+        } finally {
+            event.org = oktaOrg;
+            event.commit();
         }
     }
 }
@@ -16,10 +16,10 @@
 package com.okta.tools.authentication;
 
 import com.okta.tools.helpers.HttpHelper;
+import com.okta.tools.jfr.MfaVerifyEvent;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.util.EntityUtils;
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -270,7 +270,7 @@ public class OktaMFA {
             profile.put("answer", answer);
         }
 
-        JSONObject verifyResponse = postAndGetJsonResponse(profile, verifyPoint);
+        JSONObject verifyResponse = postAndGetJsonResponse(profile, verifyPoint, factorType, false);
 
         if (verifyResponse.has("errorCode")) {
             String errorSummary = verifyResponse.getString("errorSummary");
@@ -294,12 +294,12 @@ public class OktaMFA {
     private static String handlePushPolling(JSONObject profile, JSONObject jsonObjResponse) throws IOException, InterruptedException {
         String pollUrl = getPollURL(jsonObjResponse);
 
-        JSONObject pollResult = postAndGetJsonResponse(profile, pollUrl);
+        JSONObject pollResult = postAndGetJsonResponse(profile, pollUrl, FACTOR_TYPE_PUSH, true);
         String result = pollResult.getString(FACTOR_RESULT);
         while ("WAITING".equals(result)) {
             System.err.println("Waiting for you to approve the Okta push notification on your device...");
             Thread.sleep(500);
-            pollResult = postAndGetJsonResponse(profile, pollUrl);
+            pollResult = postAndGetJsonResponse(profile, pollUrl, FACTOR_TYPE_PUSH, true);
             String status = pollResult.getString(STATUS);
             if ("SUCCESS".equals(status)) {
                 return pollResult.getString(SESSION_TOKEN);
@@ -328,7 +328,9 @@ public class OktaMFA {
         return pollLink.getString("href");
     }
 
-    private static JSONObject postAndGetJsonResponse(JSONObject profile, String url) throws IOException {
+    private static JSONObject postAndGetJsonResponse(JSONObject profile, String url, String factorType, boolean poll) throws IOException {
+        MfaVerifyEvent event = new MfaVerifyEvent();
+        event.begin();
         HttpPost httpPost = new HttpPost(url);
         httpPost.addHeader("Accept", CONTENT_TYPE_APPLICATION_JSON);
         httpPost.addHeader("Content-Type", CONTENT_TYPE_APPLICATION_JSON);
@@ -338,10 +340,18 @@ public class OktaMFA {
         entity.setContentType(CONTENT_TYPE_APPLICATION_JSON);
         httpPost.setEntity(entity);
 
-        try (CloseableHttpClient httpClient = HttpHelper.createClient();
-             CloseableHttpResponse responseAuthenticate = httpClient.execute(httpPost)) {
+        try (CloseableHttpResponse responseAuthenticate = HttpHelper.getClient().execute(httpPost, HttpHelper.newContext())) {
             String outputAuthenticate = EntityUtils.toString(responseAuthenticate.getEntity());
-            return new JSONObject(outputAuthenticate);
+            JSONObject jsonResponse = new JSONObject(outputAuthenticate);
+            if (event.shouldCommit()) {
+                event.status = jsonResponse.optString(FACTOR_RESULT, jsonResponse.optString(STATUS, null));
+                event.responseBytes = outputAuthenticate.getBytes(StandardCharsets.UTF_8).length;
+            }
+            return jsonResponse;
+        } finally {
+            event.factorType = factorType;
+            event.poll = poll;
+            event.commit();
         }
     }
 
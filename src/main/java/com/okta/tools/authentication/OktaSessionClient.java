@@ -0,0 +1,44 @@
+/*
+ * Copyright 2019 Okta
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.okta.tools.authentication;
+
+import org.apache.http.client.CookieStore;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Optional;
+
+public interface OktaSessionClient {
+    /**
+     * Looks up the Okta session identified by the session cookie
+     *
+     * @param cookieStore The cookies holding the session
+     * @return When the session expires, or empty if Okta says there is no session
+     * @throws IOException if the request fails
+     * @throws IllegalStateException if Okta's answer doesn't tell whether the session is active
+     */
+    Optional<Instant> getSession(CookieStore cookieStore) throws IOException;
+
+    /**
+     * Extends the Okta session identified by the session cookie, as if the user had been active
+     *
+     * @param cookieStore The cookies holding the session
+     * @return When the extended session expires, or empty if Okta says there is no session
+     * @throws IOException if the request fails
+     * @throws IllegalStateException if Okta's answer doesn't tell whether the session is active
+     */
+    Optional<Instant> refreshSession(CookieStore cookieStore) throws IOException;
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2019 Okta
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.okta.tools.authentication;
+
+import com.okta.tools.OktaAwsCliEnvironment;
+import com.okta.tools.helpers.HttpHelper;
+import com.okta.tools.helpers.Timings;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.CookieStore;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.util.EntityUtils;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.logging.Logger;
+
+public class OktaSessionClientImpl implements OktaSessionClient {
+    private static final Logger logger = Logger.getLogger(OktaSessionClientImpl.class.getName());
+    private static final String CONTENT_TYPE_APPLICATION_JSON = "application/json";
+
+    private final OktaAwsCliEnvironment environment;
+
+    public OktaSessionClientImpl(OktaAwsCliEnvironment environment) {
+        this.environment = environment;
+    }
+
+    @Override
+    public Optional<Instant> getSession(CookieStore cookieStore) throws IOException {
+        // Okta sessions API docs: https://developer.okta.com/docs/reference/api/sessions/#get-current-session
+        HttpGet httpGet = new HttpGet("https://" + environment.oktaOrg + "/api/v1/sessions/me");
+        return execute(httpGet, cookieStore, "sessionCheck");
+    }
+
+    @Override
+    public Optional<Instant> refreshSession(CookieStore cookieStore) throws IOException {
+        // Okta sessions API docs: https://developer.okta.com/docs/reference/api/sessions/#refresh-current-session
+        HttpPost httpPost = new HttpPost("https://" + environment.oktaOrg + "/api/v1/sessions/me/lifecycle/refresh");
+        return execute(httpPost, cookieStore, "sessionRefresh");
+    }
+
+    private Optional<Instant> execute(HttpUriRequest request, CookieStore cookieStore, String phaseName) throws IOException {
+        request.addHeader("Accept", CONTENT_TYPE_APPLICATION_JSON);
+        request.addHeader("Cache-Control", "no-cache");
+
+        logger.finer(() -> "Calling okta sessions service at " + request.getURI());
+        try (Timings.Phase phase = Timings.phase(phaseName);
+             CloseableHttpResponse response = HttpHelper.getClient().execute(request, HttpHelper.newContext(cookieStore))) {
+            int statusCode = response.getStatusLine().getStatusCode();
+            String body = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+            // Only these say the session is gone; a 403 can come from a network zone or rule and tells nothing
+            if (statusCode == HttpStatus.SC_NOT_FOUND || statusCode == HttpStatus.SC_UNAUTHORIZED) {
+                return Optional.empty();
+            } else if (statusCode != HttpStatus.SC_OK) {
+                throw new IllegalStateException("Failed : HTTP error code : " + statusCode);
+            }
+            JSONObject session = new JSONObject(body);
+            if (!"ACTIVE".equals(session.optString("status", "ACTIVE")) || !session.has("expiresAt")) {
+                throw new IllegalStateException("Okta session is " + session.optString("status", "ACTIVE") +
+                        (session.has("expiresAt") ? "" : " without an expiry"));
+            }
+            return Optional.of(Instant.parse(session.getString("expiresAt")));
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2019 Okta
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.okta.tools.authentication;
+
+import com.okta.tools.OktaAwsCliEnvironment;
+import com.okta.tools.helpers.CookieHelper;
+import org.apache.http.client.CookieStore;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Tracks the Okta session held in the saved cookies, so that callers can tell whether launching the AWS app will
+ * work without downloading the app launch page, and keeps the session alive while it is still valid.
+ * <p>
+ * What Okta said is remembered in memory and saved as a hint next to the cookies, so that later processes know it
+ * too. The session cookie itself is left alone: Okta sessions slide, so once the hinted expiry has passed Okta is
+ * asked again rather than the session given up. Only Okta saying the session has ended is taken as final.
+ */
+public class OktaSessionManager {
+    private static final Logger logger = Logger.getLogger(OktaSessionManager.class.getName());
+
+    private static final Duration EXPIRY_SKEW = Duration.ofSeconds(30);
+
+    // How long an answer from Okta is trusted before a long-lived process asks again
+    private static final Duration CHECK_INTERVAL = Duration.ofMinutes(5);
+
+    private final OktaAwsCliEnvironment environment;
+    private final CookieHelper cookieHelper;
+    private final OktaSessionClient oktaSessionClient;
+
+    private Instant expiresAt;
+    private Instant checkedAt;
+
+    public OktaSessionManager(OktaAwsCliEnvironment environment, CookieHelper cookieHelper, OktaSessionClient oktaSessionClient) {
+        this.environment = environment;
+        this.cookieHelper = cookieHelper;
+        this.oktaSessionClient = oktaSessionClient;
+    }
+
+    /**
+     * Tells whether the saved cookies hold an Okta session that can launch the AWS app. Asks Okta only when the
+     * session's expiry is not known; with keep-alive enabled, that request also extends the session.
+     *
+     * @return false if there is definitely no active session; true if there is, or if Okta could not be asked
+     * @throws IOException if the cookies file cannot be read or written
+     */
+    public synchronized boolean hasActiveSession() throws IOException {
+        Instant now = Instant.now();
+        CookieStore cookieStore = cookieHelper.loadCookies();
+        if (!CookieHelper.hasSessionCookie(cookieStore)) {
+            logger.fine("No Okta session cookie");
+            return false;
+        }
+        if (isCheckedRecently(now)) {
+            return true;
+        }
+        Optional<CookieHelper.SessionHint> hint = cookieHelper.getSessionHint(cookieStore);
+        if (hint.isPresent() && hint.get().hasEnded()) {
+            logger.fine("Okta session has ended");
+            return false;
+        }
+        Optional<Instant> knownExpiry = hint.isPresent() ?
+                Optional.of(hint.get().expiresAt) :
+                CookieHelper.getSessionExpiry(cookieStore);
+        if (knownExpiry.isPresent() && now.plus(EXPIRY_SKEW).isBefore(knownExpiry.get())) {
+            return true;
+        }
+        try {
+            return check(cookieStore, environment.oktaSessionKeepAlive).isPresent();
+        } catch (IOException | RuntimeException e) {
+            // Launching the app still tells for certain
+            logger.log(Level.FINE, "Unable to check the Okta session", e);
+            return true;
+        }
+    }
+
+    /**
+     * Gets when the Okta session expires, as last learned from Okta. Makes no requests.
+     *
+     * @return The session expiry, or empty if unknown, already passed or there is no session
+     * @throws IOException if the cookies file cannot be read
+     */
+    public synchronized Optional<Instant> getSessionExpiry() throws IOException {
+        Instant now = Instant.now();
+        if (expiresAt != null && now.isBefore(expiresAt)) {
+            return Optional.of(expiresAt);
+        }
+        CookieStore cookieStore = cookieHelper.loadCookies();
+        Optional<CookieHelper.SessionHint> hint = cookieHelper.getSessionHint(cookieStore);
+        Optional<Instant> knownExpiry = hint.isPresent() ?
+                Optional.ofNullable(hint.get().expiresAt) :
+                CookieHelper.getSessionExpiry(cookieStore);
+        return knownExpiry.filter(now::isBefore);
+    }
+
+    /**
+     * Extends the Okta session if it is still active. Does nothing unless keep-alive is enabled.
+     *
+     * A failure is only logged, so that it never stands in the way of what the caller does next.
+     *
+     * @return When the session now expires, or empty if it has ended, is unknown or was not extended
+     */
+    public synchronized Optional<Instant> extendSession() {
+        if (!environment.oktaSessionKeepAlive) {
+            return Optional.empty();
+        }
+        try {
+            CookieStore cookieStore = cookieHelper.loadCookies();
+            if (!CookieHelper.hasSessionCookie(cookieStore)) {
+                return Optional.empty();
+            }
+            return check(cookieStore, true);
+        } catch (IOException | IllegalStateException e) {
+            logger.log(Level.FINE, "Unable to extend the Okta session", e);
+            return Optional.empty();
+        }
+    }
+
+    private boolean isCheckedRecently(Instant now) {
+        return checkedAt != null && now.isBefore(checkedAt.plus(CHECK_INTERVAL)) &&
+                now.plus(EXPIRY_SKEW).isBefore(expiresAt);
+    }
+
+    // Throws when Okta could not tell, which leaves what is known, and the cookie, as it was
+    private Optional<Instant> check(CookieStore cookieStore, boolean extend) throws IOException {
+        Optional<Instant> sessionExpiry = extend ?
+                oktaSessionClient.refreshSession(cookieStore) :
+                oktaSessionClient.getSession(cookieStore);
+        if (sessionExpiry.isPresent()) {
+            logger.fine(() -> "Okta session " + (extend ? "extended" : "active") + " until " + sessionExpiry.get());
+            expiresAt = sessionExpiry.get();
+            checkedAt = Instant.now();
+        } else {
+            logger.fine("Okta session has ended");
+            expiresAt = null;
+            checkedAt = null;
+        }
+        // The next process knows without asking, until a new login replaces the session cookie
+        cookieHelper.storeSessionHint(cookieStore, expiresAt);
+        return sessionExpiry;
+    }
+}
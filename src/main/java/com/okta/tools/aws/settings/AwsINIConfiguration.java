@@ -16,6 +16,7 @@
  */
 package com.okta.tools.aws.settings;
 
+import com.okta.tools.jfr.IniFileEvent;
 import org.apache.commons.configuration2.BaseHierarchicalConfiguration;
 import org.apache.commons.configuration2.FileBasedConfiguration;
 import org.apache.commons.configuration2.HierarchicalConfiguration;
@@ -27,6 +28,12 @@ import org.apache.commons.lang3.StringUtils;
 
 import javax.annotation.Nonnull;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.util.*;
 
 /**
@@ -100,7 +107,10 @@ public class AwsINIConfiguration extends BaseHierarchicalConfiguration implement
      */
     @Override
     public void write(Writer writer) {
-        PrintWriter out = new PrintWriter(writer);
+        IniFileEvent event = new IniFileEvent();
+        event.begin();
+        CountingWriter countingWriter = new CountingWriter(writer);
+        PrintWriter out = new PrintWriter(countingWriter);
         boolean first = true;
         final String separator = getSeparatorUsedInOutput();
 
@@ -109,6 +119,7 @@ public class AwsINIConfiguration extends BaseHierarchicalConfiguration implement
             for (ImmutableNode node : getModel().getNodeHandler().getRootNode()
                     .getChildren()) {
                 if (isSectionNode(node)) {
+                    event.sectionCount++;
                     if (!first) {
                         out.println();
                     }
@@ -130,6 +141,9 @@ public class AwsINIConfiguration extends BaseHierarchicalConfiguration implement
             out.flush();
         } finally {
             endRead();
+            event.operation = "write";
+            event.size = countingWriter.size.finish();
+            event.commit();
         }
     }
 
@@ -143,13 +157,123 @@ public class AwsINIConfiguration extends BaseHierarchicalConfiguration implement
      */
     @Override
     public void read(Reader in) throws IOException {
-        BufferedReader bufferedReader = new BufferedReader(in);
+        IniFileEvent event = new IniFileEvent();
+        event.begin();
+        CountingReader countingReader = new CountingReader(in);
+        BufferedReader bufferedReader = new BufferedReader(countingReader);
         Map<String, ImmutableNode.Builder> sectionBuilders = new LinkedHashMap<>();
         ImmutableNode.Builder rootBuilder = new ImmutableNode.Builder();
 
-        createNodeBuilders(bufferedReader, rootBuilder, sectionBuilders);
-        ImmutableNode rootNode = createNewRootNode(rootBuilder, sectionBuilders);
-        addNodes(null, rootNode.getChildren());
+        try {
+            createNodeBuilders(bufferedReader, rootBuilder, sectionBuilders);
+            ImmutableNode rootNode = createNewRootNode(rootBuilder, sectionBuilders);
+            addNodes(null, rootNode.getChildren());
+        } finally {
+            event.operation = "read";
+            event.size = countingReader.size.finish();
+            event.sectionCount = sectionBuilders.size();
+            event.commit();
+        }
+    }
+
+    /**
+     * Counts the bytes the characters take in the default charset, which FileHelper reads and writes the AWS
+     * files in, so that {@link IniFileEvent} reports sizes like the other file events.
+     */
+    private static final class ByteCounter {
+        private final CharsetEncoder encoder = Charset.defaultCharset().newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final ByteBuffer scratch = ByteBuffer.allocate(1024);
+        // A high surrogate at the end of one chunk is encoded with the low surrogate starting the next
+        private CharBuffer pending = CharBuffer.allocate(0);
+        private long bytes;
+
+        void add(char[] cbuf, int off, int len) {
+            CharBuffer chars = CharBuffer.wrap(cbuf, off, len);
+            if (pending.hasRemaining()) {
+                chars = CharBuffer.allocate(pending.remaining() + len).put(pending).put(chars).flip();
+            }
+            encode(chars, false);
+            // Copied, as the caller reuses its buffer
+            pending = CharBuffer.wrap(chars.toString());
+        }
+
+        void add(String str, int off, int len) {
+            add(str.toCharArray(), off, len);
+        }
+
+        long finish() {
+            encode(pending, true);
+            encoder.flush(scratch);
+            bytes += scratch.position();
+            scratch.clear();
+            pending = CharBuffer.allocate(0);
+            return bytes;
+        }
+
+        private void encode(CharBuffer chars, boolean endOfInput) {
+            CoderResult result;
+            do {
+                result = encoder.encode(chars, scratch, endOfInput);
+                bytes += scratch.position();
+                scratch.clear();
+            } while (result.isOverflow());
+        }
+    }
+
+    /**
+     * Counts the bytes read, for {@link IniFileEvent}.
+     */
+    private static final class CountingReader extends FilterReader {
+        private final ByteCounter size = new ByteCounter();
+
+        CountingReader(Reader in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int c = super.read();
+            if (c >= 0) size.add(new char[] {(char) c}, 0, 1);
+            return c;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            int read = super.read(cbuf, off, len);
+            if (read > 0) size.add(cbuf, off, read);
+            return read;
+        }
+    }
+
+    /**
+     * Counts the bytes written, for {@link IniFileEvent}.
+     */
+    private static final class CountingWriter extends FilterWriter {
+        private final ByteCounter size = new ByteCounter();
+
+        CountingWriter(Writer out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            super.write(c);
+            size.add(new char[] {(char) c}, 0, 1);
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            super.write(cbuf, off, len);
+            size.add(cbuf, off, len);
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            super.write(str, off, len);
+            size.add(str, off, len);
+        }
     }
 
     /**
@@ -524,7 +648,7 @@ public class AwsINIConfiguration extends BaseHierarchicalConfiguration implement
      * @param value the value to be escaped
      * @return the value with comment characters escaped
      */
-    private static String escapeComments(String value) {
+    static String escapeComments(String value) {
         boolean quoted = false;
 
         for (int i = 0; i < COMMENT_CHARS.length() && !quoted; i++) {
@@ -44,6 +44,17 @@ public class Credentials extends Settings {
         super(reader);
     }
 
+    /**
+     * Create a Credentials object from a given {@link Reader}, optionally patching only the changed profiles on save.
+     *
+     * @param reader The settings we want to work with. N.B.: The reader is consumed by the constructor.
+     * @param patch  Whether to patch changed profiles instead of re-serializing the whole file
+     * @throws IOException Thrown when we cannot read or load from the given {@param reader}.
+     */
+    public Credentials(Reader reader, boolean patch) throws IOException {
+        super(reader, patch);
+    }
+
     /**
      * Add or update a profile to an AWS credentials file based on {@code name}.
      *
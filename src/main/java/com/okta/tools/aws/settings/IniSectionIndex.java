@@ -0,0 +1,249 @@
+/*
+ * Copyright 2019 Okta
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.okta.tools.aws.settings;
+
+import com.okta.tools.helpers.FileReplacement;
+import com.okta.tools.helpers.FileReplacement.FileVersion;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <p>Reads single sections of an INI file without parsing the rest of it.</p>
+ * <p>The byte range of every section is kept in a ".name.index" file next to the INI file, as fixed size records
+ * sorted by a hash of the section name, so that a lookup is a binary search followed by one read of the section.
+ * The index records the size, modification time and identity of the file it was built from and is rebuilt, with a
+ * single scan of the file, whenever those no longer match.</p>
+ */
+public final class IniSectionIndex {
+    private static final Logger logger = Logger.getLogger(IniSectionIndex.class.getName());
+
+    private static final int MAGIC = 0x4f4b4958; // "OKIX"
+    private static final int VERSION = 1;
+    private static final int HEADER_LENGTH = 12 + FileVersion.BYTES;
+    private static final int RECORD_LENGTH = 20;
+    private static final int MAX_ATTEMPTS = 3;
+
+    private IniSectionIndex() {
+    }
+
+    /**
+     * Reads a section of an INI file, from its header up to the next section
+     *
+     * @param file    The INI file
+     * @param section The name of the section
+     * @return The text of the section, or of every section with that name if there are duplicates, or empty if the
+     * file or section doesn't exist
+     * @throws IOException if a file system or permissions error is encountered
+     */
+    public static Optional<String> readSection(Path file, String section) throws IOException {
+        if (section == null || !Files.isRegularFile(file)) return Optional.empty();
+        return readSection(file, section, MAX_ATTEMPTS);
+    }
+
+    private static Optional<String> readSection(Path file, String section, int attempts) throws IOException {
+        Path indexPath = getIndexPath(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // The channel was opened first, so an unchanged file version means it reads the indexed file
+            FileVersion version = FileVersion.of(file);
+            List<Range> ranges = lookup(indexPath, version, section);
+            if (ranges == null) {
+                ranges = rebuild(channel, indexPath, version, section);
+            }
+            StringBuilder text = new StringBuilder();
+            for (Range range : ranges) {
+                ByteBuffer buffer = ByteBuffer.allocate(range.length);
+                readFully(channel, buffer, range.offset);
+                String sectionText = new String(buffer.array(), Charset.defaultCharset());
+                if (section.equals(getSectionName(sectionText))) {
+                    text.append(sectionText);
+                }
+            }
+            if (attempts > 1 && !version.equals(FileVersion.of(file))) {
+                // Replaced while reading, look again in the new file
+                return readSection(file, section, attempts - 1);
+            }
+            return text.length() == 0 ? Optional.empty() : Optional.of(text.toString());
+        }
+    }
+
+    // Returns null when there is no index for this version of the file
+    private static List<Range> lookup(Path indexPath, FileVersion version, String section) throws IOException {
+        try (FileChannel index = FileChannel.open(indexPath, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            if (index.size() < HEADER_LENGTH || !readFully(index, header, 0)) return null;
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) return null;
+            if (!version.equals(FileVersion.readFrom(header))) return null;
+            int count = header.getInt();
+            if (index.size() != HEADER_LENGTH + (long) count * RECORD_LENGTH) return null;
+
+            long hash = hash(section);
+            ByteBuffer record = ByteBuffer.allocate(RECORD_LENGTH);
+            int low = 0;
+            int high = count - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                long middleHash = readHash(index, record, middle);
+                if (middleHash < hash) {
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            List<Range> ranges = new ArrayList<>(1);
+            for (int i = low; i < count && readHash(index, record, i) == hash; i++) {
+                ranges.add(new Range(record.getLong(), record.getInt()));
+            }
+            return ranges;
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private static long readHash(FileChannel index, ByteBuffer record, int position) throws IOException {
+        record.clear();
+        readFully(index, record, HEADER_LENGTH + (long) position * RECORD_LENGTH);
+        record.flip();
+        return record.getLong();
+    }
+
+    private static List<Range> rebuild(FileChannel channel, Path indexPath, FileVersion version, String section) throws IOException {
+        ByteBuffer content = ByteBuffer.allocate((int) channel.size());
+        readFully(channel, content, 0);
+        List<Record> records = scan(content.array());
+        records.sort((a, b) -> Long.compare(a.hash, b.hash));
+
+        ByteBuffer index = ByteBuffer.allocate(HEADER_LENGTH + records.size() * RECORD_LENGTH);
+        index.putInt(MAGIC).putInt(VERSION);
+        version.writeTo(index);
+        index.putInt(records.size());
+        List<Range> ranges = new ArrayList<>(1);
+        long hash = hash(section);
+        for (Record record : records) {
+            index.putLong(record.hash).putLong(record.range.offset).putInt(record.range.length);
+            if (record.hash == hash) ranges.add(record.range);
+        }
+        writeIndex(indexPath, index.array());
+        return ranges;
+    }
+
+    // Section headers follow AwsINIConfiguration: a right trimmed line enclosed in brackets
+    private static List<Record> scan(byte[] content) {
+        List<Record> records = new ArrayList<>();
+        int sectionStart = -1;
+        long sectionHash = 0;
+        int lineStart = 0;
+        while (lineStart < content.length) {
+            int lineEnd = lineStart;
+            while (lineEnd < content.length && content[lineEnd] != '\n') lineEnd++;
+            if (content[lineStart] == '[') {
+                int end = lineEnd;
+                while (end > lineStart && Character.isWhitespace(content[end - 1])) end--;
+                if (end - lineStart >= 2 && content[end - 1] == ']') {
+                    if (sectionStart >= 0) {
+                        records.add(new Record(sectionHash, new Range(sectionStart, lineStart - sectionStart)));
+                    }
+                    sectionStart = lineStart;
+                    sectionHash = hash(new String(content, lineStart + 1, end - lineStart - 2, Charset.defaultCharset()));
+                }
+            }
+            lineStart = lineEnd + 1;
+        }
+        if (sectionStart >= 0) {
+            records.add(new Record(sectionHash, new Range(sectionStart, content.length - sectionStart)));
+        }
+        return records;
+    }
+
+    private static String getSectionName(String sectionText) {
+        int newline = sectionText.indexOf('\n');
+        String header = (newline < 0 ? sectionText : sectionText.substring(0, newline)).trim();
+        return header.startsWith("[") && header.endsWith("]") ? header.substring(1, header.length() - 1) : null;
+    }
+
+    // The index is only a cache: failing to write it costs the next lookup a scan, nothing more
+    private static void writeIndex(Path indexPath, byte[] index) {
+        Path temporary = null;
+        try {
+            temporary = Files.createTempFile(indexPath.getParent(), indexPath.getFileName().toString(), ".tmp");
+            Files.write(temporary, index);
+            FileReplacement.moveIntoPlace(temporary, indexPath);
+        } catch (IOException e) {
+            logger.log(Level.FINE, "Unable to write " + indexPath, e);
+            try {
+                if (temporary != null) Files.deleteIfExists(temporary);
+            } catch (IOException ignored) {
+                // Left for the next successful write to not care about
+            }
+        }
+    }
+
+    private static Path getIndexPath(Path file) {
+        String name = file.getFileName().toString();
+        return file.resolveSibling((name.startsWith(".") ? name : "." + name) + ".index");
+    }
+
+    private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) return false;
+        }
+        return true;
+    }
+
+    // 64-bit FNV-1a of the UTF-8 name; collisions are resolved by comparing the header that was read
+    private static long hash(String section) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : section.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static final class Range {
+        private final long offset;
+        private final int length;
+
+        private Range(long offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private static final class Record {
+        private final long hash;
+        private final Range range;
+
+        private Record(long hash, Range range) {
+            this.hash = hash;
+            this.range = range;
+        }
+    }
+}
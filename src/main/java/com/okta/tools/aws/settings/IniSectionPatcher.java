@@ -0,0 +1,285 @@
+/*
+ * Copyright 2019 Okta
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.okta.tools.aws.settings;
+
+import org.apache.commons.configuration2.SubnodeConfiguration;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>Reads and edits an INI file one section at a time, instead of loading all of it into an
+ * {@link AwsINIConfiguration}.</p>
+ * <p>Sections are found by scanning for their header lines and are only parsed when read. {@link #save(Writer)}
+ * rewrites the lines of the changed sections and copies every other character of the file as it was, including
+ * comments, ordering and formatting.</p>
+ */
+final class IniSectionPatcher {
+    private static final String COMMENT_CHARS = "#;";
+    private static final String SEPARATOR_CHARS = "=:";
+    private static final String SEPARATOR_USED_IN_OUTPUT = " = ";
+
+    private final String content;
+    private final String lineSeparator;
+
+    // Where each section starts, at its header, and ends, at the next header. Only the first of duplicate sections.
+    private Map<String, Range> sectionRanges;
+
+    // Properties to set per section, in order; a null value removes the property
+    private final Map<String, Map<String, String>> changes = new LinkedHashMap<>();
+    private final Set<String> clearedSections = new HashSet<>();
+
+    /**
+     * @param reader The INI-formatted file. N.B.: The reader is consumed by the constructor.
+     * @throws IOException Thrown when we cannot read from the given {@param reader}.
+     */
+    IniSectionPatcher(Reader reader) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        char[] buffer = new char[8192];
+        for (int read = reader.read(buffer); read >= 0; read = reader.read(buffer)) {
+            builder.append(buffer, 0, read);
+        }
+        content = builder.toString();
+        if (content.contains("\r\n")) {
+            lineSeparator = "\r\n";
+        } else if (content.contains("\n")) {
+            lineSeparator = "\n";
+        } else {
+            lineSeparator = System.lineSeparator();
+        }
+    }
+
+    private static final class Range {
+        private final int start;
+        private final int end;
+
+        private Range(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    /**
+     * Parses the given section, with this patcher's changes applied
+     *
+     * @param name The name of the section
+     * @return The section, empty if it doesn't exist
+     */
+    SubnodeConfiguration getSection(String name) {
+        AwsINIConfiguration configuration = new AwsINIConfiguration();
+        Range range = getSectionRanges().get(name);
+        if (range != null && !clearedSections.contains(name)) {
+            try {
+                configuration.read(new StringReader(content.substring(range.start, range.end)));
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        SubnodeConfiguration section = configuration.getSection(name);
+        changes.getOrDefault(name, Map.of()).forEach((key, value) -> {
+            if (value == null) {
+                section.clearProperty(key);
+            } else {
+                section.setProperty(key, value);
+            }
+        });
+        return section;
+    }
+
+    Set<String> getSections() {
+        Set<String> sections = new LinkedHashSet<>(getSectionRanges().keySet());
+        sections.removeAll(clearedSections);
+        changes.forEach((name, properties) -> {
+            if (properties.values().stream().anyMatch(value -> value != null)) {
+                sections.add(name);
+            }
+        });
+        return sections;
+    }
+
+    boolean isEmpty() {
+        if (!getSections().isEmpty()) return false;
+        int end = getSectionRanges().values().stream().mapToInt(range -> range.start).min().orElse(content.length());
+        for (String line : content.substring(0, end).split("\n")) {
+            if (isPropertyLine(StringUtils.stripEnd(line, null))) return false;
+        }
+        return true;
+    }
+
+    void setProperty(String section, String key, String value) {
+        changes.computeIfAbsent(section, name -> new LinkedHashMap<>()).put(key, value);
+    }
+
+    void clearProperty(String section, String key) {
+        setProperty(section, key, null);
+    }
+
+    void clearSection(String section) {
+        changes.remove(section);
+        clearedSections.add(section);
+    }
+
+    /**
+     * Writes the file with the changed sections patched and everything else copied as read
+     *
+     * @param writer The writer to save the file to.
+     * @throws IOException if the writer fails
+     */
+    void save(Writer writer) throws IOException {
+        StringBuilder appended = new StringBuilder();
+        int copied = 0;
+        for (Map.Entry<String, Range> section : getSectionRanges().entrySet()) {
+            String name = section.getKey();
+            if (!changes.containsKey(name) && !clearedSections.contains(name)) continue;
+            Range range = section.getValue();
+            String patched = patchSection(name, content.substring(range.start, range.end));
+            writer.write(content, copied, range.start - copied);
+            writer.write(patched);
+            copied = range.end;
+        }
+        writer.write(content, copied, content.length() - copied);
+
+        changes.forEach((name, properties) -> {
+            if (getSectionRanges().containsKey(name)) return;
+            StringBuilder section = new StringBuilder();
+            properties.forEach((key, value) -> {
+                if (value != null) section.append(formatProperty(key, value));
+            });
+            if (section.length() == 0) return;
+            if (appended.length() > 0 || StringUtils.isNotBlank(content)) {
+                appended.append(lineSeparator);
+            }
+            appended.append('[').append(name).append(']').append(lineSeparator).append(section);
+        });
+        if (appended.length() > 0) {
+            if (!content.isEmpty() && !content.endsWith("\n")) {
+                writer.write(lineSeparator);
+            }
+            writer.write(appended.toString());
+        }
+        writer.flush();
+    }
+
+    private String patchSection(String name, String section) {
+        Map<String, String> sectionChanges = changes.getOrDefault(name, Map.of());
+        boolean cleared = clearedSections.contains(name);
+        Set<String> written = new HashSet<>();
+        StringBuilder out = new StringBuilder(section.length() + 256);
+        int afterLastProperty = -1;
+        boolean droppingContinuation = false;
+        int lineStart = 0;
+        while (lineStart < section.length()) {
+            int newline = section.indexOf('\n', lineStart);
+            int lineEnd = newline < 0 ? section.length() : newline + 1;
+            String line = section.substring(lineStart, lineEnd);
+            String stripped = StringUtils.stripEnd(line, null);
+            lineStart = lineEnd;
+
+            if (afterLastProperty < 0) {
+                // The header line
+                out.append(line);
+                if (newline < 0) out.append(lineSeparator);
+                afterLastProperty = out.length();
+            } else if (isContinuationLine(stripped)) {
+                if (!droppingContinuation) {
+                    out.append(line);
+                    afterLastProperty = out.length();
+                }
+            } else if (!isPropertyLine(stripped)) {
+                droppingContinuation = false;
+                out.append(line);
+            } else {
+                String key = getKey(stripped);
+                droppingContinuation = cleared || sectionChanges.containsKey(key);
+                if (!droppingContinuation) {
+                    out.append(line);
+                } else if (sectionChanges.get(key) != null && written.add(key)) {
+                    out.append(formatProperty(key, sectionChanges.get(key)));
+                }
+                afterLastProperty = out.length();
+            }
+        }
+
+        StringBuilder added = new StringBuilder();
+        sectionChanges.forEach((key, value) -> {
+            if (value != null && !written.contains(key)) added.append(formatProperty(key, value));
+        });
+        if (cleared && added.length() == 0) {
+            // Drop the header and properties, keep the comments and blank lines leading into the next section
+            return out.substring(afterLastProperty);
+        }
+        if (afterLastProperty > 0 && out.charAt(afterLastProperty - 1) != '\n') {
+            added.insert(0, lineSeparator);
+        }
+        out.insert(afterLastProperty, added);
+        return out.toString();
+    }
+
+    private String formatProperty(String key, String value) {
+        return key + SEPARATOR_USED_IN_OUTPUT + AwsINIConfiguration.escapeComments(value) + lineSeparator;
+    }
+
+    private Map<String, Range> getSectionRanges() {
+        if (sectionRanges == null) {
+            sectionRanges = new LinkedHashMap<>();
+            String current = null;
+            int currentStart = 0;
+            int lineStart = 0;
+            while (lineStart < content.length()) {
+                int newline = content.indexOf('\n', lineStart);
+                int lineEnd = newline < 0 ? content.length() : newline;
+                String name = getSectionName(lineStart, lineEnd);
+                if (name != null) {
+                    if (current != null) sectionRanges.putIfAbsent(current, new Range(currentStart, lineStart));
+                    current = name;
+                    currentStart = lineStart;
+                }
+                lineStart = newline < 0 ? content.length() : newline + 1;
+            }
+            if (current != null) sectionRanges.putIfAbsent(current, new Range(currentStart, content.length()));
+        }
+        return sectionRanges;
+    }
+
+    // Same rule as AwsINIConfiguration: a right trimmed line enclosed in brackets
+    private String getSectionName(int lineStart, int lineEnd) {
+        if (lineStart >= lineEnd || content.charAt(lineStart) != '[') return null;
+        String line = StringUtils.stripEnd(content.substring(lineStart, lineEnd), null);
+        return line.endsWith("]") ? line.substring(1, line.length() - 1) : null;
+    }
+
+    private static boolean isPropertyLine(String line) {
+        return !line.isEmpty() && COMMENT_CHARS.indexOf(line.charAt(0)) < 0 && !Character.isWhitespace(line.charAt(0));
+    }
+
+    // Indented lines continue the value of the property above them, as in the AWS CLI's nested settings
+    private static boolean isContinuationLine(String line) {
+        return !line.isEmpty() && Character.isWhitespace(line.charAt(0));
+    }
+
+    private static String getKey(String line) {
+        int index = StringUtils.indexOfAny(line, SEPARATOR_CHARS);
+        return index < 0 ? line : StringUtils.stripEnd(line.substring(0, index), null);
+    }
+}
@@ -40,6 +40,17 @@ public class MultipleProfile extends Settings {
         super(reader);
     }
 
+    /**
+     * Create a Profiles object from a given {@link Reader}, optionally patching only the changed profiles on save.
+     *
+     * @param reader The settings we want to work with. N.B.: The reader is consumed by the constructor.
+     * @param patch  Whether to patch changed profiles instead of re-serializing the whole file
+     * @throws IOException Thrown when we cannot read or load from the given {@param reader}.
+     */
+    public MultipleProfile(Reader reader, boolean patch) throws IOException {
+        super(reader, patch);
+    }
+
     public Optional<com.okta.tools.models.Profile> getProfile(String profile) {
         if (getSections().contains(profile)) {
             Instant expiry = getExpiry(profile);
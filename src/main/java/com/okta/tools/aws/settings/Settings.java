@@ -16,6 +16,7 @@
 package com.okta.tools.aws.settings;
 
 import com.google.common.annotations.VisibleForTesting;
+import org.apache.commons.configuration2.SubnodeConfiguration;
 import org.apache.commons.configuration2.tree.ImmutableNode;
 
 import java.io.IOException;
@@ -31,6 +32,7 @@ import java.util.stream.Collectors;
 public abstract class Settings {
 
     private final AwsINIConfiguration awsINIConfiguration;
+    private final IniSectionPatcher iniSectionPatcher;
 
     /**
      * Create a Settings object from a given {@link java.io.Reader}. The data given by this {@link java.io.Reader} should
@@ -40,8 +42,27 @@ public abstract class Settings {
      * @throws IOException Thrown when we cannot read or load from the given {@param reader}.
      */
     Settings(Reader reader) throws IOException {
-        awsINIConfiguration = new AwsINIConfiguration();
-        awsINIConfiguration.read(reader);
+        this(reader, false);
+    }
+
+    /**
+     * Create a Settings object from a given {@link java.io.Reader}, optionally in patch mode: sections are then parsed
+     * only when read and {@link #save(Writer)} rewrites only the sections that changed, leaving the rest of the file,
+     * comments and formatting included, exactly as it was.
+     *
+     * @param reader The settings we want to work with. N.B.: The reader is consumed by the constructor.
+     * @param patch  Whether to patch changed sections instead of re-serializing the whole file
+     * @throws IOException Thrown when we cannot read or load from the given {@param reader}.
+     */
+    Settings(Reader reader, boolean patch) throws IOException {
+        if (patch) {
+            awsINIConfiguration = null;
+            iniSectionPatcher = new IniSectionPatcher(reader);
+        } else {
+            awsINIConfiguration = new AwsINIConfiguration();
+            awsINIConfiguration.read(reader);
+            iniSectionPatcher = null;
+        }
     }
 
     /**
@@ -50,40 +71,64 @@ public abstract class Settings {
      * @param writer The writer we use to write the settings to.
      */
     public void save(Writer writer) {
-        awsINIConfiguration.write(writer);
+        if (iniSectionPatcher != null) {
+            try {
+                iniSectionPatcher.save(writer);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        } else {
+            awsINIConfiguration.write(writer);
+        }
+    }
+
+    private SubnodeConfiguration getSection(String section) {
+        return iniSectionPatcher != null ? iniSectionPatcher.getSection(section) : awsINIConfiguration.getSection(section);
     }
 
     String getProperty(String section, String key) {
-        return awsINIConfiguration.getSection(section).get(String.class, key);
+        return getSection(section).get(String.class, key);
     }
 
     void setProperty(String section, String key, String value) {
-        awsINIConfiguration.getSection(section).setProperty(key, value);
+        if (iniSectionPatcher != null) {
+            iniSectionPatcher.setProperty(section, key, value);
+        } else {
+            awsINIConfiguration.getSection(section).setProperty(key, value);
+        }
     }
 
     void clearProperty(String section, String key) {
-        awsINIConfiguration.getSection(section).clearProperty(key);
+        if (iniSectionPatcher != null) {
+            iniSectionPatcher.clearProperty(section, key);
+        } else {
+            awsINIConfiguration.getSection(section).clearProperty(key);
+        }
     }
 
     void clearSection(String section) {
-        awsINIConfiguration.getSection(section).clear();
+        if (iniSectionPatcher != null) {
+            iniSectionPatcher.clearSection(section);
+        } else {
+            awsINIConfiguration.getSection(section).clear();
+        }
     }
 
     boolean containsProperty(String section, String key) {
-        return awsINIConfiguration.getSection(section).containsKey(key);
+        return getSection(section).containsKey(key);
     }
 
     boolean isEmpty() {
-        return awsINIConfiguration.isEmpty();
+        return iniSectionPatcher != null ? iniSectionPatcher.isEmpty() : awsINIConfiguration.isEmpty();
     }
 
     Set<String> getSections() {
-        return awsINIConfiguration.getSections();
+        return iniSectionPatcher != null ? iniSectionPatcher.getSections() : awsINIConfiguration.getSections();
     }
 
     @VisibleForTesting
     Map<String, Object> sectionToMap(String section) {
-        return awsINIConfiguration.getSection(section).getNodeModel().getRootNode().getChildren().stream()
+        return getSection(section).getNodeModel().getRootNode().getChildren().stream()
                 .collect(Collectors.toMap(ImmutableNode::getNodeName, ImmutableNode::getValue));
     }
 }
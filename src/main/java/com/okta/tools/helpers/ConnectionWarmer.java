@@ -0,0 +1,61 @@
+/*
+ * Copyright 2019 Okta
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.okta.tools.helpers;
+
+import com.okta.tools.OktaAwsCliEnvironment;
+
+import java.io.IOException;
+import java.util.logging.Logger;
+
+/**
+ * Opens the connections a login needs to the Okta org and AWS STS in the background, while the user is still being
+ * prompted, so that the TCP and TLS handshakes are done by the time the first request is sent.
+ * <p>Only the connections are kept: JSSE has no way to save TLS sessions for a later process to resume, and the
+ * resident agent is what keeps connections across runs.</p>
+ */
+public final class ConnectionWarmer {
+    private static final Logger logger = Logger.getLogger(ConnectionWarmer.class.getName());
+
+    private ConnectionWarmer() {}
+
+    /**
+     * Starts connecting to the Okta org and the STS endpoint, unless OKTA_PRECONNECT is false. Failures are only
+     * logged, the requests that follow report them.
+     *
+     * @param environment The environment naming the Okta org and the STS endpoint
+     */
+    public static void start(OktaAwsCliEnvironment environment) {
+        if (!environment.preconnect) return;
+        start("okta-preconnect-okta", () -> HttpHelper.preconnect("https://" + environment.oktaOrg + "/"));
+        start("okta-preconnect-sts", () -> StsClientHelper.preconnect(environment));
+    }
+
+    private interface Connector {
+        void connect() throws IOException;
+    }
+
+    private static void start(String name, Connector connector) {
+        Thread thread = new Thread(() -> {
+            try {
+                connector.connect();
+            } catch (IOException | RuntimeException e) {
+                logger.fine(() -> "Unable to connect ahead of time: " + e);
+            }
+        }, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+}
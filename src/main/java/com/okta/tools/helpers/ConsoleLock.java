@@ -0,0 +1,84 @@
+/*
+ * Copyright 2019 Okta
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.okta.tools.helpers;
+
+import java.util.Objects;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Serializes everything that reads from or prompts on the console, so that logins running on several threads,
+ * such as one per Okta org, ask for one thing at a time:
+ * <pre>try (ConsoleLock.Hold hold = ConsoleLock.acquire(environment.oktaOrg)) { ... }</pre>
+ */
+public final class ConsoleLock {
+    // Fair, so that orgs are prompted for in the order they got there
+    private static final ReentrantLock LOCK = new ReentrantLock(true);
+
+    private static volatile boolean announceOrg;
+    private static String lastOrg;
+
+    private ConsoleLock() {}
+
+    /**
+     * Prints the org before the prompts of a login whose org differs from the previous one, for processes that log
+     * in to several orgs
+     */
+    public static void announceOrg() {
+        setAnnounceOrg(true);
+    }
+
+    static void setAnnounceOrg(boolean announce) {
+        LOCK.lock();
+        try {
+            announceOrg = announce;
+            lastOrg = null;
+        } finally {
+            LOCK.unlock();
+        }
+    }
+
+    /**
+     * Waits until no other thread uses the console
+     *
+     * @param org The Okta org the prompts are for
+     * @return The hold on the console, to be closed once done with it
+     */
+    public static Hold acquire(String org) {
+        LOCK.lock();
+        // Nested holds belong to the login that already holds the console
+        if (LOCK.getHoldCount() == 1) {
+            if (announceOrg && !Objects.equals(org, lastOrg)) {
+                System.err.println("\nOkta org: " + org);
+            }
+            lastOrg = org;
+        }
+        return new Hold();
+    }
+
+    public static final class Hold implements AutoCloseable {
+        private boolean closed;
+
+        private Hold() {}
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                LOCK.unlock();
+            }
+        }
+    }
+}
@@ -17,9 +17,10 @@ package com.okta.tools.helpers;
 
 import com.google.common.collect.Iterables;
 import com.okta.tools.OktaAwsCliEnvironment;
+import com.okta.tools.jfr.CookieStoreEvent;
 import org.apache.http.Header;
-import org.apache.http.NameValuePair;
 import org.apache.http.client.CookieStore;
+import org.apache.http.client.utils.DateUtils;
 import org.apache.http.cookie.Cookie;
 import org.apache.http.cookie.CookieOrigin;
 import org.apache.http.cookie.MalformedCookieException;
@@ -29,13 +30,24 @@ import org.apache.http.message.BasicHeader;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -43,6 +55,11 @@ import java.util.stream.Stream;
 public final class CookieHelper {
 
     private static final String SET_COOKIE_HEADER_NAME = "Set-Cookie";
+    private static final String OKTA_SESSION_COOKIE_NAME = "sid";
+    private static final String EXPIRES_ATTRIBUTE = "Expires";
+    private static final String SESSION_HINT_SID = "sid";
+    private static final String SESSION_HINT_EXPIRES_AT = "expiresAt";
+    private static final String SESSION_HINT_ENDED = "ended";
     private final OktaAwsCliEnvironment environment;
     private Map<String, String> cookieHeaders = new LinkedHashMap<>();
 
@@ -75,9 +92,21 @@ public final class CookieHelper {
     }
 
     public CookieStore loadCookies() throws IOException {
+        CookieStoreEvent event = new CookieStoreEvent();
+        event.begin();
+        CookieStore cookieStore = new BasicCookieStore();
+        try {
+            loadCookies(cookieStore);
+        } finally {
+            event.cookieCount = cookieStore.getCookies().size();
+            commit(event, "load");
+        }
+        return cookieStore;
+    }
+
+    private void loadCookies(CookieStore cookieStore) throws IOException {
         Map<String, List<String>> multiValueCookieHeaders = loadCookieHeaders();
         List<String> setCookies = multiValueCookieHeaders.getOrDefault(SET_COOKIE_HEADER_NAME, Collections.emptyList());
-        CookieStore cookieStore = new BasicCookieStore();
         for (String setCookie : setCookies) {
             Header header = new BasicHeader(SET_COOKIE_HEADER_NAME, setCookie);
             CookieOrigin cookieOrigin = new CookieOrigin(environment.oktaOrg, 443, "", false);
@@ -88,16 +117,161 @@ public final class CookieHelper {
                 throw new IllegalStateException(e);
             }
         }
-        return cookieStore;
     }
 
     public void storeCookies(CookieStore cookieStore) throws IOException {
+        CookieStoreEvent event = new CookieStoreEvent();
+        event.begin();
         List<Header> headers = new RFC6265StrictSpec().formatCookies(cookieStore.getCookies());
+        // Expiry is kept so that expired cookies, such as an ended Okta session, are dropped when loaded
+        Map<String, Date> expiryDates = new HashMap<>();
+        cookieStore.getCookies().stream()
+                .filter(cookie -> cookie.getExpiryDate() != null)
+                .forEach(cookie -> expiryDates.put(cookie.getName(), cookie.getExpiryDate()));
         List<String> cookies = headers.stream()
                 .flatMap(header -> Stream.of(header.getElements()))
                 .flatMap(headerElement -> Stream.of(headerElement.getParameters()))
-                .map(NameValuePair::toString).collect(Collectors.toList());
-        Files.write(getCookiesFilePath(), cookies, StandardCharsets.UTF_8);
+                .map(cookie -> expiryDates.containsKey(cookie.getName()) ?
+                        cookie + "; " + EXPIRES_ATTRIBUTE + "=" + DateUtils.formatDate(expiryDates.get(cookie.getName())) :
+                        cookie.toString())
+                .collect(Collectors.toList());
+        try {
+            Files.write(getCookiesFilePath(), cookies, StandardCharsets.UTF_8);
+        } finally {
+            event.cookieCount = cookies.size();
+            commit(event, "save");
+        }
+    }
+
+    private void commit(CookieStoreEvent event, String operation) {
+        if (!event.shouldCommit()) return;
+        event.operation = operation;
+        try {
+            Path path = getCookiesFilePath();
+            event.path = path.toString();
+            event.fileSize = Files.size(path);
+        } catch (IOException e) {
+            event.fileSize = -1;
+        }
+        event.commit();
+    }
+
+    /**
+     * Gets when the saved Okta session cookie expires, where the cookie says so
+     *
+     * @return The expiry of the "sid" cookie, empty for a cookie without expiry or no cookie at all
+     * @throws IOException if the cookies file cannot be loaded
+     */
+    public Optional<Instant> getSessionExpiry() throws IOException {
+        return getSessionExpiry(loadCookies());
+    }
+
+    public static Optional<Instant> getSessionExpiry(CookieStore cookieStore) {
+        return cookieStore.getCookies().stream()
+                .filter(cookie -> OKTA_SESSION_COOKIE_NAME.equals(cookie.getName()) && cookie.getExpiryDate() != null)
+                .map(cookie -> cookie.getExpiryDate().toInstant())
+                .min(Comparator.naturalOrder());
+    }
+
+    public static boolean hasSessionCookie(CookieStore cookieStore) {
+        return cookieStore.getCookies().stream().anyMatch(cookie -> OKTA_SESSION_COOKIE_NAME.equals(cookie.getName()));
+    }
+
+    /**
+     * What Okta last said about the saved session. Kept apart from the session cookie, since Okta sessions slide
+     * and outlive an expiry learned earlier, and tied to the cookie's value, so a new session starts without one.
+     */
+    public static final class SessionHint {
+        /**
+         * When the session was to expire, or null if Okta said it has ended
+         */
+        public final Instant expiresAt;
+
+        private SessionHint(Instant expiresAt) {
+            this.expiresAt = expiresAt;
+        }
+
+        public boolean hasEnded() {
+            return expiresAt == null;
+        }
+    }
+
+    /**
+     * Gets what Okta last said about the session held in the given cookies
+     *
+     * @param cookieStore The cookies holding the session
+     * @return The hint, or empty if there is none for this session
+     * @throws IOException if the hint file cannot be read
+     */
+    public Optional<SessionHint> getSessionHint(CookieStore cookieStore) throws IOException {
+        Optional<String> sessionId = getSessionId(cookieStore);
+        Path hintPath = getSessionHintPath();
+        if (!sessionId.isPresent() || !Files.isRegularFile(hintPath)) {
+            return Optional.empty();
+        }
+        Properties hint = new Properties();
+        try (Reader reader = Files.newBufferedReader(hintPath, StandardCharsets.UTF_8)) {
+            hint.load(reader);
+        }
+        if (!sessionId.get().equals(hint.getProperty(SESSION_HINT_SID))) {
+            return Optional.empty();
+        }
+        if (Boolean.parseBoolean(hint.getProperty(SESSION_HINT_ENDED))) {
+            return Optional.of(new SessionHint(null));
+        }
+        try {
+            return Optional.ofNullable(hint.getProperty(SESSION_HINT_EXPIRES_AT)).map(Instant::parse).map(SessionHint::new);
+        } catch (DateTimeParseException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Records what Okta said about the session held in the given cookies. The cookies themselves are left as they are.
+     *
+     * @param cookieStore The cookies holding the session
+     * @param expiresAt   When the session expires, or null if it has ended
+     * @throws IOException if the hint file cannot be written
+     */
+    public void storeSessionHint(CookieStore cookieStore, Instant expiresAt) throws IOException {
+        Optional<String> sessionId = getSessionId(cookieStore);
+        if (!sessionId.isPresent()) {
+            return;
+        }
+        Properties hint = new Properties();
+        hint.setProperty(SESSION_HINT_SID, sessionId.get());
+        if (expiresAt == null) {
+            hint.setProperty(SESSION_HINT_ENDED, "true");
+        } else {
+            hint.setProperty(SESSION_HINT_EXPIRES_AT, expiresAt.toString());
+        }
+        try (Writer writer = Files.newBufferedWriter(getSessionHintPath(), StandardCharsets.UTF_8)) {
+            hint.store(writer, null);
+        }
+    }
+
+    private Path getSessionHintPath() throws IOException {
+        return getCookiesFilePath().resolveSibling("session.properties");
+    }
+
+    // Only a digest of the cookie is stored, so the hint file holds nothing that could be replayed
+    private static Optional<String> getSessionId(CookieStore cookieStore) {
+        return cookieStore.getCookies().stream()
+                .filter(cookie -> OKTA_SESSION_COOKIE_NAME.equals(cookie.getName()))
+                .map(cookie -> {
+                    try {
+                        byte[] digest = MessageDigest.getInstance("SHA-256")
+                                .digest(cookie.getValue().getBytes(StandardCharsets.UTF_8));
+                        StringBuilder hex = new StringBuilder(32);
+                        for (int i = 0; i < 16; i++) {
+                            hex.append(String.format("%02x", digest[i]));
+                        }
+                        return hex.toString();
+                    } catch (NoSuchAlgorithmException e) {
+                        throw new IllegalStateException(e);
+                    }
+                })
+                .findFirst();
     }
 
     void clearCookies() throws IOException {
@@ -128,16 +302,23 @@ public final class CookieHelper {
     }
 
     public void storeCookies(Map<String, List<String>> responseHeaders) throws IOException {
+        CookieStoreEvent event = new CookieStoreEvent();
+        event.begin();
         Iterables.concat(
                 responseHeaders.getOrDefault(SET_COOKIE_HEADER_NAME.toLowerCase(), Collections.emptyList()),
                 responseHeaders.getOrDefault(SET_COOKIE_HEADER_NAME, Collections.emptyList()))
                 .forEach(cookie ->
                 cookieHeaders.put(cookie.substring(0, cookie.indexOf('=')), cookie)
         );
-        Files.write(
-                getCookiesFilePath(),
-                cookieHeaders.values(),
-                StandardCharsets.UTF_8
-        );
+        try {
+            Files.write(
+                    getCookiesFilePath(),
+                    cookieHeaders.values(),
+                    StandardCharsets.UTF_8
+            );
+        } finally {
+            event.cookieCount = cookieHeaders.size();
+            commit(event, "save");
+        }
     }
 }
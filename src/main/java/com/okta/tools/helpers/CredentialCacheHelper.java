@@ -0,0 +1,347 @@
+/*
+ * Copyright 2019 Okta
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.okta.tools.helpers;
+
+import com.okta.tools.OktaAwsCliEnvironment;
+import org.apache.commons.lang.StringUtils;
+import software.amazon.awssdk.services.sts.model.Credentials;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Caches STS credentials in memory and, encrypted, under ~/.okta/credential-cache so repeated
+ * credential_process calls can be answered without talking to Okta or AWS.
+ * <p>
+ * The AES key is kept apart from the entries, in ~/.okta/keys, so that a copy of the cache directory alone, as made
+ * by a backup, a sync tool or a support bundle, does not reveal the credentials. Both are only readable by the user,
+ * and the encryption does not protect against programs running as the user, which can read the key as well.
+ * <p>
+ * Credentials are only served with more than {@link #MINIMUM_REMAINING_VALIDITY} left, so with an
+ * OKTA_STS_DURATION of 900 seconds, the least STS allows, nothing is ever served from the cache.
+ */
+public final class CredentialCacheHelper {
+    private static final Logger logger = Logger.getLogger(CredentialCacheHelper.class.getName());
+
+    /**
+     * The least validity credentials handed to AWS SDKs may have left. SDKs refresh process credentials
+     * 15 minutes before they expire and reject refreshed credentials that are still inside that window.
+     */
+    public static final Duration MINIMUM_REMAINING_VALIDITY = Duration.ofMinutes(15);
+
+    private static final String CACHE_DIRECTORY = "credential-cache";
+    private static final String KEY_DIRECTORY = "keys";
+    private static final String KEY_FILENAME = "credential-cache.key";
+    // Where the key was kept before, next to the entries
+    private static final String LEGACY_KEY_FILENAME = ".key";
+    private static final int KEY_LENGTH_BYTES = 32;
+    // A key file found shorter than this is still being written by the process that created it
+    private static final int KEY_READ_ATTEMPTS = 10;
+    private static final long KEY_READ_RETRY_MILLIS = 10;
+    private static final String CIPHER_TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int GCM_IV_LENGTH = 12;
+    private static final int GCM_TAG_LENGTH_BITS = 128;
+
+    private static final String PROFILE_NAME_PROPERTY = "profileName";
+    private static final String ACCESS_KEY_ID_PROPERTY = "accessKeyId";
+    private static final String SECRET_ACCESS_KEY_PROPERTY = "secretAccessKey";
+    private static final String SESSION_TOKEN_PROPERTY = "sessionToken";
+    private static final String EXPIRATION_PROPERTY = "expiration";
+
+    private static final Map<String, CachedCredentials> MEMORY_CACHE = new ConcurrentHashMap<>();
+
+    private final OktaAwsCliEnvironment environment;
+    // Null for ~/.okta, which is only created when first used
+    private final Path oktaDirectory;
+
+    public CredentialCacheHelper(OktaAwsCliEnvironment environment) {
+        this(environment, null);
+    }
+
+    CredentialCacheHelper(OktaAwsCliEnvironment environment, Path oktaDirectory) {
+        this.environment = environment;
+        this.oktaDirectory = oktaDirectory;
+    }
+
+    /**
+     * Credentials held in the cache together with the profile name they were issued for
+     */
+    public static final class CachedCredentials {
+        public final String profileName;
+        public final Credentials credentials;
+
+        public CachedCredentials(String profileName, Credentials credentials) {
+            this.profileName = profileName;
+            this.credentials = credentials;
+        }
+
+        boolean isValidAt(Instant instant) {
+            return credentials.expiration() != null &&
+                    instant.plus(MINIMUM_REMAINING_VALIDITY).isBefore(credentials.expiration());
+        }
+    }
+
+    /**
+     * Gets unexpired credentials for the given role, checking memory before disk
+     *
+     * @param roleArn The role the credentials were requested for
+     * @param now     The instant to check validity against
+     * @return The cached credentials, if present and not about to expire
+     */
+    public Optional<CachedCredentials> get(String roleArn, Instant now) {
+        if (!isCacheable(roleArn)) return Optional.empty();
+        String cacheKey = getCacheKey(roleArn);
+        CachedCredentials cached = MEMORY_CACHE.get(cacheKey);
+        if (cached == null) {
+            cached = readEntry(cacheKey).orElse(null);
+        }
+        if (cached == null || !cached.isValidAt(now)) return Optional.empty();
+        MEMORY_CACHE.put(cacheKey, cached);
+        return Optional.of(cached);
+    }
+
+    /**
+     * Stores credentials for the given role in memory and on disk
+     *
+     * @param roleArn     The role the credentials were requested for
+     * @param profileName The profile name the credentials were issued for
+     * @param credentials The credentials returned by STS
+     */
+    public void put(String roleArn, String profileName, Credentials credentials) {
+        if (!isCacheable(roleArn)) return;
+        String cacheKey = getCacheKey(roleArn);
+        CachedCredentials cached = new CachedCredentials(profileName, credentials);
+        MEMORY_CACHE.put(cacheKey, cached);
+        try {
+            writeEntry(cacheKey, cached);
+        } catch (IOException | GeneralSecurityException e) {
+            logger.log(Level.WARNING, "Unable to write credential cache entry", e);
+        }
+    }
+
+    /**
+     * Removes all cached credentials, including the encryption key
+     *
+     * @throws IOException if file system or permissions errors are encountered
+     */
+    public void clear() throws IOException {
+        MEMORY_CACHE.clear();
+        Path cacheDirectory = getCacheDirectory();
+        try (Stream<Path> entries = Files.list(cacheDirectory)) {
+            for (Path entry : (Iterable<Path>) entries::iterator) {
+                Files.deleteIfExists(entry);
+            }
+        }
+        Files.deleteIfExists(getKeyDirectory().resolve(KEY_FILENAME));
+    }
+
+    // As if in a new process
+    static void clearMemoryCache() {
+        MEMORY_CACHE.clear();
+    }
+
+    private boolean isCacheable(String roleArn) {
+        return environment.credentialCache && StringUtils.isNotBlank(roleArn);
+    }
+
+    private String getCacheKey(String roleArn) {
+        String key = String.join("\n",
+                String.valueOf(environment.oktaOrg),
+                String.valueOf(environment.oktaAwsAppUrl),
+                roleArn,
+                Integer.toString(environment.stsDuration));
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Optional<CachedCredentials> readEntry(String cacheKey) {
+        try {
+            Path entryPath = getCacheDirectory().resolve(cacheKey);
+            if (!entryPath.toFile().isFile()) return Optional.empty();
+            byte[] encrypted = Files.readAllBytes(entryPath);
+            Cipher cipher = Cipher.getInstance(CIPHER_TRANSFORMATION);
+            cipher.init(Cipher.DECRYPT_MODE, getKey(), new GCMParameterSpec(GCM_TAG_LENGTH_BITS, encrypted, 0, GCM_IV_LENGTH));
+            cipher.updateAAD(cacheKey.getBytes(StandardCharsets.UTF_8));
+            byte[] plaintext = cipher.doFinal(encrypted, GCM_IV_LENGTH, encrypted.length - GCM_IV_LENGTH);
+            Properties properties = new Properties();
+            properties.load(new StringReader(new String(plaintext, StandardCharsets.UTF_8)));
+            Credentials credentials = Credentials.builder()
+                    .accessKeyId(properties.getProperty(ACCESS_KEY_ID_PROPERTY))
+                    .secretAccessKey(properties.getProperty(SECRET_ACCESS_KEY_PROPERTY))
+                    .sessionToken(properties.getProperty(SESSION_TOKEN_PROPERTY))
+                    .expiration(Instant.parse(properties.getProperty(EXPIRATION_PROPERTY)))
+                    .build();
+            return Optional.of(new CachedCredentials(properties.getProperty(PROFILE_NAME_PROPERTY), credentials));
+        } catch (IOException | GeneralSecurityException | RuntimeException e) {
+            // A corrupt or foreign entry is treated as a miss and overwritten by the next login
+            logger.log(Level.FINE, "Ignoring unreadable credential cache entry", e);
+            return Optional.empty();
+        }
+    }
+
+    private void writeEntry(String cacheKey, CachedCredentials cached) throws IOException, GeneralSecurityException {
+        Properties properties = new Properties();
+        if (cached.profileName != null) {
+            properties.setProperty(PROFILE_NAME_PROPERTY, cached.profileName);
+        }
+        properties.setProperty(ACCESS_KEY_ID_PROPERTY, cached.credentials.accessKeyId());
+        properties.setProperty(SECRET_ACCESS_KEY_PROPERTY, cached.credentials.secretAccessKey());
+        properties.setProperty(SESSION_TOKEN_PROPERTY, cached.credentials.sessionToken());
+        properties.setProperty(EXPIRATION_PROPERTY, cached.credentials.expiration().toString());
+        StringWriter plaintext = new StringWriter();
+        properties.store(plaintext, null);
+
+        byte[] iv = new byte[GCM_IV_LENGTH];
+        new SecureRandom().nextBytes(iv);
+        Cipher cipher = Cipher.getInstance(CIPHER_TRANSFORMATION);
+        cipher.init(Cipher.ENCRYPT_MODE, getKey(), new GCMParameterSpec(GCM_TAG_LENGTH_BITS, iv));
+        cipher.updateAAD(cacheKey.getBytes(StandardCharsets.UTF_8));
+        byte[] ciphertext = cipher.doFinal(plaintext.toString().getBytes(StandardCharsets.UTF_8));
+
+        byte[] encrypted = new byte[iv.length + ciphertext.length];
+        System.arraycopy(iv, 0, encrypted, 0, iv.length);
+        System.arraycopy(ciphertext, 0, encrypted, iv.length, ciphertext.length);
+        writePrivateFile(getCacheDirectory().resolve(cacheKey), encrypted);
+    }
+
+    private SecretKey getKey() throws IOException, GeneralSecurityException {
+        Path keyPath = getKeyDirectory().resolve(KEY_FILENAME);
+        if (keyPath.toFile().isFile()) {
+            return readKey(keyPath);
+        }
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(KEY_LENGTH_BYTES * 8);
+        SecretKey key = keyGenerator.generateKey();
+        try {
+            // Never replaced, or the entries another process encrypted with it could no longer be read
+            createPrivateFile(keyPath, key.getEncoded());
+        } catch (FileAlreadyExistsException e) {
+            logger.fine(() -> "Using the key another process created at " + keyPath);
+            return readKey(keyPath);
+        }
+        Files.deleteIfExists(getCacheDirectory().resolve(LEGACY_KEY_FILENAME));
+        return key;
+    }
+
+    private static SecretKey readKey(Path keyPath) throws IOException, GeneralSecurityException {
+        for (int attempt = 1; ; attempt++) {
+            byte[] key = Files.readAllBytes(keyPath);
+            if (key.length == KEY_LENGTH_BYTES) {
+                return new SecretKeySpec(key, "AES");
+            }
+            if (attempt == KEY_READ_ATTEMPTS) {
+                throw new GeneralSecurityException("Credential cache key " + keyPath + " is " + key.length + " bytes long");
+            }
+            try {
+                Thread.sleep(KEY_READ_RETRY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while reading " + keyPath, e);
+            }
+        }
+    }
+
+    private Path getCacheDirectory() throws IOException {
+        return getPrivateDirectory(CACHE_DIRECTORY);
+    }
+
+    private Path getKeyDirectory() throws IOException {
+        return getPrivateDirectory(KEY_DIRECTORY);
+    }
+
+    private Path getPrivateDirectory(String name) throws IOException {
+        Path directory = (oktaDirectory != null ? oktaDirectory : FileHelper.getOktaDirectory()).resolve(name);
+        if (!directory.toFile().isDirectory()) {
+            Files.createDirectories(directory);
+            setPermissions(directory, "rwx------");
+        }
+        return directory;
+    }
+
+    private static void createPrivateFile(Path path, byte[] content) throws IOException {
+        Set<StandardOpenOption> options = EnumSet.of(StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        SeekableByteChannel channel;
+        try {
+            channel = Files.newByteChannel(path, options, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            logger.fine(() -> "Unable to restrict permissions of " + path + " on this file system");
+            channel = Files.newByteChannel(path, options);
+        }
+        try (SeekableByteChannel created = channel) {
+            ByteBuffer buffer = ByteBuffer.wrap(content);
+            while (buffer.hasRemaining()) {
+                created.write(buffer);
+            }
+        }
+    }
+
+    private static void writePrivateFile(Path path, byte[] content) throws IOException {
+        Path temporary = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+        try {
+            setPermissions(temporary, "rw-------");
+            Files.write(temporary, content);
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static void setPermissions(Path path, String permissions) throws IOException {
+        try {
+            Files.setPosixFilePermissions(path, PosixFilePermissions.fromString(permissions));
+        } catch (UnsupportedOperationException e) {
+            logger.fine(() -> "Unable to restrict permissions of " + path + " on this file system");
+        }
+    }
+}
@@ -15,6 +15,7 @@
  */
 package com.okta.tools.helpers;
 
+import com.okta.tools.OktaAwsCliEnvironment;
 import com.okta.tools.aws.settings.Credentials;
 import software.amazon.awssdk.regions.Region;
 
@@ -22,6 +23,12 @@ import java.io.IOException;
 
 public class CredentialsHelper {
 
+    private final OktaAwsCliEnvironment environment;
+
+    public CredentialsHelper(OktaAwsCliEnvironment environment) {
+        this.environment = environment;
+    }
+
     /**
      * Updates the credentials file
      *
@@ -35,7 +42,7 @@ public class CredentialsHelper {
     void updateCredentialsFile(String profileName, String awsAccessKey, String awsSecretKey, Region awsRegion, String awsSessionToken)
             throws IOException {
         FileHelper.usingPath(FileHelper.getAwsDirectory().resolve("credentials"), reader -> {
-            Credentials credentials = new Credentials(reader);
+            Credentials credentials = new Credentials(reader, environment.iniPatchMode);
             credentials.addOrUpdateProfile(profileName, awsAccessKey, awsSecretKey, awsRegion, awsSessionToken);
             return credentials;
         }, Credentials::save);
@@ -50,7 +57,7 @@ public class CredentialsHelper {
     void removeCredentialsFromProfile(String profileName)
             throws IOException {
         FileHelper.usingPath(FileHelper.getAwsDirectory().resolve("credentials"), reader -> {
-            Credentials credentials = new Credentials(reader);
+            Credentials credentials = new Credentials(reader, environment.iniPatchMode);
             credentials.removeCredentialsFromProfile(profileName);
             return credentials;
         }, Credentials::save);
@@ -16,15 +16,36 @@
 package com.okta.tools.helpers;
 
 import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.Charset;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 final class FileHelper {
+    private static final Logger logger = Logger.getLogger(FileHelper.class.getName());
 
     private static final Path USER_HOME = Paths.get(System.getProperty("user.home"));
     private static final Path USER_DIR = Paths.get(System.getProperty("user.dir"));
 
+    // Attempts at a read-modify-write before giving up on a file that keeps being changed by other programs
+    static final int MAX_UPDATE_ATTEMPTS = 5;
+
+    // A JVM holds file locks on behalf of the whole process, so its threads queue here first
+    private static final Map<Path, ReentrantLock> PROCESS_LOCKS = new ConcurrentHashMap<>();
+
     /**
      * Gets the path of a directory in the user home directory
      *
@@ -37,7 +58,11 @@ final class FileHelper {
         Path directory = dirContext.resolve(name);
 
         if (!directory.toFile().exists()) {
-            Files.createDirectory(directory);
+            try {
+                Files.createDirectory(directory);
+            } catch (FileAlreadyExistsException e) {
+                // Created by another process or thread in the meantime
+            }
         } else if (!directory.toFile().isDirectory()) {
             throw new IllegalStateException(directory + " exists, but is not a directory. Please rename it!");
         }
@@ -89,22 +114,6 @@ final class FileHelper {
         return new FileReader(getFilePath(directoryPath, fileName).toFile());
     }
 
-    private static Writer getWriter(Path path) throws IOException {
-        return getWriter(path.getParent(), path.toFile().getName());
-    }
-
-    /**
-     * Get a FileWriter for a given path
-     *
-     * @param directoryPath The {@link Path} of the file's parent directory
-     * @param fileName      The name of the file
-     * @return The FileReader for the given path
-     * @throws IOException if a file system or permissions error is encountered
-     */
-    private static FileWriter getWriter(Path directoryPath, String fileName) throws IOException {
-        return new FileWriter(getFilePath(directoryPath, fileName).toFile());
-    }
-
     /**
      * Gets the Path of a specified file
      *
@@ -117,7 +126,11 @@ final class FileHelper {
         Path filePath = directoryPath.resolve(fileName);
 
         if (!filePath.toFile().exists()) {
-            Files.createFile(filePath);
+            try {
+                Files.createFile(filePath);
+            } catch (FileAlreadyExistsException e) {
+                // Created by another process or thread in the meantime
+            }
         } else if (!filePath.toFile().isFile()) {
             throw new IllegalStateException(filePath + " exists, but is not a regular file. Please rename it!");
         }
@@ -125,13 +138,47 @@ final class FileHelper {
         return filePath;
     }
 
+    /**
+     * Reads a file, transforms what was read and replaces the file with the result. Other processes using this
+     * method wait for each other, readers see either the old or the new file, and the update is retried if
+     * another program changes the file in between.
+     *
+     * @param path   The file to update
+     * @param pathR  Reads the current contents
+     * @param pathTW Writes the new contents
+     * @throws IOException if a file system or permissions error is encountered
+     */
     static <T> void usingPath(Path path, PathR<T> pathR, PathTW<T> pathTW) throws IOException {
-        T t;
-        try (Reader reader = getReader(path)) {
-            t = pathR.useFile(reader);
+        Path target = getTarget(path);
+        FileTransaction transaction = FileTransaction.current();
+        if (transaction != null) {
+            transaction.update(target, content -> {
+                T t = pathR.useFile(new StringReader(content));
+                StringWriter writer = new StringWriter();
+                pathTW.useFile(t, writer);
+                return writer.toString();
+            });
+            return;
         }
-        try (Writer writer = getWriter(path)) {
-            pathTW.useFile(t, writer);
+        try (PathLock pathLock = PathLock.acquire(target)) {
+            for (int attempt = 1; ; attempt++) {
+                FileReplacement.FileVersion readVersion = FileReplacement.FileVersion.of(target);
+                T t;
+                try (Reader reader = getReader(target)) {
+                    t = pathR.useFile(reader);
+                }
+                Path temporary = writeTemporary(target, writer -> pathTW.useFile(t, writer));
+                if (readVersion.equals(FileReplacement.FileVersion.of(target))) {
+                    FileReplacement.moveIntoPlace(temporary, target);
+                    syncDirectory(target.getParent());
+                    return;
+                }
+                Files.deleteIfExists(temporary);
+                if (attempt == MAX_UPDATE_ATTEMPTS) {
+                    throw new IllegalStateException(target + " kept changing while it was being updated. Please try again.");
+                }
+                logger.fine(() -> target + " changed while it was being updated, reading it again");
+            }
         }
     }
 
@@ -140,6 +187,13 @@ final class FileHelper {
     }
 
     static <T> T readingPath(Path path, PathR<T> pathR) throws IOException {
+        FileTransaction transaction = FileTransaction.current();
+        if (transaction != null) {
+            Optional<String> staged = transaction.getStagedContent(getTarget(path));
+            if (staged.isPresent()) {
+                return pathR.useFile(new StringReader(staged.get()));
+            }
+        }
         try (Reader reader = getReader(path)) {
             return pathR.useFile(reader);
         }
@@ -149,13 +203,118 @@ final class FileHelper {
         T useFile(Reader reader) throws IOException;
     }
 
+    /**
+     * Replaces a file with what the given writer produces, without readers ever seeing a partial file
+     *
+     * @param path  The file to replace
+     * @param pathW Writes the new contents
+     * @throws IOException if a file system or permissions error is encountered
+     */
     static void writingPath(Path path, PathW pathW) throws IOException {
-        try (Writer writer = getWriter(path)) {
-            pathW.useFile(writer);
+        Path target = getTarget(path);
+        FileTransaction transaction = FileTransaction.current();
+        if (transaction != null) {
+            transaction.update(target, content -> {
+                StringWriter writer = new StringWriter();
+                pathW.useFile(writer);
+                return writer.toString();
+            });
+            return;
+        }
+        try (PathLock pathLock = PathLock.acquire(target)) {
+            FileReplacement.moveIntoPlace(writeTemporary(target, pathW), target);
+            syncDirectory(target.getParent());
         }
     }
 
     public interface PathW {
         void useFile(Writer writer) throws IOException;
     }
+
+    // Follows symbolic links so that replacing a linked file (e.g. from a dotfiles repository) keeps the link
+    static Path getTarget(Path path) throws IOException {
+        return getFilePath(path.toAbsolutePath().getParent(), path.getFileName().toString()).toRealPath();
+    }
+
+    private static String getHiddenName(Path path) {
+        String name = path.getFileName().toString();
+        return name.startsWith(".") ? name : "." + name;
+    }
+
+    static Path writeTemporary(Path target, PathW pathW) throws IOException {
+        Path temporary = Files.createTempFile(target.getParent(), getHiddenName(target), ".tmp");
+        try {
+            copyPermissions(target, temporary);
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE);
+                 Writer writer = Channels.newWriter(channel, Charset.defaultCharset())) {
+                pathW.useFile(writer);
+                writer.flush();
+                channel.force(true);
+            }
+            return temporary;
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+    }
+
+    private static void copyPermissions(Path from, Path to) throws IOException {
+        PosixFileAttributeView view = Files.getFileAttributeView(to, PosixFileAttributeView.class);
+        if (view != null) {
+            view.setPermissions(Files.readAttributes(from, PosixFileAttributes.class).permissions());
+        }
+    }
+
+    // Makes the rename itself durable; not every platform can open a directory, so this is best effort
+    static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            logger.log(Level.FINEST, "Unable to sync " + directory, e);
+        }
+    }
+
+    /**
+     * Excludes other threads and processes from updating a file. The OS lock is taken on a ".name.lock" file next
+     * to it, as the file itself is replaced on every update.
+     */
+    static final class PathLock implements Closeable {
+        private final ReentrantLock processLock;
+        private final FileChannel channel;
+        private final FileLock fileLock;
+
+        private PathLock(ReentrantLock processLock, FileChannel channel, FileLock fileLock) {
+            this.processLock = processLock;
+            this.channel = channel;
+            this.fileLock = fileLock;
+        }
+
+        static PathLock acquire(Path target) throws IOException {
+            ReentrantLock processLock = PROCESS_LOCKS.computeIfAbsent(target, key -> new ReentrantLock());
+            processLock.lock();
+            if (processLock.getHoldCount() > 1) {
+                return new PathLock(processLock, null, null);
+            }
+            FileChannel channel = null;
+            try {
+                Path lockPath = target.resolveSibling(getHiddenName(target) + ".lock");
+                channel = FileChannel.open(lockPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                return new PathLock(processLock, channel, channel.lock());
+            } catch (IOException | RuntimeException e) {
+                if (channel != null) channel.close();
+                processLock.unlock();
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (fileLock != null) fileLock.release();
+                if (channel != null) channel.close();
+            } finally {
+                processLock.unlock();
+            }
+        }
+    }
 }
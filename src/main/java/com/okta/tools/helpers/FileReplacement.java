@@ -0,0 +1,104 @@
+/*
+ * Copyright 2019 Okta
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.okta.tools.helpers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+
+/**
+ * Replaces files by renaming a complete copy over them, so that readers never see a partial file, and notices
+ * when other programs changed them in the meantime.
+ */
+public final class FileReplacement {
+    private FileReplacement() {}
+
+    /**
+     * Renames a temporary file over its target, atomically where the file system supports it
+     *
+     * @param temporary The new contents, in the same directory as the target
+     * @param target    The file to replace
+     * @throws IOException if a file system or permissions error is encountered
+     */
+    public static void moveIntoPlace(Path temporary, Path target) throws IOException {
+        try {
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Identifies a revision of a file, to notice changes made by programs that don't take the lock. The file key is
+     * kept as the hash of its text so that a version can be stored, e.g. next to an index built from the file.
+     */
+    public static final class FileVersion {
+        public static final int BYTES = Long.BYTES + Long.BYTES + Integer.BYTES;
+
+        private final long size;
+        private final long lastModified;
+        private final int fileKeyHash;
+
+        private FileVersion(long size, long lastModified, int fileKeyHash) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.fileKeyHash = fileKeyHash;
+        }
+
+        public static FileVersion of(Path path) throws IOException {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            return new FileVersion(attributes.size(), attributes.lastModifiedTime().toMillis(),
+                    Objects.hashCode(Objects.toString(attributes.fileKey(), null)));
+        }
+
+        /**
+         * Reads a version stored by {@link #writeTo(ByteBuffer)}
+         *
+         * @param buffer The buffer to read {@link #BYTES} bytes from
+         * @return The version
+         */
+        public static FileVersion readFrom(ByteBuffer buffer) {
+            return new FileVersion(buffer.getLong(), buffer.getLong(), buffer.getInt());
+        }
+
+        /**
+         * Stores this version
+         *
+         * @param buffer The buffer to write {@link #BYTES} bytes to
+         */
+        public void writeTo(ByteBuffer buffer) {
+            buffer.putLong(size).putLong(lastModified).putInt(fileKeyHash);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof FileVersion)) return false;
+            FileVersion that = (FileVersion) o;
+            return size == that.size && lastModified == that.lastModified && fileKeyHash == that.fileKeyHash;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(size, lastModified, fileKeyHash);
+        }
+    }
+}
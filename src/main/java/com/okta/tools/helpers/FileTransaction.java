@@ -0,0 +1,198 @@
+/*
+ * Copyright 2019 Okta
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.okta.tools.helpers;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Collects the file updates made on the current thread and applies them together on {@link #commit()}, locking and
+ * syncing each file once. Files are replaced in the order they were first updated and, should replacing one of them
+ * fail, the ones already replaced are restored. Closing without committing discards the updates.
+ */
+public final class FileTransaction implements Closeable {
+    private static final Logger logger = Logger.getLogger(FileTransaction.class.getName());
+
+    private static final ThreadLocal<FileTransaction> CURRENT = new ThreadLocal<>();
+
+    private final Map<Path, StagedFile> stagedFiles = new LinkedHashMap<>();
+    private boolean completed;
+
+    private FileTransaction() {
+    }
+
+    /**
+     * Starts collecting the file updates made on this thread
+     *
+     * @return The transaction, to be committed and closed
+     */
+    public static FileTransaction begin() {
+        if (CURRENT.get() != null) {
+            throw new IllegalStateException("A file transaction is already in progress");
+        }
+        FileTransaction transaction = new FileTransaction();
+        CURRENT.set(transaction);
+        return transaction;
+    }
+
+    static FileTransaction current() {
+        return CURRENT.get();
+    }
+
+    interface Update {
+        String apply(String content) throws IOException;
+    }
+
+    void update(Path target, Update update) throws IOException {
+        StagedFile stagedFile = stagedFiles.get(target);
+        if (stagedFile == null) {
+            stagedFile = new StagedFile(target);
+            stagedFile.read();
+            stagedFiles.put(target, stagedFile);
+        }
+        stagedFile.apply(update);
+    }
+
+    Optional<String> getStagedContent(Path target) {
+        return Optional.ofNullable(stagedFiles.get(target)).map(stagedFile -> stagedFile.content);
+    }
+
+    /**
+     * Writes all collected updates
+     *
+     * @throws IOException if a file system or permissions error is encountered, after restoring the files
+     */
+    public void commit() throws IOException {
+        if (completed) {
+            throw new IllegalStateException("The file transaction has already been completed");
+        }
+        complete();
+
+        List<FileHelper.PathLock> pathLocks = new ArrayList<>();
+        Map<StagedFile, Path> temporaries = new LinkedHashMap<>();
+        List<StagedFile> replaced = new ArrayList<>();
+        try {
+            // Locked in path order so that transactions in other processes can't deadlock with this one
+            List<Path> targets = new ArrayList<>(stagedFiles.keySet());
+            targets.sort(null);
+            for (Path target : targets) {
+                pathLocks.add(FileHelper.PathLock.acquire(target));
+            }
+            for (StagedFile stagedFile : stagedFiles.values()) {
+                stagedFile.refresh();
+                temporaries.put(stagedFile, FileHelper.writeTemporary(stagedFile.target, writer -> writer.write(stagedFile.content)));
+            }
+            for (Map.Entry<StagedFile, Path> temporary : temporaries.entrySet()) {
+                FileReplacement.moveIntoPlace(temporary.getValue(), temporary.getKey().target);
+                replaced.add(temporary.getKey());
+            }
+            Set<Path> directories = new LinkedHashSet<>();
+            for (Path target : targets) {
+                directories.add(target.getParent());
+            }
+            directories.forEach(FileHelper::syncDirectory);
+        } catch (IOException | RuntimeException e) {
+            restore(replaced, e);
+            for (Path temporary : temporaries.values()) {
+                Files.deleteIfExists(temporary);
+            }
+            throw e;
+        } finally {
+            for (int i = pathLocks.size() - 1; i >= 0; i--) {
+                pathLocks.get(i).close();
+            }
+        }
+    }
+
+    private static void restore(List<StagedFile> replaced, Exception cause) {
+        for (StagedFile stagedFile : replaced) {
+            try {
+                FileReplacement.moveIntoPlace(FileHelper.writeTemporary(stagedFile.target, writer -> writer.write(stagedFile.original)), stagedFile.target);
+            } catch (IOException | RuntimeException e) {
+                logger.log(Level.SEVERE, "Unable to restore " + stagedFile.target, e);
+                cause.addSuppressed(e);
+            }
+        }
+    }
+
+    private void complete() {
+        completed = true;
+        CURRENT.remove();
+    }
+
+    /**
+     * Discards the collected updates unless they were committed
+     */
+    @Override
+    public void close() {
+        if (!completed) {
+            logger.fine(() -> "Discarding uncommitted updates to " + stagedFiles.keySet());
+            complete();
+        }
+    }
+
+    private static final class StagedFile {
+        private final Path target;
+        private final List<Update> updates = new ArrayList<>();
+        private FileReplacement.FileVersion version;
+        private String original;
+        private String content;
+
+        private StagedFile(Path target) {
+            this.target = target;
+        }
+
+        private void read() throws IOException {
+            version = FileReplacement.FileVersion.of(target);
+            original = new String(Files.readAllBytes(target), Charset.defaultCharset());
+            content = original;
+        }
+
+        private void apply(Update update) throws IOException {
+            content = update.apply(content);
+            updates.add(update);
+        }
+
+        // Called with the file locked: replays the updates if another program changed the file since it was read
+        private void refresh() throws IOException {
+            for (int attempt = 1; ; attempt++) {
+                if (version.equals(FileReplacement.FileVersion.of(target))) {
+                    return;
+                }
+                if (attempt == FileHelper.MAX_UPDATE_ATTEMPTS) {
+                    throw new IllegalStateException(target + " kept changing while it was being updated. Please try again.");
+                }
+                logger.fine(() -> target + " changed while it was being updated, reading it again");
+                read();
+                for (Update update : updates) {
+                    content = update.apply(content);
+                }
+            }
+        }
+    }
+}
@@ -15,36 +15,152 @@
  */
 package com.okta.tools.helpers;
 
+import org.apache.commons.lang.StringUtils;
 import org.apache.http.HttpHost;
+import org.apache.http.client.CookieStore;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.config.Registry;
 import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
 import org.apache.http.conn.socket.ConnectionSocketFactory;
 import org.apache.http.conn.socket.PlainConnectionSocketFactory;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.BasicCookieStore;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.protocol.HttpContext;
 import org.apache.http.protocol.HttpCoreContext;
 import org.apache.http.ssl.SSLContexts;
+import org.apache.http.util.EntityUtils;
 
 import javax.net.ssl.SSLContext;
 import java.io.IOException;
 import java.net.*;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 // Inspired by https://stackoverflow.com/a/22960881/154527
 public final class HttpHelper {
+    private static final Logger logger = Logger.getLogger(HttpHelper.class.getName());
+
+    private static final int CONNECT_TIMEOUT_MILLIS = getSetting("OKTA_HTTP_CONNECT_TIMEOUT", 10_000);
+    private static final int SOCKET_TIMEOUT_MILLIS = getSetting("OKTA_HTTP_SOCKET_TIMEOUT", 60_000);
+    private static final int MAX_CONNECTIONS_PER_ROUTE = getSetting("OKTA_HTTP_MAX_CONNECTIONS_PER_ROUTE", 4);
+    private static final int MAX_CONNECTIONS_TOTAL = getSetting("OKTA_HTTP_MAX_CONNECTIONS", 20);
+    private static final int IDLE_TIMEOUT_MILLIS = getSetting("OKTA_HTTP_IDLE_TIMEOUT", 30_000);
+    private static final int VALIDATE_AFTER_INACTIVITY_MILLIS = 2_000;
+
+    // Servers that don't send Keep-Alive would otherwise have connections kept until evicted as idle
+    private static final ConnectionKeepAliveStrategy KEEP_ALIVE_STRATEGY = (response, context) -> {
+        long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+        return keepAlive > 0 ? Math.min(keepAlive, IDLE_TIMEOUT_MILLIS) : IDLE_TIMEOUT_MILLIS;
+    };
+
+    // Only there to open a connection, so redirects are not followed
+    private static final RequestConfig PRECONNECT_REQUEST_CONFIG = requestConfig().setRedirectsEnabled(false).build();
+
+    private HttpHelper() {}
+
+    // Built on first use so code paths that never reach the network don't pay for TLS initialization
+    private static final class SharedClient {
+        static final CloseableHttpClient INSTANCE = createClient();
+
+        static {
+            Runtime.getRuntime().addShutdownHook(new Thread(SharedClient::close, "okta-http-client-shutdown"));
+        }
+
+        private static void close() {
+            try {
+                INSTANCE.close();
+            } catch (IOException e) {
+                logger.log(Level.FINE, "Unable to close HTTP client", e);
+            }
+        }
+    }
+
+    /**
+     * Gets the process-wide client. Connections to the Okta org and AWS are kept alive and reused
+     * between requests, so callers must not close it and should fully consume response entities.
+     *
+     * @return The shared HTTP client
+     */
+    public static CloseableHttpClient getClient() {
+        return SharedClient.INSTANCE;
+    }
+
+    /**
+     * Creates a context with an empty cookie store, so that cookies don't leak between requests
+     * made with the shared client
+     *
+     * @return A new HTTP context
+     */
+    public static HttpClientContext newContext() {
+        return newContext(new BasicCookieStore());
+    }
+
+    /**
+     * Creates a context that reads and stores cookies in the given store
+     *
+     * @param cookieStore The cookie store to use for requests executed with this context
+     * @return A new HTTP context
+     */
+    public static HttpClientContext newContext(CookieStore cookieStore) {
+        HttpClientContext context = HttpClientContext.create();
+        context.setCookieStore(cookieStore);
+        return context;
+    }
+
+    /**
+     * Sends a HEAD request to the given URL with the shared client, which leaves a connection to its host in the pool
+     * for the requests that follow. Cookies it sets are discarded.
+     *
+     * @param url The URL of the host to connect to
+     * @throws IOException if the request fails
+     */
+    public static void preconnect(String url) throws IOException {
+        HttpHead httpHead = new HttpHead(url);
+        httpHead.setConfig(PRECONNECT_REQUEST_CONFIG);
+        try (CloseableHttpResponse response = getClient().execute(httpHead, newContext())) {
+            EntityUtils.consume(response.getEntity());
+        }
+    }
+
     public static CloseableHttpClient createClient(HttpClientBuilder httpClientBuilder)
+    {
+        return createClient(httpClientBuilder, MAX_CONNECTIONS_PER_ROUTE);
+    }
+
+    static CloseableHttpClient createClient(HttpClientBuilder httpClientBuilder, int maxConnectionsPerRoute)
     {
         Registry<ConnectionSocketFactory> reg = RegistryBuilder.<ConnectionSocketFactory>create()
                 .register("http", ProxySelectorPlainConnectionSocketFactory.INSTANCE)
                 .register("https", new ProxySelectorSSLConnectionSocketFactory(SSLContexts.createSystemDefault()))
                 .build();
-        PoolingHttpClientConnectionManager cm = new PoolingHttpClientConnectionManager(reg);
+        PoolingHttpClientConnectionManager cm = new PoolingHttpClientConnectionManager(reg, HttpTimings.DNS_RESOLVER);
+        cm.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+        cm.setMaxTotal(MAX_CONNECTIONS_TOTAL);
+        cm.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY_MILLIS);
+        RequestConfig requestConfig = requestConfig().build();
+        if (Timings.isEnabled()) {
+            httpClientBuilder
+                    .addInterceptorFirst(HttpTimings.REQUEST_INTERCEPTOR)
+                    .addInterceptorLast(HttpTimings.RESPONSE_INTERCEPTOR)
+                    .setRequestExecutor(new HttpTimings.TimedRequestExecutor());
+        }
         return httpClientBuilder
                 .useSystemProperties()
                 .setConnectionManager(cm)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy(KEEP_ALIVE_STRATEGY)
+                .evictExpiredConnections()
+                .evictIdleConnections(IDLE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
                 .build();
     }
 
@@ -53,6 +169,18 @@ public final class HttpHelper {
         return createClient(HttpClients.custom());
     }
 
+    private static RequestConfig.Builder requestConfig() {
+        return RequestConfig.custom()
+                .setConnectTimeout(CONNECT_TIMEOUT_MILLIS)
+                .setConnectionRequestTimeout(CONNECT_TIMEOUT_MILLIS)
+                .setSocketTimeout(SOCKET_TIMEOUT_MILLIS);
+    }
+
+    private static int getSetting(String name, int defaultValue) {
+        String value = System.getenv(name);
+        return StringUtils.isBlank(value) ? defaultValue : Integer.parseInt(value.trim());
+    }
+
     private enum ProxySelectorPlainConnectionSocketFactory implements ConnectionSocketFactory {
         INSTANCE;
 
@@ -63,7 +191,8 @@ public final class HttpHelper {
 
         @Override
         public Socket connectSocket(int connectTimeout, Socket sock, HttpHost host, InetSocketAddress remoteAddress, InetSocketAddress localAddress, HttpContext context) throws IOException {
-            return PlainConnectionSocketFactory.INSTANCE.connectSocket(connectTimeout, sock, host, remoteAddress, localAddress, context);
+            return HttpTimings.timeConnect(() ->
+                    PlainConnectionSocketFactory.INSTANCE.connectSocket(connectTimeout, sock, host, remoteAddress, localAddress, context));
         }
     }
 
@@ -76,6 +205,17 @@ public final class HttpHelper {
         public Socket createSocket(HttpContext context) throws IOException {
             return HttpHelper.createSocket(context, super::createSocket);
         }
+
+        @Override
+        public Socket connectSocket(int connectTimeout, Socket sock, HttpHost host, InetSocketAddress remoteAddress, InetSocketAddress localAddress, HttpContext context) throws IOException {
+            return HttpTimings.timeConnect(() ->
+                    super.connectSocket(connectTimeout, sock, host, remoteAddress, localAddress, context));
+        }
+
+        @Override
+        public Socket createLayeredSocket(Socket socket, String target, int port, HttpContext context) throws IOException {
+            return HttpTimings.timeTls(() -> super.createLayeredSocket(socket, target, port, context));
+        }
     }
 
     private interface SocketCreator {
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2019 Okta
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.okta.tools.helpers;
+
+import org.apache.http.*;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.impl.conn.SystemDefaultDnsResolver;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestExecutor;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+
+/**
+ * Apache HttpClient hooks that feed {@link Timings} with the DNS, connect, TLS, time to first byte and body
+ * durations of each exchange.
+ */
+final class HttpTimings {
+    private HttpTimings() {}
+
+    static final DnsResolver DNS_RESOLVER = host -> {
+        long start = System.nanoTime();
+        try {
+            return SystemDefaultDnsResolver.INSTANCE.resolve(host);
+        } finally {
+            Timings.Exchange exchange = Timings.currentExchange();
+            if (exchange != null) exchange.dnsNanos += System.nanoTime() - start;
+        }
+    };
+
+    static final HttpRequestInterceptor REQUEST_INTERCEPTOR = (request, context) -> {
+        HttpHost target = HttpClientContext.adapt(context).getTargetHost();
+        // Query strings are dropped as they can carry one-time session tokens
+        String uri = request.getRequestLine().getUri();
+        int query = uri.indexOf('?');
+        Timings.startExchange(
+                request.getRequestLine().getMethod(),
+                target == null ? null : target.getHostName(),
+                query < 0 ? uri : uri.substring(0, query));
+    };
+
+    static final HttpResponseInterceptor RESPONSE_INTERCEPTOR = (response, context) -> {
+        Timings.Exchange exchange = Timings.currentExchange();
+        if (exchange == null) return;
+        if (response.getEntity() == null) {
+            Timings.endExchange(exchange);
+        } else {
+            response.setEntity(new TimedEntity(response.getEntity(), exchange));
+        }
+    };
+
+    interface SocketConnector {
+        Socket connect() throws IOException;
+    }
+
+    static Socket timeConnect(SocketConnector connector) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return connector.connect();
+        } finally {
+            Timings.Exchange exchange = Timings.currentExchange();
+            // The TLS handshake runs inside the connect call of layered socket factories
+            if (exchange != null) exchange.connectNanos += System.nanoTime() - start - exchange.tlsNanos;
+        }
+    }
+
+    static Socket timeTls(SocketConnector connector) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return connector.connect();
+        } finally {
+            Timings.Exchange exchange = Timings.currentExchange();
+            if (exchange != null) exchange.tlsNanos += System.nanoTime() - start;
+        }
+    }
+
+    static final class TimedRequestExecutor extends HttpRequestExecutor {
+        @Override
+        public HttpResponse execute(HttpRequest request, HttpClientConnection conn, HttpContext context) throws IOException, HttpException {
+            long start = System.nanoTime();
+            HttpResponse response = super.execute(request, conn, context);
+            Timings.Exchange exchange = Timings.currentExchange();
+            if (exchange != null) {
+                exchange.ttfbNanos = System.nanoTime() - start;
+                exchange.status = response.getStatusLine().getStatusCode();
+            }
+            return response;
+        }
+    }
+
+    private static final class TimedEntity extends HttpEntityWrapper {
+        private final Timings.Exchange exchange;
+        private final long start = System.nanoTime();
+        private boolean done;
+
+        TimedEntity(HttpEntity wrappedEntity, Timings.Exchange exchange) {
+            super(wrappedEntity);
+            this.exchange = exchange;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            return new FilterInputStream(super.getContent()) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b < 0) finish();
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int read = super.read(b, off, len);
+                    if (read < 0) finish();
+                    return read;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    finish();
+                    super.close();
+                }
+            };
+        }
+
+        @Override
+        public void writeTo(OutputStream outStream) throws IOException {
+            try {
+                super.writeTo(outStream);
+            } finally {
+                finish();
+            }
+        }
+
+        private synchronized void finish() {
+            if (done) return;
+            done = true;
+            exchange.bodyNanos = System.nanoTime() - start;
+            Timings.endExchange(exchange);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2019 Okta
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.okta.tools.helpers;
+
+import com.okta.tools.OktaAwsCliEnvironment;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+/**
+ * Serializes logins for the same profile and role across processes with an OS file lock under ~/.okta/locks,
+ * so that one process talks to Okta and STS while the others wait and then reuse what it wrote.
+ */
+public final class LoginLockHelper {
+    private static final Logger logger = Logger.getLogger(LoginLockHelper.class.getName());
+
+    private static final String LOCK_DIRECTORY = "locks";
+    private static final long POLL_INTERVAL_MILLIS = 100;
+
+    // A JVM holds file locks on behalf of the whole process, so its threads queue here first
+    private static final Map<String, ReentrantLock> PROCESS_LOCKS = new ConcurrentHashMap<>();
+
+    private final OktaAwsCliEnvironment environment;
+    // Null for ~/.okta, which is only created when first used
+    private final Path oktaDirectory;
+
+    public LoginLockHelper(OktaAwsCliEnvironment environment) {
+        this(environment, null);
+    }
+
+    LoginLockHelper(OktaAwsCliEnvironment environment, Path oktaDirectory) {
+        this.environment = environment;
+        this.oktaDirectory = oktaDirectory;
+    }
+
+    /**
+     * A held login lock, released by {@link #close()}
+     */
+    public static final class LoginLock implements AutoCloseable {
+        static final LoginLock NONE = new LoginLock(null, null, null);
+
+        private final ReentrantLock processLock;
+        private final FileChannel channel;
+        private final FileLock fileLock;
+
+        private LoginLock(ReentrantLock processLock, FileChannel channel, FileLock fileLock) {
+            this.processLock = processLock;
+            this.channel = channel;
+            this.fileLock = fileLock;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (fileLock != null) fileLock.release();
+                if (channel != null) channel.close();
+            } finally {
+                if (processLock != null) processLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Waits until no other thread or process is logging in for the given profile and role. Gives up waiting,
+     * and carries on without the lock, after OKTA_LOGIN_LOCK_TIMEOUT seconds.
+     *
+     * @param profileName The profile being logged in, may be null
+     * @param roleArn     The role being assumed, may be null
+     * @return The lock, to be closed once the login's results have been written
+     * @throws IOException          if file system or permissions errors are encountered
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public LoginLock acquire(String profileName, String roleArn) throws IOException, InterruptedException {
+        if (environment.loginLockTimeout <= 0) return LoginLock.NONE;
+        String lockKey = getLockKey(profileName, roleArn);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(environment.loginLockTimeout);
+
+        ReentrantLock processLock = PROCESS_LOCKS.computeIfAbsent(lockKey, key -> new ReentrantLock());
+        if (!processLock.tryLock(environment.loginLockTimeout, TimeUnit.SECONDS)) {
+            logTimeout(profileName);
+            return LoginLock.NONE;
+        }
+        if (processLock.getHoldCount() > 1) {
+            // This thread already holds the file lock further up the stack
+            return new LoginLock(processLock, null, null);
+        }
+
+        FileChannel channel = null;
+        try {
+            // Lock files are never deleted, a process could otherwise lock a file that was just unlinked
+            channel = FileChannel.open(getLockDirectory().resolve(lockKey + ".lock"),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            FileLock fileLock = channel.tryLock();
+            if (fileLock == null) {
+                logger.info(() -> "Waiting for another login to " + describe(profileName) + " to finish");
+            }
+            while (fileLock == null) {
+                if (System.nanoTime() - deadline >= 0) {
+                    logTimeout(profileName);
+                    channel.close();
+                    processLock.unlock();
+                    return LoginLock.NONE;
+                }
+                Thread.sleep(POLL_INTERVAL_MILLIS);
+                fileLock = channel.tryLock();
+            }
+            return new LoginLock(processLock, channel, fileLock);
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            if (channel != null) channel.close();
+            processLock.unlock();
+            throw e;
+        }
+    }
+
+    private void logTimeout(String profileName) {
+        logger.warning(() -> "Gave up waiting for another login to " + describe(profileName) +
+                " after " + environment.loginLockTimeout + " seconds, logging in anyway");
+    }
+
+    private static String describe(String profileName) {
+        return profileName == null ? "the default profile" : "profile " + profileName;
+    }
+
+    private static String getLockKey(String profileName, String roleArn) {
+        String key = profileName + "\n" + roleArn;
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(32);
+            for (int i = 0; i < 16; i++) {
+                hex.append(String.format("%02x", digest[i]));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Path getLockDirectory() throws IOException {
+        Path lockDirectory = (oktaDirectory != null ? oktaDirectory : FileHelper.getOktaDirectory()).resolve(LOCK_DIRECTORY);
+        if (!lockDirectory.toFile().isDirectory()) {
+            Files.createDirectories(lockDirectory);
+        }
+        return lockDirectory;
+    }
+}
@@ -59,6 +59,17 @@ public class ProfileHelper {
             return environment.oktaProfile;
         }
 
+        return getRoleProfileName(assumeResult);
+    }
+
+    /**
+     * Gets a profile name for an assumed role that does not depend on OKTA_PROFILE, so that profiles for several
+     * roles don't overwrite each other
+     *
+     * @param assumeResult The result of assuming the role
+     * @return The profile name, in the form roleName_account
+     */
+    public String getRoleProfileName(AssumeRoleWithSamlResponse assumeResult) {
         String credentialsProfileName = assumeResult.assumedRoleUser().arn();
         Matcher matcher = assumedRoleUserPattern.matcher(credentialsProfileName);
         if (matcher.matches()) {
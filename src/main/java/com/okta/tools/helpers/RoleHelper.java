@@ -16,24 +16,42 @@
 package com.okta.tools.helpers;
 
 import com.okta.tools.OktaAwsCliEnvironment;
+import com.okta.tools.jfr.RoleSelectionEvent;
+import com.okta.tools.jfr.StsAssumeRoleEvent;
 import com.okta.tools.models.AccountOption;
 import com.okta.tools.models.RoleOption;
 import com.okta.tools.saml.AwsSamlRoleUtils;
 import com.okta.tools.saml.AwsSamlSigninParser;
+import com.okta.tools.saml.SamlAssertion;
 import org.jsoup.nodes.Document;
-import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
-import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
-import software.amazon.awssdk.services.sts.StsClient;
 import software.amazon.awssdk.services.sts.model.AssumeRoleWithSamlRequest;
 import software.amazon.awssdk.services.sts.model.AssumeRoleWithSamlResponse;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 public class RoleHelper {
+    private static final Logger logger = Logger.getLogger(RoleHelper.class.getName());
+
+    // Calls already sent when the assertion expires are given this long to complete
+    private static final Duration STS_CALL_GRACE = Duration.ofSeconds(30);
 
     final private OktaAwsCliEnvironment environment;
 
@@ -42,62 +60,189 @@ public class RoleHelper {
     }
 
     public AssumeRoleWithSamlResponse assumeChosenAwsRole(AssumeRoleWithSamlRequest assumeRequest) {
-        AwsBasicCredentials nullCredentials = AwsBasicCredentials.create("empty", "empty");
-        StaticCredentialsProvider nullCredentialsProvider = StaticCredentialsProvider.create(nullCredentials);
-        StsClient sts = StsClient.builder()
-                .region(environment.awsRegion)
-                .credentialsProvider(nullCredentialsProvider)
-                .build();
-        return sts.assumeRoleWithSAML(assumeRequest);
+        StsAssumeRoleEvent event = new StsAssumeRoleEvent();
+        event.begin();
+        try {
+            return StsClientHelper.getClient(environment).assumeRoleWithSAML(assumeRequest);
+        } finally {
+            if (event.shouldCommit()) {
+                StsClientHelper.Endpoint endpoint = StsClientHelper.getEndpoint(environment);
+                event.region = endpoint.region.id();
+                event.endpoint = endpoint.uri == null ? "" : endpoint.uri.toString();
+                event.roleArn = assumeRequest.roleArn();
+                event.durationSeconds = assumeRequest.durationSeconds() == null ? 0 : assumeRequest.durationSeconds();
+                event.commit();
+            }
+        }
     }
 
-    public AssumeRoleWithSamlRequest chooseAwsRoleToAssume(String samlResponse) throws IOException {
-        Map<String, String> roleIdpPairs = AwsSamlRoleUtils.getRoles(samlResponse);
-        List<String> roleArns = new ArrayList<>();
+    /**
+     * Assumes several roles with the same SAML assertion concurrently. The STS client, and with it its connection
+     * pool, is shared by all calls. Roles not assumed before the assertion expires are given up.
+     *
+     * @param assumeRequests The requests, all carrying the same assertion
+     * @param notOnOrAfter   When the assertion expires
+     * @return The responses of the roles that were assumed, by role ARN, in request order
+     * @throws InterruptedException if interrupted while waiting for the calls
+     */
+    public Map<String, AssumeRoleWithSamlResponse> assumeChosenAwsRoles(List<AssumeRoleWithSamlRequest> assumeRequests,
+                                                                        Instant notOnOrAfter) throws InterruptedException {
+        Map<String, Future<AssumeRoleWithSamlResponse>> futures = new LinkedHashMap<>();
+        ExecutorService executor = newAssumeRoleExecutor(Math.min(environment.assumeRoleConcurrency, assumeRequests.size()));
+        try {
+            for (AssumeRoleWithSamlRequest assumeRequest : assumeRequests) {
+                futures.put(assumeRequest.roleArn(), executor.submit(() -> {
+                    if (!Instant.now().isBefore(notOnOrAfter)) {
+                        throw new IllegalStateException("The SAML assertion expired at " + notOnOrAfter);
+                    }
+                    return assumeChosenAwsRole(assumeRequest);
+                }));
+            }
+            Instant deadline = notOnOrAfter.plus(STS_CALL_GRACE);
+            Map<String, AssumeRoleWithSamlResponse> responses = new LinkedHashMap<>();
+            for (Map.Entry<String, Future<AssumeRoleWithSamlResponse>> future : futures.entrySet()) {
+                try {
+                    long remainingMillis = Math.max(0, Duration.between(Instant.now(), deadline).toMillis());
+                    responses.put(future.getKey(), future.getValue().get(remainingMillis, TimeUnit.MILLISECONDS));
+                } catch (ExecutionException e) {
+                    logger.log(Level.FINE, "Unable to assume " + future.getKey(), e.getCause());
+                    System.err.println("Unable to assume " + future.getKey() + ": " + e.getCause().getMessage());
+                } catch (TimeoutException e) {
+                    future.getValue().cancel(true);
+                    System.err.println("Unable to assume " + future.getKey() + " before the SAML assertion expired");
+                }
+            }
+            return responses;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 
-        String principalArn;
-        String roleArn;
+    private static ExecutorService newAssumeRoleExecutor(int threads) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, "okta-assume-role-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
 
-        if (roleIdpPairs.containsKey(environment.awsRoleToAssume)) {
-            principalArn = roleIdpPairs.get(environment.awsRoleToAssume);
-            roleArn = environment.awsRoleToAssume;
-        } else if (roleIdpPairs.size() > 1) {
-            List<AccountOption> accountOptions = getAvailableRoles(samlResponse);
-
-            System.err.println("\nPlease choose the role you would like to assume: ");
-            //Gather list of applicable AWS roles
-            int i = 0;
-            int j = -1;
-
-            for (AccountOption accountOption : accountOptions) {
-                System.err.println(accountOption.accountName);
-                for (RoleOption roleOption : accountOption.roleOptions) {
-                    roleArns.add(roleOption.roleArn);
-                    System.err.println("\t[ " + (i + 1) + " ]: " + roleOption.roleName);
-                    if (roleOption.roleArn.equals(environment.awsRoleToAssume) ||
-                        roleOption.roleName.equals(environment.awsRoleToAssume)) {
-                        j = i;
+    /**
+     * Chooses, without prompting, every role in the assertion that matches one of the patterns
+     *
+     * @param samlAssertion The assertion listing the roles
+     * @param patterns      Globs, or regular expressions between slashes, matched against the whole role ARN, role
+     *                      name, account ID or account name. No patterns choose every role.
+     * @return A request for each chosen role, in assertion order
+     * @throws IOException if the account names cannot be loaded from the AWS sign-in page
+     */
+    public List<AssumeRoleWithSamlRequest> chooseAwsRolesToAssume(SamlAssertion samlAssertion, List<String> patterns) throws IOException {
+        RoleSelectionEvent event = new RoleSelectionEvent();
+        event.begin();
+        try {
+            Map<String, List<String>> roleNames = new LinkedHashMap<>();
+            samlAssertion.getRoles().keySet().forEach(roleArn -> roleNames.put(roleArn, getRoleNames(roleArn)));
+            if (!patterns.isEmpty() && samlAssertion.getRoles().size() > 1) {
+                // Account names are only shown on the AWS sign-in page
+                for (AccountOption accountOption : getAvailableRoles(samlAssertion)) {
+                    String accountName = accountOption.accountName.replaceFirst("^Account:\\s*", "")
+                            .replaceFirst("\\s*\\(\\d{12}\\)$", "");
+                    for (RoleOption roleOption : accountOption.roleOptions) {
+                        List<String> names = roleNames.get(roleOption.roleArn);
+                        if (names != null) {
+                            names.add(roleOption.roleName);
+                            names.add(accountName);
+                        }
                     }
-                    i++;
                 }
             }
-            if ((environment.awsRoleToAssume != null && !environment.awsRoleToAssume.isEmpty()) && j == -1) {
-                System.err.println("No match for role " + environment.awsRoleToAssume);
-            }
+            List<Pattern> compiledPatterns = patterns.stream().map(RoleHelper::compilePattern).collect(Collectors.toList());
+            List<AssumeRoleWithSamlRequest> assumeRequests = new ArrayList<>();
+            roleNames.forEach((roleArn, names) -> {
+                if (compiledPatterns.isEmpty() || names.stream().anyMatch(name ->
+                        compiledPatterns.stream().anyMatch(pattern -> pattern.matcher(name).matches()))) {
+                    assumeRequests.add(AssumeRoleWithSamlRequest.builder()
+                            .principalArn(samlAssertion.getRoles().get(roleArn))
+                            .roleArn(roleArn)
+                            .samlAssertion(samlAssertion.getRaw())
+                            .durationSeconds(environment.stsDuration)
+                            .build());
+                }
+            });
+            event.roleArn = assumeRequests.stream().map(AssumeRoleWithSamlRequest::roleArn).collect(Collectors.joining(","));
+            return assumeRequests;
+        } finally {
+            event.roleCount = samlAssertion.getRoles().size();
+            event.commit();
+        }
+    }
 
-            // Default to no selection
-            final int selection;
+    private static List<String> getRoleNames(String roleArn) {
+        List<String> names = new ArrayList<>();
+        names.add(roleArn);
+        int roleIndex = roleArn.indexOf(":role/");
+        if (roleIndex >= 0) {
+            String rolePath = roleArn.substring(roleIndex + ":role/".length());
+            names.add(rolePath);
+            names.add(rolePath.substring(rolePath.lastIndexOf('/') + 1));
+        }
+        // arn:partition:iam::account:role/name
+        String[] arnParts = roleArn.split(":", 6);
+        if (arnParts.length == 6) {
+            names.add(arnParts[4]);
+        }
+        return names;
+    }
 
-            // If config.properties has matching role, use it and don't prompt user to select
-            if (j >= 0) {
-                selection = j;
-                System.err.println("Selected option " + (j + 1) + " based on OKTA_AWS_ROLE_TO_ASSUME value");
+    static Pattern compilePattern(String pattern) {
+        if (pattern.length() > 1 && pattern.startsWith("/") && pattern.endsWith("/")) {
+            return Pattern.compile(pattern.substring(1, pattern.length() - 1));
+        }
+        StringBuilder regex = new StringBuilder();
+        for (char c : pattern.toCharArray()) {
+            if (c == '*') {
+                regex.append(".*");
+            } else if (c == '?') {
+                regex.append('.');
             } else {
-                //Prompt user for role selection
-                selection = new MenuHelperImpl().promptForMenuSelection(roleArns.size());
+                regex.append(Pattern.quote(String.valueOf(c)));
             }
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    public AssumeRoleWithSamlRequest chooseAwsRoleToAssume(String samlResponse) throws IOException {
+        return chooseAwsRoleToAssume(SamlAssertion.parse(samlResponse));
+    }
+
+    public AssumeRoleWithSamlRequest chooseAwsRoleToAssume(SamlAssertion samlAssertion) throws IOException {
+        RoleSelectionEvent event = new RoleSelectionEvent();
+        event.begin();
+        try {
+            AssumeRoleWithSamlRequest assumeRequest = chooseAwsRoleToAssume(samlAssertion, event);
+            event.roleArn = assumeRequest.roleArn();
+            return assumeRequest;
+        } finally {
+            event.roleCount = samlAssertion.getRoles().size();
+            event.commit();
+        }
+    }
+
+    private AssumeRoleWithSamlRequest chooseAwsRoleToAssume(SamlAssertion samlAssertion, RoleSelectionEvent event) throws IOException {
+        Map<String, String> roleIdpPairs = samlAssertion.getRoles();
 
-            roleArn = roleArns.get(selection);
+        String principalArn;
+        String roleArn;
+
+        if (roleIdpPairs.containsKey(environment.awsRoleToAssume)) {
+            principalArn = roleIdpPairs.get(environment.awsRoleToAssume);
+            roleArn = environment.awsRoleToAssume;
+        } else if (roleIdpPairs.size() > 1) {
+            List<AccountOption> accountOptions = getAvailableRoles(samlAssertion);
+            // The list and the menu are shown together, not interleaved with another org's prompts
+            try (ConsoleLock.Hold hold = ConsoleLock.acquire(environment.oktaOrg)) {
+                roleArn = promptForRole(accountOptions, event);
+            }
             principalArn = roleIdpPairs.get(roleArn);
         } else {
             Map.Entry<String, String> role = roleIdpPairs.entrySet().iterator().next();
@@ -111,13 +256,57 @@ public class RoleHelper {
         return AssumeRoleWithSamlRequest.builder()
                 .principalArn(principalArn)
                 .roleArn(roleArn)
-                .samlAssertion(samlResponse)
+                .samlAssertion(samlAssertion.getRaw())
                 .durationSeconds(stsDuration)
                 .build();
     }
 
+    private String promptForRole(List<AccountOption> accountOptions, RoleSelectionEvent event) {
+        List<String> roleArns = new ArrayList<>();
+
+        System.err.println("\nPlease choose the role you would like to assume: ");
+        //Gather list of applicable AWS roles
+        int i = 0;
+        int j = -1;
+
+        for (AccountOption accountOption : accountOptions) {
+            System.err.println(accountOption.accountName);
+            for (RoleOption roleOption : accountOption.roleOptions) {
+                roleArns.add(roleOption.roleArn);
+                System.err.println("\t[ " + (i + 1) + " ]: " + roleOption.roleName);
+                if (roleOption.roleArn.equals(environment.awsRoleToAssume) ||
+                    roleOption.roleName.equals(environment.awsRoleToAssume)) {
+                    j = i;
+                }
+                i++;
+            }
+        }
+        if ((environment.awsRoleToAssume != null && !environment.awsRoleToAssume.isEmpty()) && j == -1) {
+            System.err.println("No match for role " + environment.awsRoleToAssume);
+        }
+
+        // Default to no selection
+        final int selection;
+
+        // If config.properties has matching role, use it and don't prompt user to select
+        if (j >= 0) {
+            selection = j;
+            System.err.println("Selected option " + (j + 1) + " based on OKTA_AWS_ROLE_TO_ASSUME value");
+        } else {
+            //Prompt user for role selection
+            event.prompted = true;
+            selection = new MenuHelperImpl().promptForMenuSelection(roleArns.size());
+        }
+
+        return roleArns.get(selection);
+    }
+
     public List<AccountOption> getAvailableRoles(String samlResponse) throws IOException {
-        Map<String, String> roles = AwsSamlRoleUtils.getRoles(samlResponse);
+        return getAvailableRoles(SamlAssertion.parse(samlResponse));
+    }
+
+    public List<AccountOption> getAvailableRoles(SamlAssertion samlAssertion) throws IOException {
+        Map<String, String> roles = samlAssertion.getRoles();
         if (roles.size() == 1) {
             String roleArn = roles.keySet().iterator().next();
             return Collections.singletonList(
@@ -128,7 +317,7 @@ public class RoleHelper {
                     )
             );
         }
-        Document document = AwsSamlRoleUtils.getSigninPageDocument(samlResponse);
+        Document document = AwsSamlRoleUtils.getSigninPageDocument(samlAssertion);
         return AwsSamlSigninParser.parseAccountOptions(document);
     }
 }
@@ -16,6 +16,7 @@
 package com.okta.tools.helpers;
 
 import com.okta.tools.OktaAwsCliEnvironment;
+import com.okta.tools.aws.settings.IniSectionIndex;
 import com.okta.tools.aws.settings.MultipleProfile;
 import com.okta.tools.models.Profile;
 import com.okta.tools.models.Session;
@@ -28,6 +29,7 @@ import java.time.Instant;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Properties;
+import java.util.function.Supplier;
 
 public final class SessionHelper {
 
@@ -36,10 +38,11 @@ public final class SessionHelper {
     private static final String OKTA_ORG_PROPERTY = "OKTA_ORG";
 
     private final OktaAwsCliEnvironment environment;
-    private final CookieHelper cookieHelper;
+    // Only needed to log out, so it is left to the caller to create it then
+    private final Supplier<CookieHelper> cookieHelper;
     private final CredentialsHelper credentialsHelper;
 
-    public SessionHelper(OktaAwsCliEnvironment environment, CookieHelper cookieHelper, CredentialsHelper credentialsHelper) {
+    public SessionHelper(OktaAwsCliEnvironment environment, Supplier<CookieHelper> cookieHelper, CredentialsHelper credentialsHelper) {
         this.environment = environment;
         this.cookieHelper = cookieHelper;
         this.credentialsHelper = credentialsHelper;
@@ -94,9 +97,9 @@ public final class SessionHelper {
     }
 
     private void logoutMultipleAccounts(String profileName) throws IOException {
-        cookieHelper.clearCookies();
+        cookieHelper.get().clearCookies();
         FileHelper.usingPath(getProfilesFilePath(), reader -> {
-            MultipleProfile multipleProfile = new MultipleProfile(reader);
+            MultipleProfile multipleProfile = new MultipleProfile(reader, environment.iniPatchMode);
             multipleProfile.deleteProfile(profileName);
             return multipleProfile;
         }, MultipleProfile::save);
@@ -112,19 +115,32 @@ public final class SessionHelper {
         properties.setProperty(OKTA_ORG_PROPERTY, environment.oktaOrg);
         properties.setProperty(OKTA_AWS_CLI_PROFILE_PROPERTY, profileName);
         properties.setProperty(OKTA_AWS_CLI_EXPIRY_PROPERTY, expiryInstant.toString());
-        properties.store(new FileWriter(getSessionPath().toString()), "Saved at: " + Instant.now().toString());
+        FileHelper.writingPath(getSessionPath(), writer ->
+            properties.store(writer, "Saved at: " + Instant.now().toString())
+        );
     }
 
     public Optional<Profile> getFromMultipleProfiles() throws IOException {
-        return FileHelper.readingPath(getProfilesFilePath(), reader ->
-            new MultipleProfile(reader).getProfile(environment.oktaProfile)
-        );
+        if (FileTransaction.current() != null) {
+            // Sees updates that are not committed yet
+            return FileHelper.readingPath(getProfilesFilePath(), reader ->
+                new MultipleProfile(reader).getProfile(environment.oktaProfile)
+            );
+        }
+        // Only the profile's own section is read, through an index kept next to the file
+        Optional<String> section = IniSectionIndex.readSection(getProfilesFilePath(), environment.oktaProfile);
+        if (!section.isPresent()) return Optional.empty();
+        return new MultipleProfile(new StringReader(section.get())).getProfile(environment.oktaProfile);
     }
 
     public void addOrUpdateProfile(Instant sessionExpiry) throws IOException {
+        addOrUpdateProfile(environment.oktaProfile, environment.awsRoleToAssume, sessionExpiry);
+    }
+
+    public void addOrUpdateProfile(String profileName, String roleArn, Instant sessionExpiry) throws IOException {
         FileHelper.usingPath(getProfilesFilePath(), reader -> {
-            MultipleProfile multipleProfile = new MultipleProfile(reader);
-            multipleProfile.addOrUpdateProfile(environment.oktaProfile, environment.awsRoleToAssume, environment.awsRegion,sessionExpiry);
+            MultipleProfile multipleProfile = new MultipleProfile(reader, environment.iniPatchMode);
+            multipleProfile.addOrUpdateProfile(profileName, roleArn, environment.awsRegion, sessionExpiry);
             return multipleProfile;
         }, MultipleProfile::save);
     }
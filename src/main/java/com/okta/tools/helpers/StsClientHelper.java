@@ -0,0 +1,231 @@
+/*
+ * Copyright 2019 Okta
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.okta.tools.helpers;
+
+import com.okta.tools.OktaAwsCliEnvironment;
+import org.apache.commons.lang.StringUtils;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.http.HttpExecuteRequest;
+import software.amazon.awssdk.http.HttpExecuteResponse;
+import software.amazon.awssdk.http.SdkHttpClient;
+import software.amazon.awssdk.http.SdkHttpFullRequest;
+import software.amazon.awssdk.http.SdkHttpMethod;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.regions.RegionMetadata;
+import software.amazon.awssdk.services.sts.StsClient;
+import software.amazon.awssdk.services.sts.StsClientBuilder;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.Logger;
+
+/**
+ * Builds STS clients once per region and endpoint and keeps them for the lifetime of the process.
+ * <p>OKTA_STS_ENDPOINT selects the endpoint: unset uses the SDK default for OKTA_AWS_REGION, a region id
+ * such as eu-west-1 uses that region's endpoint, a URL is used as is, and {@code fastest} probes the
+ * regions in OKTA_STS_PROBE_REGIONS and the global endpoint and uses the first one to accept a connection.</p>
+ */
+public final class StsClientHelper {
+    private static final Logger logger = Logger.getLogger(StsClientHelper.class.getName());
+
+    private static final String FASTEST_ENDPOINT = "fastest";
+    private static final int HTTPS_PORT = 443;
+    private static final int PROBE_TIMEOUT_MILLIS = 1000;
+
+    // AssumeRoleWithSAML is authorized by the SAML assertion, not the request signature
+    private static final StaticCredentialsProvider NULL_CREDENTIALS_PROVIDER =
+            StaticCredentialsProvider.create(AwsBasicCredentials.create("empty", "empty"));
+
+    private static final Map<Endpoint, StsClient> CLIENTS = new ConcurrentHashMap<>();
+    private static final Map<List<Region>, Endpoint> PROBED_ENDPOINTS = new ConcurrentHashMap<>();
+
+    private StsClientHelper() {}
+
+    // Built on first use; one connection pool is shared by all STS clients, sized for assuming several roles at once
+    private static final class SharedHttpClient {
+        static final SdkHttpClient INSTANCE = new StsHttpClient(8);
+    }
+
+    /**
+     * Gets the STS client for the endpoint configured in the environment
+     *
+     * @param environment The environment holding OKTA_AWS_REGION, OKTA_STS_ENDPOINT and OKTA_STS_PROBE_REGIONS
+     * @return A cached STS client
+     */
+    public static StsClient getClient(OktaAwsCliEnvironment environment) {
+        return CLIENTS.computeIfAbsent(getEndpoint(environment), StsClientHelper::createClient);
+    }
+
+    /**
+     * Sends a HEAD request to the STS endpoint configured in the environment, which leaves a connection in the pool
+     * that AssumeRoleWithSAML requests are sent from. With {@code fastest}, this is also when the endpoints are probed.
+     *
+     * @param environment The environment holding OKTA_AWS_REGION, OKTA_STS_ENDPOINT and OKTA_STS_PROBE_REGIONS
+     * @throws IOException if the request fails
+     */
+    public static void preconnect(OktaAwsCliEnvironment environment) throws IOException {
+        SdkHttpFullRequest request = SdkHttpFullRequest.builder()
+                .method(SdkHttpMethod.HEAD)
+                .uri(getUri(getEndpoint(environment)))
+                .build();
+        HttpExecuteResponse response = SharedHttpClient.INSTANCE
+                .prepareRequest(HttpExecuteRequest.builder().request(request).build())
+                .call();
+        if (response.responseBody().isPresent()) {
+            response.responseBody().get().close();
+        }
+    }
+
+    private static URI getUri(Endpoint endpoint) {
+        if (endpoint.uri != null) {
+            return endpoint.uri;
+        }
+        // The same endpoint the SDK resolves for the region
+        return URI.create("https://" + StsClient.serviceMetadata().endpointFor(endpoint.region));
+    }
+
+    private static StsClient createClient(Endpoint endpoint) {
+        logger.fine(() -> "Creating STS client for " + endpoint);
+        StsClientBuilder builder = StsClient.builder()
+                .region(endpoint.region)
+                .credentialsProvider(NULL_CREDENTIALS_PROVIDER)
+                .httpClient(SharedHttpClient.INSTANCE);
+        if (endpoint.uri != null) {
+            builder.endpointOverride(endpoint.uri);
+        }
+        return builder.build();
+    }
+
+    static Endpoint getEndpoint(OktaAwsCliEnvironment environment) {
+        String stsEndpoint = StringUtils.trimToEmpty(environment.stsEndpoint);
+        if (stsEndpoint.isEmpty()) {
+            return new Endpoint(environment.awsRegion, null);
+        }
+        if (stsEndpoint.contains("://")) {
+            return new Endpoint(environment.awsRegion, URI.create(stsEndpoint));
+        }
+        if (FASTEST_ENDPOINT.equalsIgnoreCase(stsEndpoint)) {
+            List<Region> candidates = getProbeRegions(environment);
+            return PROBED_ENDPOINTS.computeIfAbsent(candidates, StsClientHelper::probe);
+        }
+        return new Endpoint(Region.of(stsEndpoint), null);
+    }
+
+    static List<Region> getProbeRegions(OktaAwsCliEnvironment environment) {
+        Set<Region> regions = new LinkedHashSet<>();
+        regions.add(environment.awsRegion);
+        if (StringUtils.isNotBlank(environment.stsProbeRegions)) {
+            for (String region : environment.stsProbeRegions.split(",")) {
+                if (StringUtils.isNotBlank(region)) {
+                    regions.add(Region.of(region.trim()));
+                }
+            }
+        }
+        regions.add(Region.AWS_GLOBAL);
+        return new ArrayList<>(regions);
+    }
+
+    private static Endpoint probe(List<Region> candidates) {
+        return probe(candidates, StsClientHelper::connect);
+    }
+
+    static Endpoint probe(List<Region> candidates, Connector connector) {
+        ExecutorService executor = Executors.newFixedThreadPool(candidates.size(), runnable -> {
+            Thread thread = new Thread(runnable, "okta-sts-endpoint-probe");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            CompletionService<Region> completionService = new ExecutorCompletionService<>(executor);
+            for (Region region : candidates) {
+                completionService.submit(() -> connector.connect(region));
+            }
+            for (int i = 0; i < candidates.size(); i++) {
+                try {
+                    Region fastest = completionService.take().get();
+                    logger.fine(() -> "Fastest STS endpoint is " + getHostname(fastest));
+                    return new Endpoint(fastest, null);
+                } catch (ExecutionException e) {
+                    logger.fine(() -> "STS endpoint unreachable: " + e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+        logger.fine("No STS endpoint answered the probe, using the first candidate");
+        return new Endpoint(candidates.get(0), null);
+    }
+
+    private static Region connect(Region region) throws IOException {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(getHostname(region), HTTPS_PORT), PROBE_TIMEOUT_MILLIS);
+        }
+        return region;
+    }
+
+    private static String getHostname(Region region) {
+        if (Region.AWS_GLOBAL.equals(region)) {
+            return "sts.amazonaws.com";
+        }
+        RegionMetadata metadata = region.metadata();
+        String domain = metadata == null ? "amazonaws.com" : metadata.domain();
+        return "sts." + region.id() + "." + domain;
+    }
+
+    // Opens a connection to a region's STS endpoint, failing if it is unreachable
+    interface Connector {
+        Region connect(Region region) throws IOException;
+    }
+
+    static final class Endpoint {
+        final Region region;
+        final URI uri;
+
+        Endpoint(Region region, URI uri) {
+            this.region = region;
+            this.uri = uri;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Endpoint endpoint = (Endpoint) o;
+            return Objects.equals(region, endpoint.region) &&
+                    Objects.equals(uri, endpoint.uri);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(region, uri);
+        }
+
+        @Override
+        public String toString() {
+            return "Endpoint{" +
+                    "region=" + region +
+                    ", uri=" + uri +
+                    '}';
+        }
+    }
+}
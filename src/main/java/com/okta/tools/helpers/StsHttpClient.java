@@ -0,0 +1,132 @@
+/*
+ * Copyright 2019 Okta
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.okta.tools.helpers;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.http.ContentStreamProvider;
+import software.amazon.awssdk.http.ExecutableHttpRequest;
+import software.amazon.awssdk.http.HttpExecuteRequest;
+import software.amazon.awssdk.http.HttpExecuteResponse;
+import software.amazon.awssdk.http.SdkHttpClient;
+import software.amazon.awssdk.http.SdkHttpFullResponse;
+import software.amazon.awssdk.http.SdkHttpRequest;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Sends the AWS SDK's requests through an HttpClient built by {@link HttpHelper}, so that STS requests share its
+ * proxy selection and timeouts, and are timed down to DNS, connect and TLS like the requests to Okta.
+ */
+final class StsHttpClient implements SdkHttpClient {
+    private static final Logger logger = Logger.getLogger(StsHttpClient.class.getName());
+
+    // Set by HttpClient from the request itself
+    private static final List<String> IGNORED_HEADERS =
+            Arrays.asList(HttpHeaders.CONTENT_LENGTH, HttpHeaders.HOST, HttpHeaders.TRANSFER_ENCODING);
+
+    private final CloseableHttpClient httpClient;
+
+    StsHttpClient(int maxConnections) {
+        // The SDK follows no redirects, retries on its own and has no use for cookies
+        httpClient = HttpHelper.createClient(HttpClients.custom()
+                .disableRedirectHandling()
+                .disableAutomaticRetries()
+                .disableCookieManagement()
+                .disableContentCompression(), maxConnections);
+    }
+
+    @Override
+    public ExecutableHttpRequest prepareRequest(HttpExecuteRequest request) {
+        HttpUriRequest httpRequest = toHttpRequest(request.httpRequest(), request.contentStreamProvider());
+        return new ExecutableHttpRequest() {
+            @Override
+            public HttpExecuteResponse call() throws IOException {
+                return toExecuteResponse(httpClient.execute(httpRequest, HttpClientContext.create()));
+            }
+
+            @Override
+            public void abort() {
+                httpRequest.abort();
+            }
+        };
+    }
+
+    @Override
+    public String clientName() {
+        return "Apache";
+    }
+
+    @Override
+    public void close() {
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            logger.log(Level.FINE, "Unable to close STS HTTP client", e);
+        }
+    }
+
+    private static HttpUriRequest toHttpRequest(SdkHttpRequest request, Optional<ContentStreamProvider> content) {
+        RequestBuilder builder = RequestBuilder.create(request.method().name()).setUri(request.getUri());
+        request.headers().forEach((name, values) -> {
+            if (IGNORED_HEADERS.stream().noneMatch(name::equalsIgnoreCase)) {
+                values.forEach(value -> builder.addHeader(name, value));
+            }
+        });
+        if (content.isPresent()) {
+            long contentLength = request.firstMatchingHeader(HttpHeaders.CONTENT_LENGTH).map(Long::parseLong).orElse(-1L);
+            builder.setEntity(new InputStreamEntity(content.get().newStream(), contentLength));
+        }
+        return builder.build();
+    }
+
+    private static HttpExecuteResponse toExecuteResponse(CloseableHttpResponse response) throws IOException {
+        SdkHttpFullResponse.Builder sdkResponse = SdkHttpFullResponse.builder()
+                .statusCode(response.getStatusLine().getStatusCode())
+                .statusText(response.getStatusLine().getReasonPhrase());
+        for (Header header : response.getAllHeaders()) {
+            sdkResponse.appendHeader(header.getName(), header.getValue());
+        }
+        HttpEntity entity = response.getEntity();
+        if (entity == null) {
+            response.close();
+            return HttpExecuteResponse.builder().response(sdkResponse.build()).build();
+        }
+        // Closing the body returns the connection to the pool; aborting it discards the connection
+        AbortableInputStream body = AbortableInputStream.create(entity.getContent(), () -> {
+            try {
+                response.close();
+            } catch (IOException e) {
+                logger.log(Level.FINE, "Unable to abort STS response", e);
+            }
+        });
+        return HttpExecuteResponse.builder().response(sdkResponse.build()).responseBody(body).build();
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2019 Okta
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.okta.tools.helpers;
+
+import org.apache.commons.lang.StringUtils;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <p>Records how long each phase of a login and each HTTP exchange takes, and writes the breakdown as JSON
+ * when the process exits.</p>
+ * <p>Recording is enabled by OKTA_TIMINGS: {@code stderr}, {@code true} or {@code 1} print the report to
+ * stderr, any other value is taken as the path of a file to write it to. When unset, every method is a no-op.</p>
+ */
+public final class Timings {
+    private static final Logger logger = Logger.getLogger(Timings.class.getName());
+
+    // Bounds memory in long-lived processes such as the agent; the oldest records are dropped first
+    private static final int MAX_RECORDS = 1000;
+
+    private static final String TIMINGS_SETTING = System.getenv("OKTA_TIMINGS");
+    // Only changed by tests; clients built while disabled are not timed
+    private static volatile boolean enabled = StringUtils.isNotBlank(TIMINGS_SETTING);
+
+    private static final Instant STARTED_AT = Instant.now();
+    private static final long STARTED_NANOS = System.nanoTime();
+
+    private static final Deque<JSONObject> PHASES = new ArrayDeque<>();
+    private static final Deque<Exchange> EXCHANGES = new ArrayDeque<>();
+    private static final ThreadLocal<Exchange> CURRENT_EXCHANGE = new ThreadLocal<>();
+
+    static {
+        if (enabled) {
+            Runtime.getRuntime().addShutdownHook(new Thread(Timings::writeReport, "okta-timings-report"));
+        }
+    }
+
+    private Timings() {}
+
+    /**
+     * A timed phase, recorded when closed:
+     * <pre>try (Timings.Phase phase = Timings.phase("launchApp")) { ... }</pre>
+     */
+    public static final class Phase implements AutoCloseable {
+        private static final Phase DISABLED = new Phase(null);
+
+        private final String name;
+        private final long startNanos = System.nanoTime();
+
+        private Phase(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void close() {
+            if (name == null) return;
+            JSONObject record = new JSONObject()
+                    .put("name", name)
+                    .put("startMillis", toMillis(startNanos - STARTED_NANOS))
+                    .put("durationMillis", toMillis(System.nanoTime() - startNanos))
+                    .put("thread", Thread.currentThread().getName());
+            synchronized (PHASES) {
+                add(PHASES, record);
+            }
+        }
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    static void setEnabled(boolean enabled) {
+        Timings.enabled = enabled;
+    }
+
+    /**
+     * Starts timing a phase
+     *
+     * @param name The name the phase is reported under
+     * @return The phase, to be closed when it ends
+     */
+    public static Phase phase(String name) {
+        return enabled ? new Phase(name) : Phase.DISABLED;
+    }
+
+    /**
+     * Timings of one HTTP request and response. Connection-level steps are zero when a pooled
+     * connection was reused.
+     */
+    static final class Exchange {
+        final String method;
+        final String host;
+        final String path;
+        final long startNanos = System.nanoTime();
+        long dnsNanos;
+        long connectNanos;
+        long tlsNanos;
+        long ttfbNanos;
+        long bodyNanos;
+        int status;
+
+        Exchange(String method, String host, String path) {
+            this.method = method;
+            this.host = host;
+            this.path = path;
+        }
+
+        JSONObject toJson() {
+            return new JSONObject()
+                    .put("method", method)
+                    .put("host", host)
+                    .put("path", path)
+                    .put("status", status)
+                    .put("startMillis", toMillis(startNanos - STARTED_NANOS))
+                    .put("dnsMillis", toMillis(dnsNanos))
+                    .put("connectMillis", toMillis(connectNanos))
+                    .put("tlsMillis", toMillis(tlsNanos))
+                    .put("ttfbMillis", toMillis(ttfbNanos))
+                    .put("bodyMillis", toMillis(bodyNanos));
+        }
+    }
+
+    // Exchanges run on the calling thread, so connection setup is attributed to the request on this thread
+    static Exchange startExchange(String method, String host, String path) {
+        if (!enabled) return null;
+        Exchange exchange = new Exchange(method, host, path);
+        CURRENT_EXCHANGE.set(exchange);
+        synchronized (EXCHANGES) {
+            add(EXCHANGES, exchange);
+        }
+        return exchange;
+    }
+
+    static Exchange currentExchange() {
+        return enabled ? CURRENT_EXCHANGE.get() : null;
+    }
+
+    static void endExchange(Exchange exchange) {
+        if (exchange != null && CURRENT_EXCHANGE.get() == exchange) {
+            CURRENT_EXCHANGE.remove();
+        }
+    }
+
+    private static <E> void add(Deque<E> records, E record) {
+        if (records.size() == MAX_RECORDS) {
+            records.removeFirst();
+        }
+        records.addLast(record);
+    }
+
+    private static double toMillis(long nanos) {
+        return Math.round(nanos / 10_000.0) / 100.0;
+    }
+
+    static JSONObject getReport() {
+        JSONArray phases;
+        synchronized (PHASES) {
+            phases = new JSONArray(PHASES);
+        }
+        JSONArray exchanges = new JSONArray();
+        synchronized (EXCHANGES) {
+            for (Exchange exchange : EXCHANGES) {
+                exchanges.put(exchange.toJson());
+            }
+        }
+        return new JSONObject()
+                .put("startedAt", STARTED_AT.toString())
+                .put("elapsedMillis", toMillis(System.nanoTime() - STARTED_NANOS))
+                .put("phases", phases)
+                .put("http", exchanges);
+    }
+
+    private static void writeReport() {
+        String report = getReport().toString(2);
+        String setting = TIMINGS_SETTING.trim();
+        if ("stderr".equalsIgnoreCase(setting) || "true".equalsIgnoreCase(setting) || "1".equals(setting)) {
+            System.err.println(report);
+            return;
+        }
+        try (Writer writer = Files.newBufferedWriter(Paths.get(setting), StandardCharsets.UTF_8)) {
+            writer.write(report);
+            writer.write(System.lineSeparator());
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Unable to write timings to " + setting, e);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2019 Okta
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.okta.tools.jfr;
+
+import jdk.jfr.*;
+
+@Name("com.okta.tools.CookieStore")
+@Label("Cookie Store")
+@Description("Load or save of the Okta session cookies file")
+@Category({"Okta AWS CLI", "Files"})
+public final class CookieStoreEvent extends Event {
+    @Label("Operation")
+    public String operation;
+
+    @Label("Path")
+    public String path;
+
+    @Label("Cookie Count")
+    public int cookieCount;
+
+    @Label("File Size")
+    @DataAmount
+    public long fileSize;
+}
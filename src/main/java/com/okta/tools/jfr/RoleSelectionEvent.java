@@ -0,0 +1,34 @@
+/*
+ * Copyright 2019 Okta
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.okta.tools.jfr;
+
+import jdk.jfr.*;
+
+@Name("com.okta.tools.RoleSelection")
+@Label("Role Selection")
+@Description("Choice of the AWS role to assume, including any prompt")
+@Category({"Okta AWS CLI", "SAML"})
+public final class RoleSelectionEvent extends Event {
+    @Label("Role Count")
+    public int roleCount;
+
+    @Label("Prompted")
+    @Description("Whether the user was asked to choose a role")
+    public boolean prompted;
+
+    @Label("Role ARN")
+    public String roleArn;
+}
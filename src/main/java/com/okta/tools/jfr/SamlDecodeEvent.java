@@ -0,0 +1,35 @@
+/*
+ * Copyright 2019 Okta
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.okta.tools.jfr;
+
+import jdk.jfr.*;
+
+@Name("com.okta.tools.SamlDecode")
+@Label("SAML Decode")
+@Description("Decoding and parsing of a SAML response")
+@Category({"Okta AWS CLI", "SAML"})
+public final class SamlDecodeEvent extends Event {
+    @Label("Parser")
+    @Description("streaming, or opensaml when the response needed the full parser")
+    public String parser;
+
+    @Label("Decoded Size")
+    @DataAmount
+    public long decodedBytes;
+
+    @Label("Role Count")
+    public int roleCount;
+}
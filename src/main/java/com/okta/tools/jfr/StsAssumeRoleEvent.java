@@ -0,0 +1,38 @@
+/*
+ * Copyright 2019 Okta
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.okta.tools.jfr;
+
+import jdk.jfr.*;
+
+@Name("com.okta.tools.StsAssumeRole")
+@Label("STS AssumeRoleWithSAML")
+@Description("AWS STS call exchanging the SAML assertion for credentials")
+@Category({"Okta AWS CLI", "AWS"})
+public final class StsAssumeRoleEvent extends Event {
+    @Label("Region")
+    public String region;
+
+    @Label("Endpoint")
+    @Description("Endpoint override, empty for the region default")
+    public String endpoint;
+
+    @Label("Role ARN")
+    public String roleArn;
+
+    @Label("Duration")
+    @Timespan(Timespan.SECONDS)
+    public long durationSeconds;
+}
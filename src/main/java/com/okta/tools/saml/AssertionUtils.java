@@ -18,9 +18,13 @@ package com.okta.tools.saml;
 import org.opensaml.core.xml.XMLObject;
 import org.opensaml.core.xml.schema.XSString;
 import org.opensaml.core.xml.schema.impl.XSAnyImpl;
+import org.joda.time.DateTime;
 import org.opensaml.saml.saml2.core.Assertion;
+import org.opensaml.saml.saml2.core.AuthnStatement;
 
+import java.time.Instant;
 import java.util.Collection;
+import java.util.Objects;
 import java.util.stream.Collectors;
 
 final class AssertionUtils {
@@ -37,6 +41,25 @@ final class AssertionUtils {
                 .collect(Collectors.toList());
     }
 
+    static Instant getNotOnOrAfter(Assertion assertion) {
+        if (assertion.getConditions() == null) return null;
+        return toInstant(assertion.getConditions().getNotOnOrAfter());
+    }
+
+    static Instant getSessionNotOnOrAfter(Assertion assertion) {
+        return assertion.getAuthnStatements()
+                .stream()
+                .map(AuthnStatement::getSessionNotOnOrAfter)
+                .filter(Objects::nonNull)
+                .map(AssertionUtils::toInstant)
+                .min(Instant::compareTo)
+                .orElse(null);
+    }
+
+    private static Instant toInstant(DateTime dateTime) {
+        return dateTime == null ? null : Instant.ofEpochMilli(dateTime.getMillis());
+    }
+
     private static String getAttributeValue(XMLObject attributeValue) {
         if (attributeValue == null) return null;
         if (attributeValue instanceof XSString) return ((XSString) attributeValue).getValue();
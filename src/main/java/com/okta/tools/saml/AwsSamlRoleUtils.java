@@ -16,74 +16,74 @@
 package com.okta.tools.saml;
 
 import com.okta.tools.helpers.HttpHelper;
+import com.okta.tools.helpers.Timings;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
-import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
 import org.apache.http.message.BasicNameValuePair;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
-import org.opensaml.core.xml.io.UnmarshallingException;
 import org.opensaml.saml.saml2.core.Assertion;
-import org.xml.sax.SAXException;
 
-import javax.xml.parsers.ParserConfigurationException;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
-import java.util.Collection;
-import java.util.LinkedHashMap;
 import java.util.Map;
 
 public final class AwsSamlRoleUtils {
     private static final String AWS_ROLE_SAML_ATTRIBUTE = "https://aws.amazon.com/SAML/Attributes/Role";
+    private static final String AWS_ROLE_SESSION_NAME_SAML_ATTRIBUTE = "https://aws.amazon.com/SAML/Attributes/RoleSessionName";
+    private static final String AWS_SESSION_DURATION_SAML_ATTRIBUTE = "https://aws.amazon.com/SAML/Attributes/SessionDuration";
 
     private AwsSamlRoleUtils() {}
 
     public static Map<String, String> getRoles(String samlResponse) {
-        Map<String, String> roles = new LinkedHashMap<>();
-        for (String roleIdpPair : getRoleIdpPairs(samlResponse)) {
-            String[] parts = roleIdpPair.split(",");
-            String principalArn = parts[0];
-            String roleArn = parts[1];
-            roles.put(roleArn, principalArn);
-        }
-        return roles;
+        return SamlAssertion.parse(samlResponse).getRoles();
     }
 
-    private static Collection<String> getRoleIdpPairs(String samlResponse) {
-        try {
-            Assertion assertion = SamlResponseUtils.getAssertion(samlResponse);
-            return AssertionUtils.getAttributeValues(assertion, AWS_ROLE_SAML_ATTRIBUTE);
-        } catch (ParserConfigurationException | UnmarshallingException | SAXException | IOException e) {
-            throw new IllegalStateException(e);
-        }
+    static Map<String, String> getRoles(Assertion assertion) {
+        return SamlAssertion.toRoles(AssertionUtils.getAttributeValues(assertion, AWS_ROLE_SAML_ATTRIBUTE));
     }
 
-    private static String getDestination(String samlResponse) {
-        try {
-            String destination = SamlResponseUtils.getDestination(samlResponse);
-            return destination;
-        } catch (ParserConfigurationException | UnmarshallingException | SAXException | IOException e) {
-            throw new IllegalStateException(e);
-        }
+    static String getRoleSessionName(Assertion assertion) {
+        return AssertionUtils.getAttributeValues(assertion, AWS_ROLE_SESSION_NAME_SAML_ATTRIBUTE)
+                .stream()
+                .findFirst()
+                .orElse(null);
+    }
+
+    static Integer getSessionDuration(Assertion assertion) {
+        return AssertionUtils.getAttributeValues(assertion, AWS_SESSION_DURATION_SAML_ATTRIBUTE)
+                .stream()
+                .findFirst()
+                .map(value -> Integer.valueOf(value.trim()))
+                .orElse(null);
     }
 
     public static Document getSigninPageDocument(String samlResponse) throws IOException {
-        String destination = getDestination(samlResponse);
+        return getSigninPageDocument(SamlAssertion.parse(samlResponse));
+    }
+
+    public static Document getSigninPageDocument(SamlAssertion samlAssertion) throws IOException {
+        String destination = samlAssertion.getDestination();
         HttpPost httpPost = new HttpPost(destination);
         UrlEncodedFormEntity samlForm = new UrlEncodedFormEntity(Arrays.asList(
-                new BasicNameValuePair("SAMLResponse", samlResponse),
+                new BasicNameValuePair("SAMLResponse", samlAssertion.getRaw()),
                 new BasicNameValuePair("RelayState", "")
         ), StandardCharsets.UTF_8);
         httpPost.setEntity(samlForm);
-        try (CloseableHttpClient httpClient = HttpHelper.createClient();
-             CloseableHttpResponse samlSigninResponse = httpClient.execute(httpPost)) {
-            return Jsoup.parse(
-                    samlSigninResponse.getEntity().getContent(),
-                    StandardCharsets.UTF_8.name(),
-                    destination
-            );
+        try (Timings.Phase phase = Timings.phase("signinPage");
+             CloseableHttpResponse samlSigninResponse = HttpHelper.getClient().execute(httpPost, HttpHelper.newContext())) {
+            try {
+                return Jsoup.parse(
+                        samlSigninResponse.getEntity().getContent(),
+                        StandardCharsets.UTF_8.name(),
+                        destination
+                );
+            } finally {
+                EntityUtils.consume(samlSigninResponse.getEntity());
+            }
         }
     }
 }
@@ -17,11 +17,12 @@ package com.okta.tools.saml;
 
 import com.okta.tools.helpers.CookieHelper;
 import com.okta.tools.helpers.HttpHelper;
+import com.okta.tools.helpers.Timings;
+import com.okta.tools.jfr.AppLaunchEvent;
 import org.apache.http.client.CookieStore;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 
@@ -40,33 +41,46 @@ public class OktaAppClientImpl implements OktaAppClient {
         HttpGet httpget = new HttpGet(appUrl);
         CookieStore cookieStore = cookieHelper.loadCookies();
 
-        try (CloseableHttpClient httpClient = HttpHelper.createClient(HttpClients.custom().setDefaultCookieStore(cookieStore));
-             CloseableHttpResponse oktaAwsAppResponse = httpClient.execute(httpget)) {
+        AppLaunchEvent event = new AppLaunchEvent();
+        event.begin();
+        try (Timings.Phase phase = Timings.phase("launchApp");
+             CloseableHttpResponse oktaAwsAppResponse = HttpHelper.getClient().execute(httpget, HttpHelper.newContext(cookieStore))) {
+            event.httpStatus = oktaAwsAppResponse.getStatusLine().getStatusCode();
+            event.responseBytes = oktaAwsAppResponse.getEntity().getContentLength();
+            try {
 
-            if (oktaAwsAppResponse.getStatusLine().getStatusCode() >= 500) {
-                throw new IllegalStateException("Server error when loading Okta AWS App: "
-                        + oktaAwsAppResponse.getStatusLine().getStatusCode());
-            } else if (oktaAwsAppResponse.getStatusLine().getStatusCode() >= 400) {
-                throw new IllegalStateException("Client error when loading Okta AWS App: "
-                        + oktaAwsAppResponse.getStatusLine().getStatusCode());
-            }
+                if (oktaAwsAppResponse.getStatusLine().getStatusCode() >= 500) {
+                    throw new IllegalStateException("Server error when loading Okta AWS App: "
+                            + oktaAwsAppResponse.getStatusLine().getStatusCode());
+                } else if (oktaAwsAppResponse.getStatusLine().getStatusCode() >= 400) {
+                    throw new IllegalStateException("Client error when loading Okta AWS App: "
+                            + oktaAwsAppResponse.getStatusLine().getStatusCode());
+                }
 
-            // Fix: previous logic was assuming that always was refreshing a previous session and cookies were
-            // in place.
-            // This condition throws an exception to trigger authentication with user credentials if no
-            // cookies from a previous session was present to avoid crash when the tool is installed fresh
-            // and no previous session cookies are present
-            if(cookieStore.getCookies().isEmpty()) {
-                throw new OktaSaml.PromptForCredentialsException("No cookies found, need to create a new okta session");
-            }
+                // Fix: previous logic was assuming that always was refreshing a previous session and cookies were
+                // in place.
+                // This condition throws an exception to trigger authentication with user credentials if no
+                // cookies from a previous session was present to avoid crash when the tool is installed fresh
+                // and no previous session cookies are present
+                if(cookieStore.getCookies().isEmpty()) {
+                    throw new OktaSaml.PromptForCredentialsException("No cookies found, need to create a new okta session");
+                }
 
-            cookieHelper.storeCookies(cookieStore);
+                cookieHelper.storeCookies(cookieStore);
 
-            return Jsoup.parse(
-                    oktaAwsAppResponse.getEntity().getContent(),
-                    StandardCharsets.UTF_8.name(),
-                    appUrl
-            );
+                return Jsoup.parse(
+                        oktaAwsAppResponse.getEntity().getContent(),
+                        StandardCharsets.UTF_8.name(),
+                        appUrl
+                );
+            } finally {
+                // Lets the pooled connection be reused rather than discarded
+                EntityUtils.consume(oktaAwsAppResponse.getEntity());
+            }
+        } finally {
+            event.host = httpget.getURI().getHost();
+            event.cookieCount = cookieStore.getCookies().size();
+            event.commit();
         }
     }
 }
@@ -16,46 +16,135 @@
 package com.okta.tools.saml;
 
 import com.okta.tools.OktaAwsCliEnvironment;
-import com.okta.tools.authentication.BrowserAuthentication;
+import com.okta.tools.authentication.BrowserLogin;
 import com.okta.tools.authentication.OktaAuthentication;
+import com.okta.tools.authentication.OktaSessionManager;
+import com.okta.tools.helpers.ConsoleLock;
+import com.okta.tools.helpers.Timings;
 import org.jsoup.nodes.Document;
 import org.jsoup.select.Elements;
 
 import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.CodeSource;
+import java.util.Optional;
+import java.util.ServiceLoader;
 import java.util.logging.Logger;
 
 public class OktaSaml {
     private static final Logger LOGGER = Logger.getLogger(OktaSaml.class.getName());
 
+    // Installed next to the CLI's JAR by those who use OKTA_BROWSER_AUTH, so that nobody else loads or ships JavaFX
+    static final String BROWSER_LOGIN_JAR = "okta-aws-cli-browser.jar";
+
     private final OktaAwsCliEnvironment environment;
     private final OktaAuthentication authentication;
     private final OktaAppClient oktaAppClient;
+    private final OktaSessionManager oktaSessionManager;
 
-    public OktaSaml(OktaAwsCliEnvironment environment, OktaAuthentication oktaAuthentication, OktaAppClient oktaAppClient) {
+    public OktaSaml(OktaAwsCliEnvironment environment, OktaAuthentication oktaAuthentication, OktaAppClient oktaAppClient,
+                    OktaSessionManager oktaSessionManager) {
         this.environment = environment;
         this.authentication = oktaAuthentication;
         this.oktaAppClient = oktaAppClient;
+        this.oktaSessionManager = oktaSessionManager;
+    }
+
+    public SamlAssertion getSamlAssertion() throws IOException, InterruptedException {
+        String samlResponse = getSamlResponse();
+        try (Timings.Phase phase = Timings.phase("samlParse")) {
+            return SamlAssertion.parse(samlResponse);
+        }
+    }
+
+    /**
+     * Gets a SAML assertion using only the Okta session saved in the cookie store, never prompting the user
+     *
+     * @return The SAML assertion
+     * @throws IOException if the app launch fails
+     * @throws IllegalStateException if the Okta session has ended or the app requires re-authentication
+     */
+    public SamlAssertion getSamlAssertionFromSession() throws IOException {
+        String samlResponse = getSamlResponseForAwsRefresh();
+        try (Timings.Phase phase = Timings.phase("samlParse")) {
+            return SamlAssertion.parse(samlResponse);
+        }
     }
 
     public String getSamlResponse() throws IOException, InterruptedException {
         if (environment.browserAuth) {
-            return BrowserAuthentication.login(environment);
+            try (ConsoleLock.Hold hold = ConsoleLock.acquire(environment.oktaOrg)) {
+                return loginWithBrowser();
+            }
         } else {
             try {
                 return getSamlResponseForAwsRefresh();
             } catch (PromptForReAuthenticationException | PromptForFactorException | PromptForCredentialsException e) {
-                String oktaSessionToken = authentication.getOktaSessionToken();
+                String oktaSessionToken;
+                // Username, password and MFA are asked for together, not interleaved with another org's
+                try (ConsoleLock.Hold hold = ConsoleLock.acquire(environment.oktaOrg)) {
+                    oktaSessionToken = authentication.getOktaSessionToken();
+                }
                 return getSamlResponseForAws(oktaSessionToken);
             }
         }
     }
 
+    private String loginWithBrowser() throws IOException, InterruptedException {
+        BrowserLogin browserLogin = loadBrowserLogin();
+        Thread thread = Thread.currentThread();
+        ClassLoader contextClassLoader = thread.getContextClassLoader();
+        // JavaFX's threads start from this one and look up the plugin's resources through it
+        thread.setContextClassLoader(browserLogin.getClass().getClassLoader());
+        try {
+            return browserLogin.login(environment);
+        } finally {
+            thread.setContextClassLoader(contextClassLoader);
+        }
+    }
+
+    private static BrowserLogin loadBrowserLogin() throws MalformedURLException {
+        ClassLoader classLoader = OktaSaml.class.getClassLoader();
+        Optional<Path> browserLoginJar = getBrowserLoginJar();
+        if (browserLoginJar.isPresent()) {
+            LOGGER.fine(() -> "Loading browser authentication from " + browserLoginJar.get());
+            classLoader = new URLClassLoader(new URL[]{browserLoginJar.get().toUri().toURL()}, classLoader);
+        }
+        // Also finds an implementation already on the class path, as when running from an IDE
+        return ServiceLoader.load(BrowserLogin.class, classLoader).findFirst()
+                .orElseThrow(() -> new IllegalStateException("Browser authentication is not installed. Put " +
+                        BROWSER_LOGIN_JAR + " next to the okta-aws-cli JAR or set OKTA_BROWSER_AUTH=false."));
+    }
+
+    private static Optional<Path> getBrowserLoginJar() {
+        CodeSource codeSource = OktaSaml.class.getProtectionDomain().getCodeSource();
+        if (codeSource == null || codeSource.getLocation() == null) return Optional.empty();
+        try {
+            Path browserLoginJar = Paths.get(codeSource.getLocation().toURI()).resolveSibling(BROWSER_LOGIN_JAR);
+            return Files.isRegularFile(browserLoginJar) ? Optional.of(browserLoginJar) : Optional.empty();
+        } catch (URISyntaxException | IllegalArgumentException | FileSystemNotFoundException e) {
+            // Not loaded from a file, e.g. in a native image
+            return Optional.empty();
+        }
+    }
+
     private String getSamlResponseForAws(String oktaSessionToken) throws IOException {
         Document document = launchOktaAwsAppWithSessionToken(environment.oktaAwsAppUrl, oktaSessionToken);
         return getSamlResponseForAwsFromDocument(document);
     }
 
     private String getSamlResponseForAwsRefresh() throws IOException {
+        // Cheaper than finding out from the app launch page
+        if (!oktaSessionManager.hasActiveSession()) {
+            throw new PromptForCredentialsException("No active Okta session, need to create a new okta session");
+        }
         Document document = oktaAppClient.launchApp(environment.oktaAwsAppUrl);
         return getSamlResponseForAwsFromDocument(document);
     }
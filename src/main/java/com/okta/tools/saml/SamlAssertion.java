@@ -0,0 +1,144 @@
+/*
+ * Copyright 2019 Okta
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.okta.tools.saml;
+
+import com.okta.tools.jfr.SamlDecodeEvent;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A SAML response for AWS, decoded and parsed once so that choosing, listing and assuming roles
+ * don't each parse it again.
+ */
+public final class SamlAssertion {
+    private final String raw;
+    private final String destination;
+    private final Map<String, String> roles;
+    private final String roleSessionName;
+    private final Integer sessionDuration;
+    private final Instant notOnOrAfter;
+    private final Instant sessionNotOnOrAfter;
+
+    SamlAssertion(String raw, String destination, Map<String, String> roles, String roleSessionName, Integer sessionDuration,
+                  Instant notOnOrAfter, Instant sessionNotOnOrAfter) {
+        this.raw = raw;
+        this.destination = destination;
+        this.roles = Collections.unmodifiableMap(new LinkedHashMap<>(roles));
+        this.roleSessionName = roleSessionName;
+        this.sessionDuration = sessionDuration;
+        this.notOnOrAfter = notOnOrAfter;
+        this.sessionNotOnOrAfter = sessionNotOnOrAfter;
+    }
+
+    /**
+     * Parses a base64 encoded SAML response, streaming it where possible and only bootstrapping
+     * OpenSAML for responses the streaming parser leaves alone
+     *
+     * @param samlResponse The SAMLResponse form value posted to AWS
+     * @return The parsed assertion
+     */
+    public static SamlAssertion parse(String samlResponse) {
+        SamlDecodeEvent event = new SamlDecodeEvent();
+        event.begin();
+        SamlAssertion samlAssertion = null;
+        try {
+            Optional<SamlAssertion> streamed = SamlStreamParser.parse(samlResponse);
+            event.parser = streamed.isPresent() ? "streaming" : "opensaml";
+            samlAssertion = streamed.orElseGet(() -> SamlResponseUtils.parse(samlResponse));
+            return samlAssertion;
+        } finally {
+            if (event.shouldCommit()) {
+                event.decodedBytes = getDecodedLength(samlResponse);
+                event.roleCount = samlAssertion == null ? 0 : samlAssertion.getRoles().size();
+                event.commit();
+            }
+        }
+    }
+
+    private static long getDecodedLength(String base64) {
+        int length = base64.length();
+        int padding = 0;
+        while (padding < 2 && length > padding && base64.charAt(length - 1 - padding) == '=') {
+            padding++;
+        }
+        return length / 4L * 3 - padding;
+    }
+
+    static Map<String, String> toRoles(Collection<String> roleIdpPairs) {
+        Map<String, String> roles = new LinkedHashMap<>();
+        for (String roleIdpPair : roleIdpPairs) {
+            String[] parts = roleIdpPair.split(",");
+            String principalArn = parts[0];
+            String roleArn = parts[1];
+            roles.put(roleArn, principalArn);
+        }
+        return roles;
+    }
+
+    /**
+     * @return The base64 encoded SAML response, as posted to AWS
+     */
+    public String getRaw() {
+        return raw;
+    }
+
+    /**
+     * @return The AWS sign-in URL the response is addressed to
+     */
+    public String getDestination() {
+        return destination;
+    }
+
+    /**
+     * @return The role ARNs in the assertion, mapped to their identity provider ARNs, in assertion order
+     */
+    public Map<String, String> getRoles() {
+        return roles;
+    }
+
+    /**
+     * @return The RoleSessionName attribute, usually the Okta username
+     */
+    public Optional<String> getRoleSessionName() {
+        return Optional.ofNullable(roleSessionName);
+    }
+
+    /**
+     * @return The SessionDuration attribute, in seconds
+     */
+    public Optional<Integer> getSessionDuration() {
+        return Optional.ofNullable(sessionDuration);
+    }
+
+    /**
+     * @return The time from which the assertion may no longer be used to assume a role
+     */
+    public Optional<Instant> getNotOnOrAfter() {
+        return Optional.ofNullable(notOnOrAfter);
+    }
+
+    /**
+     * @return The time at which the Okta authentication session behind the assertion ends
+     */
+    public Optional<Instant> getSessionNotOnOrAfter() {
+        return Optional.ofNullable(sessionNotOnOrAfter);
+    }
+}
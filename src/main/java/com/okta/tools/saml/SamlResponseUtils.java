@@ -44,14 +44,22 @@ final class SamlResponseUtils {
         }
     }
 
-    static Assertion getAssertion(String samlResponse) throws ParserConfigurationException, UnmarshallingException, SAXException, IOException {
-        Response response = decodeSamlResponse(samlResponse);
-        return getAssertion(response);
-    }
-
-    static String getDestination(String samlResponse) throws ParserConfigurationException, UnmarshallingException, SAXException, IOException {
-        Response response = decodeSamlResponse(samlResponse);
-        return getDestination(response);
+    static SamlAssertion parse(String samlResponse) {
+        try {
+            Response response = decodeSamlResponse(samlResponse);
+            Assertion assertion = getAssertion(response);
+            return new SamlAssertion(
+                    samlResponse,
+                    getDestination(response),
+                    AwsSamlRoleUtils.getRoles(assertion),
+                    AwsSamlRoleUtils.getRoleSessionName(assertion),
+                    AwsSamlRoleUtils.getSessionDuration(assertion),
+                    AssertionUtils.getNotOnOrAfter(assertion),
+                    AssertionUtils.getSessionNotOnOrAfter(assertion)
+            );
+        } catch (ParserConfigurationException | UnmarshallingException | SAXException | IOException e) {
+            throw new IllegalStateException(e);
+        }
     }
 
     private static Response decodeSamlResponse(String samlResponse) throws IOException, ParserConfigurationException, SAXException, UnmarshallingException {
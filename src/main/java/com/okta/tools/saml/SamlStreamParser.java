@@ -0,0 +1,175 @@
+/*
+ * Copyright 2019 Okta
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.okta.tools.saml;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
+import java.util.logging.Logger;
+
+/**
+ * Extracts what the tool needs from a SAML response in a single streaming pass, without bootstrapping
+ * OpenSAML. Responses it doesn't fully understand are left to {@link SamlResponseUtils}.
+ */
+final class SamlStreamParser {
+    private static final Logger logger = Logger.getLogger(SamlStreamParser.class.getName());
+
+    private static final String SAML_PROTOCOL_NS = "urn:oasis:names:tc:SAML:2.0:protocol";
+    private static final String SAML_ASSERTION_NS = "urn:oasis:names:tc:SAML:2.0:assertion";
+
+    private static final String AWS_ROLE_SAML_ATTRIBUTE = "https://aws.amazon.com/SAML/Attributes/Role";
+    private static final String AWS_ROLE_SESSION_NAME_SAML_ATTRIBUTE = "https://aws.amazon.com/SAML/Attributes/RoleSessionName";
+    private static final String AWS_SESSION_DURATION_SAML_ATTRIBUTE = "https://aws.amazon.com/SAML/Attributes/SessionDuration";
+
+    private static final XMLInputFactory XML_INPUT_FACTORY = createXmlInputFactory();
+
+    private SamlStreamParser() {}
+
+    private static XMLInputFactory createXmlInputFactory() {
+        XMLInputFactory xmlInputFactory = XMLInputFactory.newFactory();
+        xmlInputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_VALIDATING, false);
+        return xmlInputFactory;
+    }
+
+    /**
+     * Parses a base64 encoded SAML response
+     *
+     * @param samlResponse The SAMLResponse form value posted to AWS
+     * @return The parsed assertion, or empty if the response needs the full OpenSAML parser
+     */
+    static Optional<SamlAssertion> parse(String samlResponse) {
+        byte[] decodedResponse = Base64.getDecoder().decode(samlResponse);
+        XMLStreamReader reader = null;
+        try {
+            reader = XML_INPUT_FACTORY.createXMLStreamReader(new ByteArrayInputStream(decodedResponse));
+            return parse(samlResponse, reader);
+        } catch (XMLStreamException | DateTimeParseException | NumberFormatException e) {
+            logger.fine(() -> "Falling back to OpenSAML: " + e);
+            return Optional.empty();
+        } finally {
+            close(reader);
+        }
+    }
+
+    private static Optional<SamlAssertion> parse(String samlResponse, XMLStreamReader reader) throws XMLStreamException {
+        String destination = null;
+        int assertions = 0;
+        Instant notOnOrAfter = null;
+        Instant sessionNotOnOrAfter = null;
+        List<String> roleIdpPairs = new ArrayList<>();
+        String roleSessionName = null;
+        Integer sessionDuration = null;
+        String attributeName = null;
+
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.DTD) {
+                throw new IllegalStateException("DOCTYPE is not allowed in SAML responses");
+            }
+            if (event == XMLStreamConstants.END_ELEMENT && isAssertionElement(reader, "Attribute")) {
+                attributeName = null;
+            }
+            if (event != XMLStreamConstants.START_ELEMENT) continue;
+
+            String namespace = reader.getNamespaceURI();
+            String localName = reader.getLocalName();
+            if (SAML_PROTOCOL_NS.equals(namespace) && "Response".equals(localName)) {
+                destination = reader.getAttributeValue(null, "Destination");
+            } else if (SAML_ASSERTION_NS.equals(namespace)) {
+                switch (localName) {
+                    case "EncryptedAssertion":
+                        return Optional.empty();
+                    case "Assertion":
+                        assertions++;
+                        break;
+                    case "Conditions":
+                        notOnOrAfter = toInstant(reader.getAttributeValue(null, "NotOnOrAfter"));
+                        break;
+                    case "AuthnStatement":
+                        sessionNotOnOrAfter = earliest(sessionNotOnOrAfter,
+                                toInstant(reader.getAttributeValue(null, "SessionNotOnOrAfter")));
+                        break;
+                    case "Attribute":
+                        attributeName = reader.getAttributeValue(null, "Name");
+                        break;
+                    case "AttributeValue":
+                        // OpenSAML trims element content, so the values must match it
+                        String value = reader.getElementText().trim();
+                        if (value.isEmpty() || attributeName == null) break;
+                        if (AWS_ROLE_SAML_ATTRIBUTE.equals(attributeName)) {
+                            roleIdpPairs.add(value);
+                        } else if (AWS_ROLE_SESSION_NAME_SAML_ATTRIBUTE.equals(attributeName) && roleSessionName == null) {
+                            roleSessionName = value;
+                        } else if (AWS_SESSION_DURATION_SAML_ATTRIBUTE.equals(attributeName) && sessionDuration == null) {
+                            sessionDuration = Integer.valueOf(value);
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+
+        // Leave unusual responses to OpenSAML so errors are reported exactly as before
+        if (destination == null || assertions != 1) return Optional.empty();
+
+        return Optional.of(new SamlAssertion(
+                samlResponse,
+                destination,
+                SamlAssertion.toRoles(roleIdpPairs),
+                roleSessionName,
+                sessionDuration,
+                notOnOrAfter,
+                sessionNotOnOrAfter
+        ));
+    }
+
+    private static boolean isAssertionElement(XMLStreamReader reader, String localName) {
+        return SAML_ASSERTION_NS.equals(reader.getNamespaceURI()) && localName.equals(reader.getLocalName());
+    }
+
+    private static Instant toInstant(String dateTime) {
+        return dateTime == null ? null : OffsetDateTime.parse(dateTime).toInstant();
+    }
+
+    private static Instant earliest(Instant first, Instant second) {
+        if (first == null) return second;
+        if (second == null) return first;
+        return first.isBefore(second) ? first : second;
+    }
+
+    private static void close(XMLStreamReader reader) {
+        if (reader == null) return;
+        try {
+            reader.close();
+        } catch (XMLStreamException e) {
+            logger.fine(() -> "Unable to close SAML response reader: " + e);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2019 Okta
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.okta.tools.nativeimage;
+
+import org.apache.xml.security.algorithms.SignatureAlgorithmSpi;
+import org.apache.xml.security.c14n.CanonicalizerSpi;
+import org.apache.xml.security.keys.keyresolver.KeyResolverSpi;
+import org.apache.xml.security.transforms.TransformSpi;
+import org.apache.xml.security.utils.resolver.ResourceResolverSpi;
+import org.graalvm.nativeimage.hosted.Feature;
+import org.graalvm.nativeimage.hosted.RuntimeReflection;
+import org.opensaml.core.config.InitializationException;
+import org.opensaml.core.config.InitializationService;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+
+import java.util.Collection;
+import java.util.stream.Stream;
+
+/**
+ * <p>Registers the classes OpenSAML and Apache Santuario create reflectively, so that
+ * {@link InitializationService#initialize()} works in a native image.</p>
+ * <p>OpenSAML names its builders, marshallers and unmarshallers in XML files read at startup, hundreds of them,
+ * and Santuario instantiates its algorithm implementations from registered classes. Rather than listing them
+ * in reflect-config.json, OpenSAML is initialized while the image is built and whatever it registered is
+ * kept reachable, which also follows OpenSAML upgrades.</p>
+ */
+public final class OpenSamlFeature implements Feature {
+    @Override
+    public void beforeAnalysis(BeforeAnalysisAccess access) {
+        try {
+            InitializationService.initialize();
+        } catch (InitializationException e) {
+            throw new IllegalStateException(e);
+        }
+        Stream.of(
+                XMLObjectProviderRegistrySupport.getBuilderFactory().getBuilders().values(),
+                XMLObjectProviderRegistrySupport.getMarshallerFactory().getMarshallers().values(),
+                XMLObjectProviderRegistrySupport.getUnmarshallerFactory().getUnmarshallers().values())
+                .flatMap(Collection::stream)
+                .map(Object::getClass)
+                .distinct()
+                .forEach(OpenSamlFeature::registerForInstantiation);
+
+        Class<?>[] santuarioSpis = {
+                CanonicalizerSpi.class, KeyResolverSpi.class, ResourceResolverSpi.class, SignatureAlgorithmSpi.class, TransformSpi.class
+        };
+        for (Class<?> spi : santuarioSpis) {
+            access.registerSubtypeReachabilityHandler((duringAnalysis, subtype) -> registerForInstantiation(subtype), spi);
+        }
+    }
+
+    private static void registerForInstantiation(Class<?> type) {
+        RuntimeReflection.register(type);
+        RuntimeReflection.register(type.getDeclaredConstructors());
+    }
+}
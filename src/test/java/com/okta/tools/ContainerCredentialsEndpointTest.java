@@ -0,0 +1,185 @@
+/*
+ * Copyright 2019 Okta
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.okta.tools;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.auth.credentials.AwsCredentials;
+import software.amazon.awssdk.auth.credentials.AwsSessionCredentials;
+import software.amazon.awssdk.auth.credentials.ContainerCredentialsProvider;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ContainerCredentialsEndpointTest {
+
+    private static final String TOKEN = "agent-token";
+    private static final String ROLE_ARN = "arn:aws:iam::123456789012:role/Developer";
+
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<String> loadedProfiles = new ArrayList<>();
+    private final Instant expiration = Instant.now().plus(1, ChronoUnit.HOURS).truncatedTo(ChronoUnit.SECONDS).plusMillis(750);
+    private OktaAwsCliAssumeRole assumeRole;
+    private ResidentCredentials residentCredentials;
+    private ExecutorService executor;
+    private HttpServer server;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        assumeRole = mock(OktaAwsCliAssumeRole.class);
+        residentCredentials = new ResidentCredentials(profile -> {
+            loadedProfiles.add(profile);
+            OktaAwsCliEnvironment environment = new OktaAwsCliEnvironment();
+            environment.refreshAhead = 0;
+            return environment;
+        }, environment -> assumeRole, Clock.systemUTC(), mock(ScheduledExecutorService.class));
+        executor = Executors.newCachedThreadPool();
+        server = ContainerCredentialsEndpoint.start(0, TOKEN, residentCredentials, executor);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    @Test
+    void credentialsAreServedInTheContainerCredentialsFormat() throws Exception {
+        when(assumeRole.run(any(), eq(false))).thenReturn(ResidentCredentialsTest.result(expiration));
+
+        HttpResponse<String> response = send(request(ContainerCredentialsEndpoint.PATH).header("Authorization", TOKEN));
+
+        assertEquals(200, response.statusCode());
+        assertEquals("application/json", response.headers().firstValue("Content-Type").orElse(null));
+        JsonNode credentials = objectMapper.readTree(response.body());
+        List<String> fields = new ArrayList<>();
+        for (Iterator<String> names = credentials.fieldNames(); names.hasNext(); ) {
+            fields.add(names.next());
+        }
+        assertEquals(List.of("AccessKeyId", "SecretAccessKey", "Token", "Expiration", "RoleArn"), fields);
+        assertEquals("ASIAEXAMPLE", credentials.get("AccessKeyId").asText());
+        assertEquals("secret", credentials.get("SecretAccessKey").asText());
+        assertEquals("token", credentials.get("Token").asText());
+        assertEquals(expiration.truncatedTo(ChronoUnit.SECONDS).toString(), credentials.get("Expiration").asText());
+        assertEquals(ROLE_ARN, credentials.get("RoleArn").asText());
+    }
+
+    @Test
+    void awsSdkReadsTheCredentials() throws Exception {
+        when(assumeRole.run(any(), eq(false))).thenReturn(ResidentCredentialsTest.result(expiration));
+        System.setProperty("aws.containerCredentialsFullUri", uri(ContainerCredentialsEndpoint.PATH).toString());
+        System.setProperty("aws.containerAuthorizationToken", TOKEN);
+        try {
+            AwsCredentials credentials = ContainerCredentialsProvider.builder().build().resolveCredentials();
+
+            assertTrue(credentials instanceof AwsSessionCredentials);
+            assertEquals("ASIAEXAMPLE", credentials.accessKeyId());
+            assertEquals("secret", credentials.secretAccessKey());
+            assertEquals("token", ((AwsSessionCredentials) credentials).sessionToken());
+        } finally {
+            System.clearProperty("aws.containerCredentialsFullUri");
+            System.clearProperty("aws.containerAuthorizationToken");
+        }
+    }
+
+    @Test
+    void missingOrWrongAuthorizationIsRejected() throws Exception {
+        assertEquals(401, send(request(ContainerCredentialsEndpoint.PATH)).statusCode());
+        assertEquals(401, send(request(ContainerCredentialsEndpoint.PATH).header("Authorization", "other-token")).statusCode());
+
+        verifyZeroInteractions(assumeRole);
+    }
+
+    @Test
+    void onlyGetIsAllowed() throws Exception {
+        HttpResponse<String> response = send(request(ContainerCredentialsEndpoint.PATH)
+                .header("Authorization", TOKEN)
+                .POST(HttpRequest.BodyPublishers.noBody()));
+
+        assertEquals(405, response.statusCode());
+        assertEquals("MethodNotAllowed", objectMapper.readTree(response.body()).get("Code").asText());
+        verifyZeroInteractions(assumeRole);
+    }
+
+    @Test
+    void nestedPathsAreNotFound() throws Exception {
+        HttpResponse<String> response = send(request(ContainerCredentialsEndpoint.PATH + "/a/b").header("Authorization", TOKEN));
+
+        assertEquals(404, response.statusCode());
+        verifyZeroInteractions(assumeRole);
+    }
+
+    @Test
+    void profileAndRoleAreTakenFromTheRequest() throws Exception {
+        String otherRole = "arn:aws:iam::123456789012:role/Read Only+Audit";
+        when(assumeRole.run(any(), eq(false))).thenReturn(ResidentCredentialsTest.result(expiration));
+
+        HttpResponse<String> response = send(request(ContainerCredentialsEndpoint.PATH +
+                "/dev?role=arn%3Aaws%3Aiam%3A%3A123456789012%3Arole%2FRead+Only%2BAudit").header("Authorization", TOKEN));
+
+        assertEquals(200, response.statusCode());
+        assertEquals(List.of("dev"), loadedProfiles);
+        OktaAwsCliEnvironment environment = residentCredentials.getEnvironment("dev", otherRole, true);
+        assertEquals(otherRole, environment.awsRoleToAssume);
+        assertTrue(environment.oktaEnvMode);
+        assertEquals(List.of("dev"), loadedProfiles);
+    }
+
+    @Test
+    void failedLoginIsReportedAsAnError() throws Exception {
+        when(assumeRole.run(any(), eq(false))).thenThrow(new IllegalStateException("No active Okta session"));
+
+        HttpResponse<String> response = send(request(ContainerCredentialsEndpoint.PATH).header("Authorization", TOKEN));
+
+        assertEquals(500, response.statusCode());
+        JsonNode error = objectMapper.readTree(response.body());
+        assertEquals("CredentialsUnavailable", error.get("Code").asText());
+        assertEquals("No active Okta session", error.get("Message").asText());
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort() + path);
+    }
+
+    private HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder(uri(path));
+    }
+
+    private HttpResponse<String> send(HttpRequest.Builder request) throws IOException, InterruptedException {
+        return httpClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2019 Okta
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.okta.tools;
+
+import com.okta.tools.standin.OktaStandInServer;
+import software.amazon.awssdk.regions.Region;
+
+import javax.net.ssl.SSLContext;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Runs full logins through {@link OktaAwsCliAssumeRole#run} against an {@link OktaStandInServer} from concurrent
+ * threads and reports latency percentiles and throughput.</p>
+ * <p>Options are given as {@code name=value} arguments: {@code flows}, {@code concurrency}, {@code warmup},
+ * {@code roles}, {@code mfa} ({@code none} or {@code push}), {@code pushWaitingPolls}, {@code latencyMillis},
+ * {@code jitterMillis}, {@code errorRate} and {@code rateLimitPerSecond}:</p>
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.okta.tools.LoadDriver \
+ *     -Dexec.args="flows=200 concurrency=8 latencyMillis=40 jitterMillis=20"
+ * </pre>
+ * <p>All flows share one process, and with it one HTTP connection pool, whereas real logins each run in their own
+ * process; raise OKTA_HTTP_MAX_CONNECTIONS_PER_ROUTE above the concurrency to keep the pool out of the numbers.
+ * The driver points user.home at a temporary directory and trusts only the stand-in's certificate.</p>
+ */
+final class LoadDriver {
+    private LoadDriver() {}
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> arguments = parseArguments(args);
+        int flows = getInt(arguments, "flows", 100);
+        int concurrency = getInt(arguments, "concurrency", 4);
+        int warmup = getInt(arguments, "warmup", concurrency);
+
+        OktaStandInServer.Options options = new OktaStandInServer.Options();
+        options.roles = getInt(arguments, "roles", 3);
+        options.pushMfa = "push".equalsIgnoreCase(arguments.getOrDefault("mfa", "none"));
+        options.pushWaitingPolls = getInt(arguments, "pushWaitingPolls", 1);
+        options.latencyMillis = getInt(arguments, "latencyMillis", 0);
+        options.jitterMillis = getInt(arguments, "jitterMillis", 0);
+        options.errorRate = Double.parseDouble(arguments.getOrDefault("errorRate", "0"));
+        options.rateLimitPerSecond = getInt(arguments, "rateLimitPerSecond", 0);
+
+        Path home = Files.createTempDirectory("okta-load-driver");
+        // Must happen before the CLI resolves its files or creates its HTTP clients
+        System.setProperty("user.home", home.toString());
+        // A failed step can end in a menu prompt, which must fail the flow rather than wait for input
+        System.setIn(new ByteArrayInputStream(new byte[0]));
+
+        try (OktaStandInServer standIn = OktaStandInServer.start(options)) {
+            trust(standIn);
+
+            run(standIn, options, home, warmup, concurrency, "warmup");
+            Report report = run(standIn, options, home, flows, concurrency, "flow");
+
+            System.out.println(report);
+            System.out.println("Stand-in requests: " + standIn.getRequestCounts()
+                    + ", rate limited: " + standIn.getRateLimitedCount()
+                    + ", injected errors: " + standIn.getInjectedErrorCount());
+        }
+        // The shared HTTP clients keep non-daemon threads alive
+        System.exit(0);
+    }
+
+    private static void trust(OktaStandInServer standIn) throws IOException {
+        SSLContext sslContext = OktaStandInServer.createClientSslContext(standIn.getTrustStore());
+        // HttpHelper uses the default context, the STS client's Apache client reads the trust store properties
+        SSLContext.setDefault(sslContext);
+        System.setProperty("javax.net.ssl.trustStore", standIn.getTrustStore().toString());
+        System.setProperty("javax.net.ssl.trustStoreType", "PKCS12");
+        System.setProperty("javax.net.ssl.trustStorePassword", OktaStandInServer.TRUST_STORE_PASSWORD);
+    }
+
+    private static Report run(OktaStandInServer standIn, OktaStandInServer.Options options, Path home,
+                              int flows, int concurrency, String name) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        AtomicInteger flowIndex = new AtomicInteger();
+        List<Future<Long>> results = new ArrayList<>(flows);
+        PrintStream stderr = System.err;
+        // Each login prints prompts and progress to stderr
+        System.setErr(new PrintStream(OutputStream.nullOutputStream()));
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < flows; i++) {
+                results.add(executor.submit(() -> login(standIn, options, home.resolve(name + "-" + flowIndex.getAndIncrement()))));
+            }
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.HOURS);
+        } finally {
+            System.setErr(stderr);
+        }
+        return new Report(results, System.nanoTime() - start, concurrency);
+    }
+
+    private static long login(OktaStandInServer standIn, OktaStandInServer.Options options, Path cookiesPath) throws Exception {
+        OktaAwsCliEnvironment environment = new OktaAwsCliEnvironment(false, standIn.getOrg(), options.username,
+                () -> options.password, cookiesPath.toString(), null, standIn.getAppUrl(),
+                OktaStandInServer.getRoleName(0), 3600, Region.US_EAST_1, null, true, null);
+        environment.stsEndpoint = standIn.getStsEndpoint();
+
+        long start = System.nanoTime();
+        OktaAwsCliAssumeRole.RunResult result = OktaAwsCliAssumeRole.withEnvironment(environment).run(Instant.now());
+        long elapsed = System.nanoTime() - start;
+        if (result.accessKeyId == null) {
+            throw new IllegalStateException("No credentials returned");
+        }
+        return elapsed;
+    }
+
+    private static Map<String, String> parseArguments(String[] args) {
+        Map<String, String> arguments = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Expected name=value but got " + arg);
+            }
+            arguments.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        return arguments;
+    }
+
+    private static int getInt(Map<String, String> arguments, String name, int defaultValue) {
+        String value = arguments.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    private static final class Report {
+        private final long[] latencies;
+        private final Map<String, Integer> failures = new TreeMap<>();
+        private final int flows;
+        private final long elapsedNanos;
+        private final int concurrency;
+
+        Report(List<Future<Long>> results, long elapsedNanos, int concurrency) throws InterruptedException {
+            this.flows = results.size();
+            this.elapsedNanos = elapsedNanos;
+            this.concurrency = concurrency;
+            List<Long> succeeded = new ArrayList<>();
+            for (Future<Long> result : results) {
+                try {
+                    succeeded.add(result.get());
+                } catch (ExecutionException e) {
+                    failures.merge(String.valueOf(e.getCause()), 1, Integer::sum);
+                }
+            }
+            latencies = succeeded.stream().mapToLong(Long::longValue).sorted().toArray();
+        }
+
+        private double percentileMillis(double percentile) {
+            if (latencies.length == 0) return Double.NaN;
+            int rank = (int) Math.ceil(percentile / 100 * latencies.length);
+            return latencies[Math.max(0, rank - 1)] / 1_000_000.0;
+        }
+
+        @Override
+        public String toString() {
+            double seconds = elapsedNanos / 1_000_000_000.0;
+            StringBuilder report = new StringBuilder()
+                    .append(String.format("Flows: %d (%d succeeded, %d failed), concurrency %d, %.2f s%n",
+                            flows, latencies.length, flows - latencies.length, concurrency, seconds))
+                    .append(String.format("Throughput: %.2f logins/s%n", latencies.length / seconds))
+                    .append(String.format("Latency (ms): p50=%.1f p90=%.1f p99=%.1f max=%.1f",
+                            percentileMillis(50), percentileMillis(90), percentileMillis(99), percentileMillis(100)));
+            failures.forEach((failure, count) -> report.append(String.format("%n  %d x %s", count, failure)));
+            return report.toString();
+        }
+    }
+}
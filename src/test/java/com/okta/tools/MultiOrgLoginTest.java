@@ -0,0 +1,80 @@
+/*
+ * Copyright 2019 Okta
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.okta.tools;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MultiOrgLoginTest {
+
+    @Test
+    void profilesForDifferentOrgsNeedTheirOwnCookies() {
+        Map<String, OktaAwsCliEnvironment> environments = new LinkedHashMap<>();
+        environments.put("acme", environment("acmecorp.okta.com", null, false, false));
+        environments.put("acme-admin", environment("acmecorp.okta.com", null, false, false));
+        environments.put("partner", environment("partner.okta.com", null, false, false));
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> MultiOrgLogin.checkEnvironments(environments));
+        assertTrue(e.getMessage().contains("acme, acme-admin, partner"), e.getMessage());
+    }
+
+    @Test
+    void cookiesPathsAreComparedNormalized() {
+        Map<String, OktaAwsCliEnvironment> environments = new LinkedHashMap<>();
+        environments.put("acme", environment("acmecorp.okta.com", "okta/acme", false, false));
+        environments.put("partner", environment("partner.okta.com", "okta/../okta/./acme", false, false));
+
+        assertThrows(IllegalStateException.class, () -> MultiOrgLogin.checkEnvironments(environments));
+    }
+
+    @Test
+    void profilesWithTheirOwnCookiesAreAccepted() {
+        Map<String, OktaAwsCliEnvironment> environments = new LinkedHashMap<>();
+        environments.put("acme", environment("acmecorp.okta.com", null, true, false));
+        environments.put("acme-admin", environment("acmecorp.okta.com", null, false, false));
+        environments.put("partner", environment("partner.okta.com", "okta/partner", false, false));
+
+        assertDoesNotThrow(() -> MultiOrgLogin.checkEnvironments(environments));
+    }
+
+    @Test
+    void onlyOneProfileMayUseTheBrowser() {
+        Map<String, OktaAwsCliEnvironment> environments = new LinkedHashMap<>();
+        environments.put("acme", environment("acmecorp.okta.com", "okta/acme", true, false));
+        environments.put("partner", environment("partner.okta.com", "okta/partner", true, false));
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> MultiOrgLogin.checkEnvironments(environments));
+        assertTrue(e.getMessage().contains("OKTA_BROWSER_AUTH"), e.getMessage());
+    }
+
+    @Test
+    void envModeIsRejected() {
+        Map<String, OktaAwsCliEnvironment> environments = new LinkedHashMap<>();
+        environments.put("acme", environment("acmecorp.okta.com", "okta/acme", false, false));
+        environments.put("partner", environment("partner.okta.com", "okta/partner", false, true));
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> MultiOrgLogin.checkEnvironments(environments));
+        assertTrue(e.getMessage().contains("partner sets OKTA_ENV_MODE"), e.getMessage());
+    }
+
+    private static OktaAwsCliEnvironment environment(String oktaOrg, String oktaCookiesPath, boolean browserAuth, boolean oktaEnvMode) {
+        return new OktaAwsCliEnvironment(browserAuth, oktaOrg, null, null, oktaCookiesPath, null, null, null, 0, null, null, oktaEnvMode, null);
+    }
+}
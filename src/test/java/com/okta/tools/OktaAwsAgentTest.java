@@ -0,0 +1,249 @@
+/*
+ * Copyright 2019 Okta
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.okta.tools;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class OktaAwsAgentTest {
+
+    private static final String TOKEN = "0123456789abcdef";
+
+    @TempDir
+    Path directory;
+
+    private final Map<String, String> environmentVariables = Map.of("OKTA_ORG", "acmecorp.okta.com", "OKTA_PROFILE", "dev");
+    private final List<String> loadedProfiles = Collections.synchronizedList(new ArrayList<>());
+    private OktaAwsCliAssumeRole assumeRole;
+    private Path agentFile;
+    private Thread agentThread;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        assumeRole = mock(OktaAwsCliAssumeRole.class);
+        ResidentCredentials residentCredentials = new ResidentCredentials(profile -> {
+            loadedProfiles.add(profile);
+            OktaAwsCliEnvironment environment = new OktaAwsCliEnvironment();
+            environment.refreshAhead = 0;
+            return environment;
+        }, environment -> assumeRole, Clock.systemUTC(), mock(ScheduledExecutorService.class));
+        agentFile = directory.resolve("agent.properties");
+        OktaAwsAgent agent = new OktaAwsAgent(TOKEN, agentFile, residentCredentials, environmentVariables, directory);
+        agentThread = new Thread(() -> {
+            try {
+                agent.serve(0, null);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        agentThread.start();
+        // Created before it is written
+        for (int i = 0; i < 500 && readAgentFile().getProperty("port") == null; i++) {
+            Thread.sleep(10);
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (agentThread.isAlive()) {
+            request(TOKEN + " stop");
+            agentThread.join(5000);
+        }
+    }
+
+    @Test
+    void pingIsAnswered() throws IOException {
+        assertEquals(List.of("OK"), request(TOKEN + " ping"));
+    }
+
+    @Test
+    void wrongTokenIsRejected() throws IOException {
+        assertEquals(List.of("ERROR Unauthorized request"), request("fedcba9876543210 ping"));
+        assertEquals(List.of("ERROR Unauthorized request"), request(TOKEN));
+        assertEquals(List.of("ERROR Unauthorized request"), request(""));
+    }
+
+    @Test
+    void unknownCommandIsRejected() throws IOException {
+        assertEquals(List.of("ERROR Unknown command: login"), request(TOKEN + " login"));
+    }
+
+    @Test
+    void dashesStandForEmptyArguments() throws IOException, InterruptedException {
+        OktaAwsCliAssumeRole.RunResult result = ResidentCredentialsTest.result(Instant.now().plus(1, ChronoUnit.HOURS));
+        when(assumeRole.run(any(), anyBoolean())).thenReturn(result);
+
+        List<String> reply = request(TOKEN + " credential_process " + fingerprint(null) + " - -");
+
+        assertEquals("OK", reply.get(0));
+        assertTrue(reply.get(1).contains("\"AccessKeyId\":\"ASIAEXAMPLE\""), reply.get(1));
+        assertEquals(Collections.singletonList(null), loadedProfiles);
+    }
+
+    @Test
+    void environmentIsOnlySentInEnvMode() throws IOException, InterruptedException {
+        when(assumeRole.run(any(), anyBoolean())).thenReturn(ResidentCredentialsTest.result(Instant.now().plus(1, ChronoUnit.HOURS)));
+
+        List<String> reply = request(TOKEN + " env " + fingerprint("dev") + " dev");
+
+        assertEquals(List.of("OK"), reply);
+        assertEquals(List.of("dev"), loadedProfiles);
+    }
+
+    @Test
+    void callersWithOtherSettingsAreRejected() throws IOException, InterruptedException {
+        Map<String, String> otherOrg = Map.of("OKTA_ORG", "other.okta.com");
+        String otherFingerprint = OktaAwsConfig.getFingerprint(otherOrg, directory, "dev");
+
+        assertTrue(request(TOKEN + " env " + otherFingerprint + " dev").get(0).startsWith("ERROR "));
+        assertTrue(request(TOKEN + " credential_process - dev").get(0).startsWith("ERROR "));
+        String fingerprint = fingerprint("dev");
+        Files.createFile(directory.resolve("config.dev.properties"));
+        assertTrue(request(TOKEN + " credential_process " + fingerprint + " dev").get(0).startsWith("ERROR "));
+
+        verify(assumeRole, never()).run(any(), anyBoolean());
+        assertEquals(List.of(), loadedProfiles);
+    }
+
+    @Test
+    void failedLoginsAreReportedAsErrors() throws IOException, InterruptedException {
+        when(assumeRole.run(any(), anyBoolean())).thenThrow(new IllegalStateException("No active Okta session,\nlog in"));
+
+        assertEquals(List.of("ERROR No active Okta session, log in"),
+                request(TOKEN + " credential_process " + fingerprint(null)));
+    }
+
+    @Test
+    void logoutDropsResidentCredentials() throws IOException, InterruptedException {
+        when(assumeRole.run(any(), anyBoolean())).thenReturn(ResidentCredentialsTest.result(Instant.now().plus(1, ChronoUnit.HOURS)));
+        String request = TOKEN + " credential_process " + fingerprint("dev") + " dev";
+        request(request);
+        request(request);
+
+        OktaAwsAgent.logout(agentFile);
+        request(request);
+
+        verify(assumeRole, times(2)).run(any(), anyBoolean());
+    }
+
+    @Test
+    void stopEndsTheAgent() throws IOException, InterruptedException {
+        assertEquals(TOKEN, readAgentFile().getProperty("token"));
+
+        assertEquals(List.of("OK"), request(TOKEN + " stop"));
+
+        agentThread.join(5000);
+        assertFalse(agentThread.isAlive());
+        assertFalse(Files.exists(agentFile));
+    }
+
+    @Test
+    void secondAgentRefusesToStart() throws IOException {
+        OktaAwsAgent second = new OktaAwsAgent("fedcba9876543210", agentFile, new ResidentCredentials(),
+                environmentVariables, directory);
+
+        assertThrows(IllegalStateException.class, () -> second.serve(0, null));
+        assertEquals(TOKEN, readAgentFile().getProperty("token"));
+        assertEquals(List.of("OK"), request(TOKEN + " ping"));
+    }
+
+    @Test
+    void agentFileOfANewerAgentIsKept() throws IOException, InterruptedException {
+        Properties newer = readAgentFile();
+        newer.setProperty("token", "fedcba9876543210");
+        try (Writer writer = Files.newBufferedWriter(agentFile)) {
+            newer.store(writer, null);
+        }
+
+        assertEquals(List.of("OK"), request(TOKEN + " stop"));
+
+        agentThread.join(5000);
+        assertFalse(agentThread.isAlive());
+        assertEquals("fedcba9876543210", readAgentFile().getProperty("token"));
+    }
+
+    @Test
+    void fingerprintMatchesPosixCksum() {
+        // printf abc | cksum
+        assertEquals("1219131554-3", OktaAwsConfig.cksum("abc".getBytes(StandardCharsets.UTF_8)));
+        assertEquals("4294967295-0", OktaAwsConfig.cksum(new byte[0]));
+    }
+
+    @Test
+    void fingerprintLeavesOutProfileAndRole() throws IOException {
+        String fingerprint = fingerprint("dev");
+
+        assertEquals(fingerprint, OktaAwsConfig.getFingerprint(Map.of("OKTA_ORG", "acmecorp.okta.com",
+                "OKTA_AWS_ROLE_TO_ASSUME", "arn:aws:iam::123456789012:role/Developer", "HOME", "/home/user"), directory, "dev"));
+        assertNotEquals(fingerprint, OktaAwsConfig.getFingerprint(Map.of("OKTA_ORG", "acmecorp.okta.com",
+                "OKTA_STS_DURATION", "900"), directory, "dev"));
+        Files.createFile(directory.resolve("config.properties"));
+        assertNotEquals(fingerprint, fingerprint("dev"));
+    }
+
+    private String fingerprint(String profile) {
+        return OktaAwsConfig.getFingerprint(environmentVariables, directory, profile);
+    }
+
+    private Properties readAgentFile() throws IOException {
+        Properties properties = new Properties();
+        if (Files.isRegularFile(agentFile)) {
+            try (Reader reader = Files.newBufferedReader(agentFile)) {
+                properties.load(reader);
+            }
+        }
+        return properties;
+    }
+
+    private List<String> request(String requestLine) throws IOException {
+        int port = Integer.parseInt(readAgentFile().getProperty("port"));
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+             Writer writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+            writer.write(requestLine + "\n");
+            writer.flush();
+            return reader.lines().collect(Collectors.toList());
+        }
+    }
+}
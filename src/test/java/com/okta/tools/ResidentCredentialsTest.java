@@ -0,0 +1,299 @@
+/*
+ * Copyright 2019 Okta
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.okta.tools;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ResidentCredentialsTest {
+
+    private static final String ROLE_ARN = "arn:aws:iam::123456789012:role/Developer";
+
+    private final TestClock clock = new TestClock(Instant.parse("2019-06-01T12:00:00Z"));
+    private final List<String> loadedProfiles = new ArrayList<>();
+    private double refreshAhead = 0;
+    private OktaAwsCliAssumeRole assumeRole;
+    private ScheduledExecutorService refresher;
+    private ResidentCredentials residentCredentials;
+
+    @BeforeEach
+    void setUp() {
+        assumeRole = mock(OktaAwsCliAssumeRole.class);
+        refresher = mock(ScheduledExecutorService.class);
+        residentCredentials = new ResidentCredentials(profile -> {
+            loadedProfiles.add(profile);
+            OktaAwsCliEnvironment environment = new OktaAwsCliEnvironment();
+            environment.refreshAhead = refreshAhead;
+            return environment;
+        }, environment -> assumeRole, clock, refresher);
+    }
+
+    @Test
+    void freshCredentialsAreServedFromMemory() throws IOException, InterruptedException {
+        OktaAwsCliAssumeRole.RunResult result = result(clock.instant().plus(Duration.ofHours(1)));
+        when(assumeRole.run(any(), anyBoolean())).thenReturn(result);
+
+        assertSame(result, residentCredentials.get("dev", ROLE_ARN, true));
+        clock.advance(Duration.ofMinutes(44));
+        assertSame(result, residentCredentials.get("dev", ROLE_ARN, true));
+
+        verify(assumeRole, times(1)).run(any(), anyBoolean());
+        assertEquals(List.of("dev"), loadedProfiles);
+    }
+
+    @Test
+    void credentialsAboutToExpireAreRenewed() throws IOException, InterruptedException {
+        OktaAwsCliAssumeRole.RunResult first = result(clock.instant().plus(Duration.ofHours(1)));
+        OktaAwsCliAssumeRole.RunResult second = result(clock.instant().plus(Duration.ofHours(2)));
+        when(assumeRole.run(any(), anyBoolean())).thenReturn(first, second);
+
+        assertSame(first, residentCredentials.get("dev", ROLE_ARN, false));
+        clock.advance(Duration.ofMinutes(59));
+        assertSame(first, residentCredentials.get("dev", ROLE_ARN, false));
+        // Within the skew of the expiry
+        clock.advance(Duration.ofSeconds(45));
+        assertSame(second, residentCredentials.get("dev", ROLE_ARN, false));
+
+        verify(assumeRole, times(2)).run(any(), anyBoolean());
+    }
+
+    @Test
+    void credentialsHandedToTheCallerKeepTheMinimumValidity() throws IOException, InterruptedException {
+        OktaAwsCliAssumeRole.RunResult first = result(clock.instant().plus(Duration.ofHours(1)));
+        OktaAwsCliAssumeRole.RunResult second = result(clock.instant().plus(Duration.ofHours(2)));
+        when(assumeRole.run(any(), anyBoolean())).thenReturn(first, second);
+
+        assertSame(first, residentCredentials.get("dev", ROLE_ARN, true));
+        // An AWS SDK would refresh credentials with less than 15 minutes left at once
+        clock.advance(Duration.ofMinutes(46));
+        assertSame(second, residentCredentials.get("dev", ROLE_ARN, true));
+
+        verify(assumeRole, times(2)).run(any(), anyBoolean());
+    }
+
+    @Test
+    void renewalOfCredentialsHandedToTheCallerKeepsTheMinimumValidity() throws IOException, InterruptedException {
+        refreshAhead = 1;
+        when(assumeRole.run(any(), anyBoolean())).thenReturn(result(clock.instant().plus(Duration.ofHours(1))));
+
+        residentCredentials.get("dev", ROLE_ARN, true);
+
+        assertTrue(scheduledDelayMillis() <= Duration.ofMinutes(45).toMillis());
+    }
+
+    @Test
+    void activeProfileIsCheckedOnEveryRequest() throws IOException, InterruptedException {
+        OktaAwsCliAssumeRole.RunResult activeProfile = new OktaAwsCliAssumeRole.RunResult();
+        activeProfile.profileName = "dev";
+        when(assumeRole.run(any(), anyBoolean())).thenReturn(activeProfile);
+
+        residentCredentials.get("dev", null, false);
+        residentCredentials.get("dev", null, false);
+
+        verify(assumeRole, times(2)).run(any(), anyBoolean());
+    }
+
+    @Test
+    void loginsNeverPrompt() throws IOException, InterruptedException {
+        when(assumeRole.run(any(), eq(false))).thenThrow(new IllegalStateException("No active Okta session"));
+
+        assertThrows(IllegalStateException.class, () -> residentCredentials.get("dev", ROLE_ARN, true));
+
+        verify(assumeRole, never()).run(any(), eq(true));
+    }
+
+    @Test
+    void residentsAreKeptPerProfileRoleAndMode() throws IOException, InterruptedException {
+        when(assumeRole.run(any(), anyBoolean())).thenReturn(result(clock.instant().plus(Duration.ofHours(1))));
+
+        residentCredentials.get("dev", ROLE_ARN, true);
+        residentCredentials.get("dev", ROLE_ARN, false);
+        residentCredentials.get("prod", ROLE_ARN, true);
+        residentCredentials.get(" dev ", ROLE_ARN, true);
+
+        assertEquals(List.of("dev", "dev", "prod"), loadedProfiles);
+        assertEquals(ROLE_ARN, residentCredentials.getEnvironment("prod", ROLE_ARN, true).awsRoleToAssume);
+        assertTrue(residentCredentials.getEnvironment("dev", ROLE_ARN, true).oktaEnvMode);
+    }
+
+    @Test
+    void renewalIsScheduledAheadOfTheCredentialsExpiry() throws IOException, InterruptedException {
+        refreshAhead = 0.5;
+        when(assumeRole.run(any(), anyBoolean())).thenReturn(result(clock.instant().plus(Duration.ofHours(1))));
+
+        residentCredentials.get("dev", ROLE_ARN, true);
+
+        // Half the lifetime, less up to a tenth of it as jitter
+        long delayMillis = scheduledDelayMillis();
+        assertTrue(delayMillis <= Duration.ofMinutes(30).toMillis(), "delay " + delayMillis);
+        assertTrue(delayMillis >= Duration.ofMinutes(24).toMillis(), "delay " + delayMillis);
+    }
+
+    @Test
+    void renewalIsScheduledBeforeTheOktaSessionEnds() throws IOException, InterruptedException {
+        refreshAhead = 0.9;
+        when(assumeRole.run(any(), anyBoolean())).thenReturn(result(clock.instant().plus(Duration.ofHours(1))));
+        when(assumeRole.getOktaSessionExpiry()).thenReturn(Optional.of(clock.instant().plus(Duration.ofMinutes(20))));
+
+        residentCredentials.get("dev", ROLE_ARN, true);
+
+        assertEquals(Duration.ofMinutes(20).minusSeconds(30).toMillis(), scheduledDelayMillis());
+    }
+
+    @Test
+    void renewalIsScheduledBeforeTheCredentialsExpire() throws IOException, InterruptedException {
+        refreshAhead = 1;
+        when(assumeRole.run(any(), anyBoolean())).thenReturn(result(clock.instant().plus(Duration.ofHours(1))));
+
+        residentCredentials.get("dev", ROLE_ARN, true);
+
+        assertTrue(scheduledDelayMillis() <= Duration.ofHours(1).minusSeconds(30).toMillis());
+    }
+
+    @Test
+    void renewalIsSkippedWhenDueTooSoon() throws IOException, InterruptedException {
+        refreshAhead = 0.5;
+        // The latest renewal, 30 seconds ahead of expiry, is within the minimum delay
+        when(assumeRole.run(any(), anyBoolean())).thenReturn(result(clock.instant().plusSeconds(35)));
+
+        residentCredentials.get("dev", ROLE_ARN, true);
+
+        verify(refresher, never()).schedule(any(Runnable.class), anyLong(), any());
+    }
+
+    @Test
+    void renewalReplacesTheResultAndIsScheduledAgain() throws IOException, InterruptedException {
+        refreshAhead = 0.5;
+        OktaAwsCliAssumeRole.RunResult first = result(clock.instant().plus(Duration.ofHours(1)));
+        when(assumeRole.run(any(), anyBoolean())).thenReturn(first);
+        residentCredentials.get("dev", ROLE_ARN, true);
+        Runnable renewal = scheduledRenewal();
+
+        clock.advance(Duration.ofMinutes(30));
+        OktaAwsCliAssumeRole.RunResult second = result(clock.instant().plus(Duration.ofHours(1)));
+        when(assumeRole.refresh(any(), eq(ROLE_ARN))).thenReturn(second);
+        renewal.run();
+
+        assertSame(second, residentCredentials.get("dev", ROLE_ARN, true));
+        verify(assumeRole, times(1)).run(any(), anyBoolean());
+        verify(refresher, times(2)).schedule(any(Runnable.class), anyLong(), eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void failedRenewalKeepsTheResultAndIsNotScheduledAgain() throws IOException, InterruptedException {
+        refreshAhead = 0.5;
+        OktaAwsCliAssumeRole.RunResult first = result(clock.instant().plus(Duration.ofHours(1)));
+        when(assumeRole.run(any(), anyBoolean())).thenReturn(first);
+        residentCredentials.get("dev", ROLE_ARN, true);
+        Runnable renewal = scheduledRenewal();
+
+        clock.advance(Duration.ofMinutes(30));
+        when(assumeRole.refresh(any(), eq(ROLE_ARN))).thenThrow(new IllegalStateException("The Okta session has ended"));
+        renewal.run();
+
+        assertSame(first, residentCredentials.get("dev", ROLE_ARN, true));
+        verify(assumeRole, times(1)).run(any(), anyBoolean());
+        verify(refresher, times(1)).schedule(any(Runnable.class), anyLong(), any());
+    }
+
+    @Test
+    void clearDropsResidentsAndCancelsTheirRenewals() throws IOException, InterruptedException {
+        refreshAhead = 0.5;
+        ScheduledFuture<?> scheduled = mock(ScheduledFuture.class);
+        doReturn(scheduled).when(refresher).schedule(any(Runnable.class), anyLong(), any());
+        when(assumeRole.run(any(), anyBoolean())).thenReturn(result(clock.instant().plus(Duration.ofHours(1))));
+        residentCredentials.get("dev", ROLE_ARN, true);
+        Runnable renewal = scheduledRenewal();
+
+        residentCredentials.clear();
+        // Already running when cleared
+        renewal.run();
+        residentCredentials.get("dev", ROLE_ARN, true);
+
+        verify(scheduled).cancel(false);
+        verify(assumeRole, never()).refresh(any(), any());
+        verify(assumeRole, times(2)).run(any(), anyBoolean());
+        assertEquals(List.of("dev", "dev"), loadedProfiles);
+    }
+
+    private long scheduledDelayMillis() {
+        ArgumentCaptor<Long> delay = ArgumentCaptor.forClass(Long.class);
+        verify(refresher).schedule(any(Runnable.class), delay.capture(), eq(TimeUnit.MILLISECONDS));
+        return delay.getValue();
+    }
+
+    private Runnable scheduledRenewal() {
+        ArgumentCaptor<Runnable> renewal = ArgumentCaptor.forClass(Runnable.class);
+        verify(refresher).schedule(renewal.capture(), anyLong(), eq(TimeUnit.MILLISECONDS));
+        return renewal.getValue();
+    }
+
+    static OktaAwsCliAssumeRole.RunResult result(Instant expiration) {
+        OktaAwsCliAssumeRole.RunResult result = new OktaAwsCliAssumeRole.RunResult();
+        result.profileName = "dev";
+        result.roleArn = ROLE_ARN;
+        result.accessKeyId = "ASIAEXAMPLE";
+        result.secretAccessKey = "secret";
+        result.sessionToken = "token";
+        result.expiration = expiration;
+        return result;
+    }
+
+    static final class TestClock extends Clock {
+        private Instant instant;
+
+        TestClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
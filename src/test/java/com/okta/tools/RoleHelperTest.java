@@ -18,10 +18,14 @@ package com.okta.tools;
 import com.okta.tools.helpers.RoleHelper;
 import com.okta.tools.models.AccountOption;
 import com.okta.tools.models.RoleOption;
+import com.okta.tools.saml.SamlAssertion;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.sts.model.AssumeRoleWithSamlRequest;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import static java.util.Collections.singletonList;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -41,4 +45,24 @@ class RoleHelperTest {
                 ))
         ), availableRoles);
     }
+
+    @Test
+    void chooseAwsRolesToAssume() throws Exception {
+        OktaAwsCliEnvironment environment = new OktaAwsCliEnvironment();
+        RoleHelper roleHelper = new RoleHelper(environment);
+        SamlAssertion samlAssertion = SamlAssertion.parse(EXAMPLE_SAML_RESPONSE);
+
+        assertEquals(singletonList("arn:aws:iam::123456789012:role/EC2Admins"), chooseRoles(roleHelper, samlAssertion));
+        assertEquals(singletonList("arn:aws:iam::123456789012:role/EC2Admins"), chooseRoles(roleHelper, samlAssertion, "EC2*"));
+        assertEquals(singletonList("arn:aws:iam::123456789012:role/EC2Admins"), chooseRoles(roleHelper, samlAssertion, "Dev*", "/EC2(Admins|Users)/"));
+        assertEquals(singletonList("arn:aws:iam::123456789012:role/EC2Admins"), chooseRoles(roleHelper, samlAssertion, "1234567890??"));
+        assertEquals(Collections.emptyList(), chooseRoles(roleHelper, samlAssertion, "EC2"));
+        assertEquals(Collections.emptyList(), chooseRoles(roleHelper, samlAssertion, "/Admins/"));
+    }
+
+    private static List<String> chooseRoles(RoleHelper roleHelper, SamlAssertion samlAssertion, String... patterns) throws Exception {
+        return roleHelper.chooseAwsRolesToAssume(samlAssertion, List.of(patterns)).stream()
+                .map(AssumeRoleWithSamlRequest::roleArn)
+                .collect(Collectors.toList());
+    }
 }
@@ -0,0 +1,287 @@
+/*
+ * Copyright 2019 Okta
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.okta.tools;
+
+import com.okta.tools.standin.OktaStandInServer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Runs the CLI entry points from the shaded JAR in fresh JVMs against an {@link OktaStandInServer}, either to
+ * record the classes they load for an AppCDS archive, to compare their cold start with and without one, or to check
+ * what withokta loads when the session is still active.</p>
+ * <p>Options are given as {@code name=value} arguments: {@code mode} ({@code train}, {@code benchmark} or
+ * {@code classes}), {@code jar}, {@code classList} and, for benchmarks, {@code runs}:</p>
+ * <pre>
+ * mvn -Pcds package
+ * mvn exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.okta.tools.StartupDriver \
+ *     -Dexec.args="mode=benchmark jar=target/okta-aws-cli-3.0.1-SNAPSHOT.jar classList=target/okta-aws-cli.classlist"
+ * </pre>
+ * <p>Training writes one class name per line, without the JDK-specific annotations of
+ * {@code -XX:DumpLoadedClassList}, so that the list can be turned into an archive by whichever JDK runs the CLI.
+ * The benchmark dumps such an archive itself, then times the two commands run most often: a credential_process
+ * cache hit and withokta with an active profile.</p>
+ * <p>The classes mode logs in once, then runs withokta again and fails if that run reached the stand-in, loaded any
+ * of the login path's libraries, or loaded more than {@code maxClasses} classes from the JAR (default
+ * {@value #MAX_HIT_CLASSES}).</p>
+ */
+final class StartupDriver {
+    private static final String WITH_OKTA = "com.okta.tools.WithOkta";
+    private static final String CREDENTIAL_PROCESS = "com.okta.tools.CredentialProcess";
+    private static final String LIST_ROLES = "com.okta.tools.ListRoles";
+
+    // The login paths first, then the cache and active session hits, then logout
+    private static final String[][] TRAINING_RUNS = {
+            {CREDENTIAL_PROCESS},
+            {WITH_OKTA, "true"},
+            {CREDENTIAL_PROCESS},
+            {WITH_OKTA, "true"},
+            {LIST_ROLES},
+            {WITH_OKTA, "logout"},
+    };
+
+    // Measured at 20, leaving room for small changes but not for the INI parser or a login collaborator
+    private static final int MAX_HIT_CLASSES = 30;
+
+    // Only needed once the session has ended; the AWS SDK's region classes are part of the environment
+    private static final String[] LOGIN_PACKAGES = {
+            "org.apache.http.",
+            "org.json.",
+            "org.jsoup.",
+            "org.opensaml.",
+            "software.amazon.awssdk.services.",
+            "software.amazon.awssdk.core.",
+            "software.amazon.awssdk.http.",
+            "com.okta.tools.authentication.",
+            "com.okta.tools.saml.",
+    };
+
+    private StartupDriver() {}
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> arguments = parseArguments(args);
+        Path jar = Paths.get(require(arguments, "jar")).toAbsolutePath();
+        String mode = arguments.getOrDefault("mode", "train");
+
+        OktaStandInServer.Options options = new OktaStandInServer.Options();
+        options.roles = 3;
+        try (OktaStandInServer standIn = OktaStandInServer.start(options)) {
+            Path home = Files.createTempDirectory("okta-startup-driver");
+            writeConfig(standIn, options, home);
+            if ("train".equals(mode)) {
+                train(standIn, home, jar, getClassList(arguments));
+            } else if ("benchmark".equals(mode)) {
+                benchmark(standIn, home, jar, getClassList(arguments), getInt(arguments, "runs", 20));
+            } else if ("classes".equals(mode)) {
+                checkActiveSessionClasses(standIn, home, jar, getInt(arguments, "maxClasses", MAX_HIT_CLASSES));
+            } else {
+                throw new IllegalArgumentException("Unknown mode: " + mode);
+            }
+        }
+        // The stand-in's HTTP server keeps a non-daemon thread alive
+        System.exit(0);
+    }
+
+    private static void train(OktaStandInServer standIn, Path home, Path jar, Path classList) throws IOException, InterruptedException {
+        Set<String> classNames = new LinkedHashSet<>();
+        for (int i = 0; i < TRAINING_RUNS.length; i++) {
+            Path runClassList = home.resolve("run-" + i + ".classlist");
+            run(standIn, home, jar, Collections.singletonList("-XX:DumpLoadedClassList=" + runClassList), TRAINING_RUNS[i]);
+            for (String line : Files.readAllLines(runClassList, StandardCharsets.UTF_8)) {
+                // Skips comments and the lambda and invoker records newer JDKs add, keeping plain class names
+                if (line.isEmpty() || line.startsWith("#") || line.startsWith("@")) continue;
+                int end = line.indexOf(' ');
+                classNames.add(end < 0 ? line : line.substring(0, end));
+            }
+        }
+        Files.createDirectories(classList.getParent());
+        Files.write(classList, classNames, StandardCharsets.UTF_8);
+        System.out.println("Wrote " + classNames.size() + " classes loaded by " + TRAINING_RUNS.length + " runs to " + classList);
+    }
+
+    private static void benchmark(OktaStandInServer standIn, Path home, Path jar, Path classList, int runs) throws IOException, InterruptedException {
+        if (!Files.exists(classList)) {
+            train(standIn, home, jar, classList);
+        }
+        Path archive = home.resolve("okta-aws-cli.jsa");
+        Process dump = new ProcessBuilder(java(), "-Xshare:dump", "-XX:SharedClassListFile=" + classList,
+                "-XX:SharedArchiveFile=" + archive, "-classpath", jar.toString())
+                .redirectErrorStream(true)
+                .redirectOutput(home.resolve("dump.log").toFile())
+                .start();
+        if (dump.waitFor() != 0 || !Files.exists(archive)) {
+            throw new IllegalStateException("Archive dump failed, see " + home.resolve("dump.log"));
+        }
+        List<String> withArchive = Arrays.asList("-XX:SharedArchiveFile=" + archive, "-Xshare:auto");
+
+        // Log in once so that every timed run is a hit
+        run(standIn, home, jar, Collections.emptyList(), CREDENTIAL_PROCESS);
+        run(standIn, home, jar, Collections.emptyList(), WITH_OKTA, "true");
+
+        String[][] commands = {{CREDENTIAL_PROCESS}, {WITH_OKTA, "true"}};
+        for (String[] command : commands) {
+            long[] baseline = new long[runs];
+            long[] appCds = new long[runs];
+            // Alternated so that drift in machine load affects both alike
+            for (int i = 0; i < runs; i++) {
+                baseline[i] = run(standIn, home, jar, Collections.emptyList(), command);
+                appCds[i] = run(standIn, home, jar, withArchive, command);
+            }
+            String name = String.join(" ", command);
+            System.out.println(name + " without AppCDS: " + summarize(baseline));
+            System.out.println(name + " with AppCDS:    " + summarize(appCds));
+        }
+        System.out.println("Stand-in requests: " + standIn.getRequestCounts());
+    }
+
+    private static void checkActiveSessionClasses(OktaStandInServer standIn, Path home, Path jar, int maxClasses)
+            throws IOException, InterruptedException {
+        run(standIn, home, jar, Collections.emptyList(), WITH_OKTA, "true");
+        Map<String, Long> requestsBefore = standIn.getRequestCounts();
+
+        Path classLog = home.resolve("active-session.classes");
+        run(standIn, home, jar, Collections.singletonList("-Xlog:class+load=info:file=" + classLog), WITH_OKTA, "true");
+
+        List<String> jarClasses = new ArrayList<>();
+        List<String> loginClasses = new ArrayList<>();
+        int allClasses = 0;
+        for (String line : Files.readAllLines(classLog, StandardCharsets.UTF_8)) {
+            // [0.012s][info][class,load] com.okta.tools.WithOkta source: file:/.../okta-aws-cli.jar
+            int start = line.indexOf("] ");
+            int end = line.indexOf(" source: ");
+            if (start < 0 || end < start) continue;
+            allClasses++;
+            String className = line.substring(start + 2, end);
+            if (line.startsWith("file:", end + " source: ".length())) {
+                jarClasses.add(className);
+            }
+            for (String loginPackage : LOGIN_PACKAGES) {
+                if (className.startsWith(loginPackage)) loginClasses.add(className);
+            }
+        }
+        System.out.println("withokta with an active session loaded " + allClasses + " classes, " +
+                jarClasses.size() + " of them from the JAR");
+
+        if (!standIn.getRequestCounts().equals(requestsBefore)) {
+            throw new IllegalStateException("withokta with an active session sent requests: " + requestsBefore +
+                    " before, " + standIn.getRequestCounts() + " after");
+        }
+        if (!loginClasses.isEmpty()) {
+            throw new IllegalStateException("withokta with an active session loaded login classes: " + loginClasses);
+        }
+        if (jarClasses.size() > maxClasses) {
+            throw new IllegalStateException("withokta with an active session loaded " + jarClasses.size() +
+                    " classes from the JAR, more than " + maxClasses + ": " + jarClasses);
+        }
+    }
+
+    private static long run(OktaStandInServer standIn, Path home, Path jar, List<String> jvmOptions, String... mainAndArgs)
+            throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(java());
+        command.addAll(jvmOptions);
+        command.add("-Duser.home=" + home);
+        command.add("-Djavax.net.ssl.trustStore=" + standIn.getTrustStore());
+        command.add("-Djavax.net.ssl.trustStoreType=PKCS12");
+        command.add("-Djavax.net.ssl.trustStorePassword=" + OktaStandInServer.TRUST_STORE_PASSWORD);
+        command.add("-classpath");
+        command.add(jar.toString());
+        command.addAll(Arrays.asList(mainAndArgs));
+        ProcessBuilder processBuilder = new ProcessBuilder(command)
+                .directory(home.toFile())
+                .redirectInput(ProcessBuilder.Redirect.PIPE)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(home.resolve("last-run.log").toFile());
+        // Settings from the caller's environment would take precedence over the stand-in's config.properties
+        processBuilder.environment().keySet().removeIf(name -> name.startsWith("OKTA_") || name.startsWith("AWS_"));
+
+        long start = System.nanoTime();
+        Process process = processBuilder.start();
+        process.getOutputStream().close();
+        if (!process.waitFor(2, TimeUnit.MINUTES)) {
+            process.destroyForcibly();
+            throw new IllegalStateException(String.join(" ", mainAndArgs) + " did not finish, see " + home.resolve("last-run.log"));
+        }
+        long elapsed = System.nanoTime() - start;
+        if (process.exitValue() != 0) {
+            throw new IllegalStateException(String.join(" ", mainAndArgs) + " exited with " + process.exitValue() +
+                    ", see " + home.resolve("last-run.log"));
+        }
+        return elapsed;
+    }
+
+    private static void writeConfig(OktaStandInServer standIn, OktaStandInServer.Options options, Path home) throws IOException {
+        Path oktaDirectory = Files.createDirectories(home.resolve(".okta"));
+        List<String> config = Arrays.asList(
+                "OKTA_ORG=" + standIn.getOrg(),
+                "OKTA_AWS_APP_URL=" + standIn.getAppUrl(),
+                "OKTA_STS_ENDPOINT=" + standIn.getStsEndpoint(),
+                "OKTA_USERNAME=" + options.username,
+                "OKTA_PASSWORD_CMD=echo " + options.password,
+                "OKTA_AWS_ROLE_TO_ASSUME=" + OktaStandInServer.getRoleArn(0),
+                "OKTA_PROFILE=startup");
+        Files.write(oktaDirectory.resolve("config.properties"), config, StandardCharsets.UTF_8);
+    }
+
+    private static String java() {
+        return Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+    }
+
+    private static String summarize(long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        double mean = Arrays.stream(sorted).average().orElse(Double.NaN);
+        return String.format("p50=%.1f ms p90=%.1f ms mean=%.1f ms",
+                sorted[(sorted.length - 1) / 2] / 1_000_000.0,
+                sorted[(int) Math.ceil(0.9 * sorted.length) - 1] / 1_000_000.0,
+                mean / 1_000_000.0);
+    }
+
+    private static Map<String, String> parseArguments(String[] args) {
+        Map<String, String> arguments = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Expected name=value but got " + arg);
+            }
+            arguments.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        return arguments;
+    }
+
+    private static Path getClassList(Map<String, String> arguments) {
+        return Paths.get(require(arguments, "classList")).toAbsolutePath();
+    }
+
+    private static String require(Map<String, String> arguments, String name) {
+        String value = arguments.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing argument " + name + "=...");
+        }
+        return value;
+    }
+
+    private static int getInt(Map<String, String> arguments, String name, int defaultValue) {
+        String value = arguments.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+}
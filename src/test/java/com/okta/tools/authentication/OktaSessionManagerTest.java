@@ -0,0 +1,172 @@
+/*
+ * Copyright 2019 Okta
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.okta.tools.authentication;
+
+import com.okta.tools.OktaAwsCliEnvironment;
+import com.okta.tools.helpers.CookieHelper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class OktaSessionManagerTest {
+
+    @TempDir
+    Path directory;
+
+    private OktaAwsCliEnvironment environment;
+    private OktaSessionClient oktaSessionClient;
+
+    @BeforeEach
+    void setUp() {
+        environment = new OktaAwsCliEnvironment(false, "acmecorp.okta.com", null, null, directory.toString(), null, null, null, 0, null, null, false, null);
+        oktaSessionClient = mock(OktaSessionClient.class);
+    }
+
+    @Test
+    void noSessionCookieNeedsNoRequest() throws IOException {
+        writeCookies("DT=device");
+
+        assertFalse(newManager().hasActiveSession());
+
+        verifyZeroInteractions(oktaSessionClient);
+    }
+
+    @Test
+    void sessionExpiryIsRememberedAcrossProcesses() throws IOException {
+        writeCookies("DT=device", "sid=session");
+        Instant expiresAt = Instant.now().plus(2, ChronoUnit.HOURS).truncatedTo(ChronoUnit.SECONDS);
+        when(oktaSessionClient.refreshSession(any())).thenReturn(Optional.of(expiresAt));
+
+        OktaSessionManager first = newManager();
+        assertTrue(first.hasActiveSession());
+        assertTrue(first.hasActiveSession());
+        assertEquals(Optional.of(expiresAt), first.getSessionExpiry());
+
+        OktaSessionManager second = newManager();
+        assertTrue(second.hasActiveSession());
+        assertEquals(Optional.of(expiresAt), second.getSessionExpiry());
+
+        verify(oktaSessionClient, times(1)).refreshSession(any());
+        verify(oktaSessionClient, never()).getSession(any());
+    }
+
+    @Test
+    void endedSessionIsRememberedAcrossProcesses() throws IOException {
+        writeCookies("DT=device", "sid=session; Path=/; Secure; HttpOnly");
+        when(oktaSessionClient.refreshSession(any())).thenReturn(Optional.empty());
+
+        assertFalse(newManager().hasActiveSession());
+        assertFalse(newManager().hasActiveSession());
+
+        verify(oktaSessionClient, times(1)).refreshSession(any());
+        assertTrue(new CookieHelper(environment).loadCookies().getCookies().stream()
+                .anyMatch(cookie -> cookie.getName().equals("DT")));
+        assertTrue(CookieHelper.hasSessionCookie(new CookieHelper(environment).loadCookies()));
+    }
+
+    @Test
+    void sessionIsOnlyCheckedWithoutKeepAlive() throws IOException {
+        writeCookies("sid=session");
+        environment.oktaSessionKeepAlive = false;
+        when(oktaSessionClient.getSession(any())).thenReturn(Optional.of(Instant.now().plus(1, ChronoUnit.HOURS)));
+
+        OktaSessionManager oktaSessionManager = newManager();
+        assertTrue(oktaSessionManager.hasActiveSession());
+        assertEquals(Optional.empty(), oktaSessionManager.extendSession());
+
+        verify(oktaSessionClient, never()).refreshSession(any());
+    }
+
+    @Test
+    void failedCheckLeavesTheDecisionToTheAppLaunch() throws IOException {
+        writeCookies("sid=session");
+        when(oktaSessionClient.refreshSession(any())).thenThrow(new IOException("Connection refused"));
+
+        assertTrue(newManager().hasActiveSession());
+    }
+
+    @Test
+    void failedKeepAliveIsOnlyLogged() throws IOException {
+        writeCookies("sid=session");
+        when(oktaSessionClient.refreshSession(any())).thenThrow(new IOException("Connection refused"));
+
+        assertEquals(Optional.empty(), newManager().extendSession());
+
+        assertTrue(CookieHelper.hasSessionCookie(new CookieHelper(environment).loadCookies()));
+    }
+
+    @Test
+    void passedExpiryAsksOktaAgainAndKeepsTheCookie() throws IOException {
+        writeCookies("sid=session");
+        CookieHelper cookieHelper = new CookieHelper(environment);
+        cookieHelper.storeSessionHint(cookieHelper.loadCookies(), Instant.now().minus(1, ChronoUnit.HOURS));
+        Instant extended = Instant.now().plus(2, ChronoUnit.HOURS).truncatedTo(ChronoUnit.SECONDS);
+        when(oktaSessionClient.refreshSession(any())).thenReturn(Optional.of(extended));
+
+        assertTrue(newManager().hasActiveSession());
+
+        verify(oktaSessionClient, times(1)).refreshSession(any());
+        assertTrue(CookieHelper.hasSessionCookie(cookieHelper.loadCookies()));
+        assertEquals(Optional.of(extended), newManager().getSessionExpiry());
+    }
+
+    @Test
+    void unclearAnswerKeepsTheCookieAndWhatIsKnown() throws IOException {
+        writeCookies("sid=session");
+        CookieHelper cookieHelper = new CookieHelper(environment);
+        when(oktaSessionClient.refreshSession(any())).thenThrow(new IllegalStateException("Failed : HTTP error code : 403"));
+
+        assertTrue(newManager().hasActiveSession());
+        assertTrue(newManager().hasActiveSession());
+
+        verify(oktaSessionClient, times(2)).refreshSession(any());
+        assertTrue(CookieHelper.hasSessionCookie(cookieHelper.loadCookies()));
+        assertEquals(Optional.empty(), cookieHelper.getSessionHint(cookieHelper.loadCookies()));
+        assertEquals(Optional.empty(), newManager().extendSession());
+    }
+
+    @Test
+    void newSessionCookieIsCheckedAgain() throws IOException {
+        writeCookies("sid=session");
+        when(oktaSessionClient.refreshSession(any())).thenReturn(Optional.empty());
+        assertFalse(newManager().hasActiveSession());
+
+        writeCookies("sid=new-session");
+        when(oktaSessionClient.refreshSession(any())).thenReturn(Optional.of(Instant.now().plus(2, ChronoUnit.HOURS)));
+
+        assertTrue(newManager().hasActiveSession());
+        verify(oktaSessionClient, times(2)).refreshSession(any());
+    }
+
+    private OktaSessionManager newManager() {
+        return new OktaSessionManager(environment, new CookieHelper(environment), oktaSessionClient);
+    }
+
+    private void writeCookies(String... lines) throws IOException {
+        Files.write(directory.resolve("cookies.properties"), List.of(lines));
+    }
+}
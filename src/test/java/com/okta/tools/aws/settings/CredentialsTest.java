@@ -128,4 +128,78 @@ class CredentialsTest {
 
         assertEquals(expected, given);
     }
+
+    /*
+     * Test patching a new credentials profile into an existing credentials file.
+     */
+    @Test
+    void patchProfileIntoExistingCredentialsFile() throws IOException {
+        final StringWriter credentialsWriter = new StringWriter();
+        final Credentials credentials = new Credentials(new StringReader(existingCredentials), true);
+
+        credentials.addOrUpdateProfile(roleName, accessKey, secretKey, awsRegion, sessionToken);
+        credentials.save(credentialsWriter);
+
+        assertEquals(existingCredentials + "\n\n" + manualRole + "\n", credentialsWriter.toString());
+    }
+
+    /*
+     * Test that patching a profile leaves every other line of the file as it was.
+     */
+    @Test
+    void patchExistingProfileKeepsRestOfFile() throws IOException {
+        final String before = "# Managed by several tools\n"
+                + "[default]\n"
+                + "aws_access_key_id=defaultaccesskey   ; keep me\n"
+                + "\n"
+                + "[" + roleName + "]\n"
+                + "; comment inside the profile\n"
+                + Credentials.ACCESS_KEY_ID + " = old\n"
+                + "output: json\n"
+                + Credentials.SESSION_TOKEN + " = old\n"
+                + "    continued old token\n"
+                + "\n"
+                + "# belongs to the next profile\n"
+                + "[other]\n"
+                + "region=eu-west-1";
+        final String after = "# Managed by several tools\n"
+                + "[default]\n"
+                + "aws_access_key_id=defaultaccesskey   ; keep me\n"
+                + "\n"
+                + "[" + roleName + "]\n"
+                + "; comment inside the profile\n"
+                + Credentials.ACCESS_KEY_ID + " = " + accessKey + "\n"
+                + "output: json\n"
+                + Credentials.SESSION_TOKEN + " = " + sessionToken + "\n"
+                + Credentials.SECRET_ACCESS_KEY + " = " + secretKey + "\n"
+                + Credentials.AWS_DEFAULT_REGION + " = " + awsRegion + "\n"
+                + "\n"
+                + "# belongs to the next profile\n"
+                + "[other]\n"
+                + "region=eu-west-1";
+        final StringWriter credentialsWriter = new StringWriter();
+        final Credentials credentials = new Credentials(new StringReader(before), true);
+
+        credentials.addOrUpdateProfile(roleName, accessKey, secretKey, awsRegion, sessionToken);
+        credentials.save(credentialsWriter);
+
+        assertEquals(after, credentialsWriter.toString());
+    }
+
+    /*
+     * Test removing credentials from a profile in patch mode.
+     */
+    @Test
+    void patchRemoveCredentialsFromProfile() throws IOException {
+        final StringWriter credentialsWriter = new StringWriter();
+        final Credentials credentials = new Credentials(new StringReader(manualRole + "\n\n" + existingCredentials), true);
+
+        credentials.removeCredentialsFromProfile(roleName);
+        credentials.save(credentialsWriter);
+
+        assertEquals("[" + roleName + "]\n"
+                + Credentials.AWS_DEFAULT_REGION + " = " + awsRegion + "\n"
+                + "\n"
+                + existingCredentials, credentialsWriter.toString());
+    }
 }
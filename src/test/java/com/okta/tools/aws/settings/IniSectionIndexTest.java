@@ -0,0 +1,91 @@
+/*
+ * Copyright 2019 Okta
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.okta.tools.aws.settings;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IniSectionIndexTest {
+
+    private static final String PROFILES = "[first]\n"
+            + "okta_roleArn = arn:aws:iam::123456789012:role/First\n"
+            + "\n"
+            + "[second] \n"
+            + "okta_roleArn = arn:aws:iam::123456789012:role/Second\n"
+            + "[third]\n"
+            + "okta_roleArn = arn:aws:iam::123456789012:role/Third";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsSectionsThroughIndex() throws IOException {
+        Path profiles = Files.write(directory.resolve("profiles"), PROFILES.getBytes());
+
+        assertEquals(Optional.of("[first]\nokta_roleArn = arn:aws:iam::123456789012:role/First\n\n"),
+                IniSectionIndex.readSection(profiles, "first"));
+        assertTrue(Files.isRegularFile(directory.resolve(".profiles.index")));
+        assertEquals(Optional.of("[second] \nokta_roleArn = arn:aws:iam::123456789012:role/Second\n"),
+                IniSectionIndex.readSection(profiles, "second"));
+        assertEquals(Optional.of("[third]\nokta_roleArn = arn:aws:iam::123456789012:role/Third"),
+                IniSectionIndex.readSection(profiles, "third"));
+        assertEquals(Optional.empty(), IniSectionIndex.readSection(profiles, "fourth"));
+        assertEquals(Optional.empty(), IniSectionIndex.readSection(directory.resolve("missing"), "first"));
+    }
+
+    @Test
+    void rebuildsIndexWhenFileChanges() throws IOException {
+        Path profiles = Files.write(directory.resolve("profiles"), PROFILES.getBytes());
+        FileTime lastModified = Files.getLastModifiedTime(profiles);
+        IniSectionIndex.readSection(profiles, "first");
+
+        // Same size and modification time, different layout: only the file's identity tells the index is stale
+        Files.write(directory.resolve("replacement"), PROFILES.replace("[first]", "[tsrif]").getBytes());
+        Files.move(directory.resolve("replacement"), profiles, StandardCopyOption.REPLACE_EXISTING);
+        Files.setLastModifiedTime(profiles, lastModified);
+        assertEquals(Optional.empty(), IniSectionIndex.readSection(profiles, "first"));
+
+        Files.write(profiles, (PROFILES + "\n[fourth]\nokta_roleArn = x\n").getBytes());
+        Files.setLastModifiedTime(profiles, FileTime.from(Instant.now().plusSeconds(10)));
+        assertEquals(Optional.of("[fourth]\nokta_roleArn = x\n"), IniSectionIndex.readSection(profiles, "fourth"));
+    }
+
+    @Test
+    void readsAllOccurrencesOfDuplicateSections() throws IOException {
+        Path profiles = Files.write(directory.resolve("profiles"), "[a]\nx = 1\n[b]\ny = 2\n[a]\nz = 3\n".getBytes());
+
+        assertEquals(Optional.of("[a]\nx = 1\n[a]\nz = 3\n"), IniSectionIndex.readSection(profiles, "a"));
+    }
+
+    @Test
+    void rebuildsCorruptIndex() throws IOException {
+        Path profiles = Files.write(directory.resolve("profiles"), PROFILES.getBytes());
+        Files.write(directory.resolve(".profiles.index"), "not an index".getBytes());
+
+        assertEquals(Optional.of("[third]\nokta_roleArn = arn:aws:iam::123456789012:role/Third"),
+                IniSectionIndex.readSection(profiles, "third"));
+    }
+}
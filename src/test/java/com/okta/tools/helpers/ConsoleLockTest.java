@@ -0,0 +1,91 @@
+/*
+ * Copyright 2019 Okta
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.okta.tools.helpers;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConsoleLockTest {
+
+    private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+    private PrintStream originalErr;
+    private ExecutorService otherThreads;
+
+    @BeforeEach
+    void setUp() {
+        originalErr = System.err;
+        System.setErr(new PrintStream(err, true));
+        otherThreads = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    void tearDown() {
+        otherThreads.shutdownNow();
+        System.setErr(originalErr);
+        ConsoleLock.setAnnounceOrg(false);
+    }
+
+    @Test
+    void holdsAreReentrant() throws Exception {
+        Future<?> otherThread;
+        try (ConsoleLock.Hold outer = ConsoleLock.acquire("acmecorp.okta.com")) {
+            try (ConsoleLock.Hold inner = ConsoleLock.acquire("acmecorp.okta.com")) {
+                otherThread = otherThreads.submit(() -> ConsoleLock.acquire("partner.okta.com").close());
+            }
+            // Closing the inner hold keeps the console held
+            assertThrows(TimeoutException.class, () -> otherThread.get(300, TimeUnit.MILLISECONDS));
+            outer.close();
+            outer.close();
+        }
+        otherThread.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void orgIsAnnouncedWhenItChanges() throws Exception {
+        ConsoleLock.setAnnounceOrg(true);
+
+        ConsoleLock.acquire("acmecorp.okta.com").close();
+        ConsoleLock.acquire("acmecorp.okta.com").close();
+        try (ConsoleLock.Hold hold = ConsoleLock.acquire("partner.okta.com")) {
+            // Nested holds belong to the same login
+            ConsoleLock.acquire("acmecorp.okta.com").close();
+        }
+        otherThreads.submit(() -> ConsoleLock.acquire("acmecorp.okta.com").close()).get(5, TimeUnit.SECONDS);
+
+        assertEquals(String.format("%nOkta org: acmecorp.okta.com%n%nOkta org: partner.okta.com%n%nOkta org: acmecorp.okta.com%n"),
+                err.toString(StandardCharsets.UTF_8.name()));
+    }
+
+    @Test
+    void orgIsOnlyAnnouncedWhenAsked() throws Exception {
+        ConsoleLock.acquire("acmecorp.okta.com").close();
+        ConsoleLock.acquire("partner.okta.com").close();
+
+        assertEquals("", err.toString(StandardCharsets.UTF_8.name()));
+    }
+}
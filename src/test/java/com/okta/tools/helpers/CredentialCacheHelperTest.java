@@ -0,0 +1,187 @@
+/*
+ * Copyright 2019 Okta
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.okta.tools.helpers;
+
+import com.okta.tools.OktaAwsCliEnvironment;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import software.amazon.awssdk.services.sts.model.Credentials;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CredentialCacheHelperTest {
+
+    private static final String ORG = "acmecorp.okta.com";
+    private static final String APP_URL = "https://acmecorp.okta.com/home/amazon_aws/0oa5zrwfs815KJmVF0h7/137";
+    private static final String ROLE_ARN = "arn:aws:iam::123456789012:role/Developer";
+
+    @TempDir
+    Path directory;
+
+    private final Instant now = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+
+    @BeforeEach
+    void setUp() {
+        CredentialCacheHelper.clearMemoryCache();
+    }
+
+    @AfterEach
+    void tearDown() {
+        CredentialCacheHelper.clearMemoryCache();
+    }
+
+    @Test
+    void storedCredentialsAreServed() {
+        Credentials credentials = credentials(now.plus(1, ChronoUnit.HOURS));
+        newHelper().put(ROLE_ARN, "dev", credentials);
+
+        Optional<CredentialCacheHelper.CachedCredentials> fromMemory = newHelper().get(ROLE_ARN, now);
+        CredentialCacheHelper.clearMemoryCache();
+        Optional<CredentialCacheHelper.CachedCredentials> fromDisk = newHelper().get(ROLE_ARN, now);
+
+        for (Optional<CredentialCacheHelper.CachedCredentials> cached : List.of(fromMemory, fromDisk)) {
+            assertTrue(cached.isPresent());
+            assertEquals("dev", cached.get().profileName);
+            assertEquals(credentials, cached.get().credentials);
+        }
+    }
+
+    @Test
+    void credentialsAboutToExpireAreNotServed() {
+        newHelper().put(ROLE_ARN, "dev", credentials(now.plus(1, ChronoUnit.HOURS)));
+        CredentialCacheHelper helper = newHelper();
+
+        assertTrue(helper.get(ROLE_ARN, now.plus(44, ChronoUnit.MINUTES)).isPresent());
+        assertFalse(helper.get(ROLE_ARN, now.plus(45, ChronoUnit.MINUTES)).isPresent());
+    }
+
+    @Test
+    void shortestStsDurationIsNeverServed() {
+        CredentialCacheHelper helper = newHelper(ORG, APP_URL, 900);
+        helper.put(ROLE_ARN, "dev", credentials(now.plus(Duration.ofSeconds(900))));
+
+        assertFalse(helper.get(ROLE_ARN, now).isPresent());
+    }
+
+    @Test
+    void entriesAreKeptPerOrgAppRoleAndDuration() {
+        newHelper().put(ROLE_ARN, "dev", credentials(now.plus(1, ChronoUnit.HOURS)));
+
+        assertTrue(newHelper().get(ROLE_ARN, now).isPresent());
+        assertFalse(newHelper("other.okta.com", APP_URL, 3600).get(ROLE_ARN, now).isPresent());
+        assertFalse(newHelper(ORG, "https://acmecorp.okta.com/home/amazon_aws/0oaother/272", 3600).get(ROLE_ARN, now).isPresent());
+        assertFalse(newHelper(ORG, APP_URL, 7200).get(ROLE_ARN, now).isPresent());
+        assertFalse(newHelper().get("arn:aws:iam::123456789012:role/Admin", now).isPresent());
+    }
+
+    @Test
+    void tamperedEntryIsAMiss() throws IOException {
+        newHelper().put(ROLE_ARN, "dev", credentials(now.plus(1, ChronoUnit.HOURS)));
+        CredentialCacheHelper.clearMemoryCache();
+        Path entry = getEntries().get(0);
+        byte[] encrypted = Files.readAllBytes(entry);
+        encrypted[encrypted.length - 1] ^= 1;
+        Files.write(entry, encrypted);
+
+        assertFalse(newHelper().get(ROLE_ARN, now).isPresent());
+    }
+
+    @Test
+    void entryUnderAnotherKeyIsAMiss() throws IOException {
+        newHelper().put(ROLE_ARN, "dev", credentials(now.plus(1, ChronoUnit.HOURS)));
+        CredentialCacheHelper.clearMemoryCache();
+        Files.delete(directory.resolve("keys").resolve("credential-cache.key"));
+
+        assertFalse(newHelper().get(ROLE_ARN, now).isPresent());
+    }
+
+    @Test
+    void keyIsKeptApartFromTheEntries() throws IOException {
+        newHelper().put(ROLE_ARN, "dev", credentials(now.plus(1, ChronoUnit.HOURS)));
+
+        assertEquals(1, getEntries().size());
+        assertEquals(32, Files.size(directory.resolve("keys").resolve("credential-cache.key")));
+    }
+
+    @Test
+    void concurrentProcessesAgreeOnOneKey() throws Exception {
+        int writers = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(writers);
+        try {
+            List<Callable<Void>> puts = new ArrayList<>();
+            for (int i = 0; i < writers; i++) {
+                String roleArn = ROLE_ARN + i;
+                puts.add(() -> {
+                    newHelper().put(roleArn, "dev", credentials(now.plus(1, ChronoUnit.HOURS)));
+                    return null;
+                });
+            }
+            for (Future<Void> put : executor.invokeAll(puts)) {
+                put.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        CredentialCacheHelper.clearMemoryCache();
+
+        for (int i = 0; i < writers; i++) {
+            assertTrue(newHelper().get(ROLE_ARN + i, now).isPresent(), "Role " + i);
+        }
+    }
+
+    private CredentialCacheHelper newHelper() {
+        return newHelper(ORG, APP_URL, 3600);
+    }
+
+    private CredentialCacheHelper newHelper(String oktaOrg, String oktaAwsAppUrl, int stsDuration) {
+        OktaAwsCliEnvironment environment = new OktaAwsCliEnvironment(false, oktaOrg, null, null, null, null,
+                oktaAwsAppUrl, null, stsDuration, null, null, false, null);
+        return new CredentialCacheHelper(environment, directory);
+    }
+
+    private List<Path> getEntries() throws IOException {
+        try (Stream<Path> entries = Files.list(directory.resolve("credential-cache"))) {
+            return entries.collect(Collectors.toList());
+        }
+    }
+
+    private static Credentials credentials(Instant expiration) {
+        return Credentials.builder()
+                .accessKeyId("ASIAEXAMPLE")
+                .secretAccessKey("secret")
+                .sessionToken("token")
+                .expiration(expiration)
+                .build();
+    }
+}
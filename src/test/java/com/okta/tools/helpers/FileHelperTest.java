@@ -0,0 +1,118 @@
+/*
+ * Copyright 2019 Okta
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.okta.tools.helpers;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class FileHelperTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void usingPathReplacesFileWithoutLeavingTemporaryFiles() throws IOException {
+        Path file = directory.resolve("credentials");
+        Files.write(file, List.of("[old]"));
+
+        FileHelper.usingPath(file, reader -> new BufferedReader(reader).readLine(),
+                (line, writer) -> writer.write(line.replace("old", "new") + "\n"));
+
+        assertEquals(List.of("[new]"), Files.readAllLines(file));
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(List.of(".credentials.lock", "credentials"),
+                    files.map(path -> path.getFileName().toString()).sorted().collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    void concurrentUpdatesAreNotLost() throws Exception {
+        Path file = directory.resolve("profiles");
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                String profile = "profile" + i;
+                futures.add(executor.submit(() -> {
+                    FileHelper.usingPath(file, reader -> new BufferedReader(reader).lines().collect(Collectors.toList()),
+                            (lines, writer) -> {
+                                for (String line : lines) writer.write(line + "\n");
+                                writer.write(profile + "\n");
+                            });
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) future.get();
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(50, Files.readAllLines(file).stream().distinct().count());
+    }
+
+    @Test
+    void usingPathRetriesWhenFileChangesAfterRead() throws IOException {
+        Path file = directory.resolve("credentials");
+        Files.write(file, List.of("[ours]"));
+        AtomicBoolean changed = new AtomicBoolean();
+
+        FileHelper.usingPath(file, reader -> {
+            List<String> lines = new BufferedReader(reader).lines().collect(Collectors.toList());
+            if (changed.compareAndSet(false, true)) {
+                // Another program, which doesn't take the lock, writes its profile meanwhile
+                Files.write(file, List.of("[ours]", "[theirs]"));
+            }
+            return lines;
+        }, (lines, writer) -> {
+            for (String line : lines) writer.write(line + "\n");
+            writer.write("[added]\n");
+        });
+
+        assertEquals(List.of("[ours]", "[theirs]", "[added]"), Files.readAllLines(file));
+    }
+
+    @Test
+    void writingPathKeepsPermissionsAndSymbolicLinks() throws IOException {
+        assumeTrue(Files.getFileStore(directory).supportsFileAttributeView("posix"));
+        Path actual = Files.createDirectory(directory.resolve("dotfiles")).resolve("credentials");
+        Files.write(actual, List.of("[old]"));
+        Files.setPosixFilePermissions(actual, PosixFilePermissions.fromString("rw-------"));
+        Path link = Files.createSymbolicLink(directory.resolve("credentials"), actual);
+
+        FileHelper.writingPath(link, writer -> writer.write("[new]\n"));
+
+        assertTrue(Files.isSymbolicLink(link));
+        assertEquals(List.of("[new]"), Files.readAllLines(actual));
+        assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(actual)));
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2019 Okta
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.okta.tools.helpers;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileTransactionTest {
+
+    @TempDir
+    Path directory;
+
+    private Path credentials;
+    private Path profiles;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        credentials = Files.write(directory.resolve("credentials"), List.of("[old]"));
+        profiles = Files.write(directory.resolve("profiles"), List.of("[old]"));
+    }
+
+    @Test
+    void updatesAreWrittenOnCommit() throws IOException {
+        try (FileTransaction transaction = FileTransaction.begin()) {
+            append(credentials, "[first]");
+            append(credentials, "[second]");
+            append(profiles, "[first]");
+
+            assertEquals(List.of("[old]"), Files.readAllLines(credentials));
+            assertEquals("[old]\n[first]\n[second]\n", FileHelper.readingPath(credentials, FileTransactionTest::read));
+
+            transaction.commit();
+        }
+
+        assertEquals(List.of("[old]", "[first]", "[second]"), Files.readAllLines(credentials));
+        assertEquals(List.of("[old]", "[first]"), Files.readAllLines(profiles));
+        assertNull(FileTransaction.current());
+    }
+
+    @Test
+    void updatesAreDiscardedWithoutCommit() throws IOException {
+        try (FileTransaction transaction = FileTransaction.begin()) {
+            append(credentials, "[first]");
+            FileHelper.writingPath(profiles, writer -> writer.write("[replaced]\n"));
+        }
+
+        assertEquals(List.of("[old]"), Files.readAllLines(credentials));
+        assertEquals(List.of("[old]"), Files.readAllLines(profiles));
+        assertNull(FileTransaction.current());
+    }
+
+    @Test
+    void commitReplaysUpdatesOnFilesChangedByOthers() throws IOException {
+        try (FileTransaction transaction = FileTransaction.begin()) {
+            append(credentials, "[ours]");
+            Files.write(credentials, List.of("[old]", "[theirs]"));
+
+            transaction.commit();
+        }
+
+        assertEquals(List.of("[old]", "[theirs]", "[ours]"), Files.readAllLines(credentials));
+    }
+
+    @Test
+    void failedCommitLeavesAllFilesUnchanged() throws IOException {
+        AtomicInteger calls = new AtomicInteger();
+        try (FileTransaction transaction = FileTransaction.begin()) {
+            append(credentials, "[first]");
+            FileHelper.usingPath(profiles, FileTransactionTest::read, (content, writer) -> {
+                if (calls.incrementAndGet() > 1) throw new IOException("Disk full");
+                writer.write(content + "[first]\n");
+            });
+            Files.write(profiles, List.of("[old]", "[theirs]"));
+
+            assertThrows(IOException.class, transaction::commit);
+        }
+
+        assertEquals(List.of("[old]"), Files.readAllLines(credentials));
+        assertEquals(List.of("[old]", "[theirs]"), Files.readAllLines(profiles));
+        try (Stream<Path> files = Files.list(directory)) {
+            assertTrue(files.noneMatch(path -> path.toString().endsWith(".tmp")));
+        }
+    }
+
+    private static void append(Path path, String line) throws IOException {
+        FileHelper.usingPath(path, FileTransactionTest::read, (content, writer) -> writer.write(content + line + "\n"));
+    }
+
+    private static String read(Reader reader) {
+        return new BufferedReader(reader).lines().map(line -> line + "\n").collect(Collectors.joining());
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2019 Okta
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.okta.tools.helpers;
+
+import com.okta.tools.OktaAwsCliEnvironment;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoginLockHelperTest {
+
+    private static final String ROLE_ARN = "arn:aws:iam::123456789012:role/Developer";
+
+    @TempDir
+    Path directory;
+
+    private ExecutorService otherThreads;
+
+    @BeforeEach
+    void setUp() {
+        otherThreads = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    void tearDown() {
+        otherThreads.shutdownNow();
+    }
+
+    @Test
+    void sameProfileAndRoleWaitWhileOthersDoNot() throws Exception {
+        LoginLockHelper helper = newHelper(120);
+
+        Future<Boolean> sameKey;
+        try (LoginLockHelper.LoginLock lock = helper.acquire("dev", ROLE_ARN)) {
+            assertNotSame(LoginLockHelper.LoginLock.NONE, lock);
+            sameKey = otherThreads.submit(() -> acquireAndRelease(helper, "dev", ROLE_ARN));
+            Future<Boolean> otherProfile = otherThreads.submit(() -> acquireAndRelease(helper, "prod", ROLE_ARN));
+            Future<Boolean> otherRole = otherThreads.submit(() -> acquireAndRelease(helper, "dev", ROLE_ARN + "Admin"));
+
+            assertTrue(otherProfile.get(5, TimeUnit.SECONDS));
+            assertTrue(otherRole.get(5, TimeUnit.SECONDS));
+            assertThrows(TimeoutException.class, () -> sameKey.get(300, TimeUnit.MILLISECONDS));
+        }
+        assertTrue(sameKey.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void sameThreadCanAcquireAgain() throws Exception {
+        LoginLockHelper helper = newHelper(120);
+
+        try (LoginLockHelper.LoginLock outer = helper.acquire("dev", ROLE_ARN)) {
+            try (LoginLockHelper.LoginLock inner = helper.acquire("dev", ROLE_ARN)) {
+                assertNotSame(LoginLockHelper.LoginLock.NONE, outer);
+                assertNotSame(LoginLockHelper.LoginLock.NONE, inner);
+            }
+            // Releasing the inner lock keeps the outer one held
+            assertThrows(TimeoutException.class, () -> otherThreads.submit(() -> acquireAndRelease(helper, "dev", ROLE_ARN))
+                    .get(300, TimeUnit.MILLISECONDS));
+        }
+        assertTrue(otherThreads.submit(() -> acquireAndRelease(helper, "dev", ROLE_ARN)).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void waitingEndsAtTheTimeout() throws Exception {
+        LoginLockHelper helper = newHelper(1);
+
+        try (LoginLockHelper.LoginLock lock = helper.acquire("dev", ROLE_ARN)) {
+            long start = System.nanoTime();
+            Future<Boolean> waiting = otherThreads.submit(() -> acquireAndRelease(helper, "dev", ROLE_ARN));
+
+            assertFalse(waiting.get(5, TimeUnit.SECONDS));
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(900));
+        }
+    }
+
+    @Test
+    void noTimeoutDisablesLocking() throws Exception {
+        try (LoginLockHelper.LoginLock lock = newHelper(0).acquire("dev", ROLE_ARN)) {
+            assertSame(LoginLockHelper.LoginLock.NONE, lock);
+        }
+        assertFalse(Files.exists(directory.resolve("locks")));
+    }
+
+    private LoginLockHelper newHelper(int loginLockTimeout) {
+        OktaAwsCliEnvironment environment = new OktaAwsCliEnvironment();
+        environment.loginLockTimeout = loginLockTimeout;
+        return new LoginLockHelper(environment, directory);
+    }
+
+    // Locks are released by the thread that took them
+    private static boolean acquireAndRelease(LoginLockHelper helper, String profileName, String roleArn) throws Exception {
+        try (LoginLockHelper.LoginLock lock = helper.acquire(profileName, roleArn)) {
+            return lock != LoginLockHelper.LoginLock.NONE;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2019 Okta
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.okta.tools.helpers;
+
+import com.okta.tools.OktaAwsCliEnvironment;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.regions.Region;
+
+import java.net.ConnectException;
+import java.net.URI;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StsClientHelperTest {
+
+    @Test
+    void clientsAreKeptPerEndpoint() {
+        OktaAwsCliEnvironment environment = environment(Region.EU_CENTRAL_1, null);
+        OktaAwsCliEnvironment sameRegion = environment(Region.EU_CENTRAL_1, null);
+        OktaAwsCliEnvironment otherRegion = environment(Region.EU_WEST_1, null);
+
+        assertSame(StsClientHelper.getClient(environment), StsClientHelper.getClient(sameRegion));
+        assertNotSame(StsClientHelper.getClient(environment), StsClientHelper.getClient(otherRegion));
+    }
+
+    @Test
+    void awsRegionIsUsedWithoutStsEndpoint() {
+        StsClientHelper.Endpoint endpoint = StsClientHelper.getEndpoint(environment(Region.US_WEST_2, " "));
+
+        assertEquals(Region.US_WEST_2, endpoint.region);
+        assertNull(endpoint.uri);
+    }
+
+    @Test
+    void stsEndpointRegionOverridesAwsRegion() {
+        StsClientHelper.Endpoint endpoint = StsClientHelper.getEndpoint(environment(Region.US_EAST_1, "eu-west-1"));
+
+        assertEquals(Region.EU_WEST_1, endpoint.region);
+        assertNull(endpoint.uri);
+    }
+
+    @Test
+    void stsEndpointUrlIsUsedAsIs() {
+        String vpcEndpoint = "https://vpce-0123456789abcdef0.sts.us-east-1.vpce.amazonaws.com";
+        StsClientHelper.Endpoint endpoint = StsClientHelper.getEndpoint(environment(Region.US_EAST_1, vpcEndpoint));
+
+        assertEquals(Region.US_EAST_1, endpoint.region);
+        assertEquals(URI.create(vpcEndpoint), endpoint.uri);
+    }
+
+    @Test
+    void probeRegionsStartWithAwsRegionAndEndWithGlobal() {
+        OktaAwsCliEnvironment environment = environment(Region.EU_WEST_1, "fastest");
+        environment.stsProbeRegions = "eu-central-1, ,eu-west-1,us-east-1";
+
+        assertEquals(List.of(Region.EU_WEST_1, Region.EU_CENTRAL_1, Region.US_EAST_1, Region.AWS_GLOBAL),
+                StsClientHelper.getProbeRegions(environment));
+    }
+
+    @Test
+    void probeUsesTheFirstEndpointToConnect() {
+        List<Region> candidates = List.of(Region.EU_WEST_1, Region.EU_CENTRAL_1, Region.AWS_GLOBAL);
+
+        StsClientHelper.Endpoint endpoint = StsClientHelper.probe(candidates, region -> {
+            if (!Region.EU_CENTRAL_1.equals(region)) {
+                throw new ConnectException("Connection refused");
+            }
+            return region;
+        });
+
+        assertEquals(Region.EU_CENTRAL_1, endpoint.region);
+    }
+
+    @Test
+    void probeFallsBackToTheFirstCandidateWhenNoneConnects() {
+        List<Region> candidates = List.of(Region.EU_WEST_1, Region.EU_CENTRAL_1, Region.AWS_GLOBAL);
+
+        StsClientHelper.Endpoint endpoint = StsClientHelper.probe(candidates, region -> {
+            throw new ConnectException("Connection refused");
+        });
+
+        assertEquals(Region.EU_WEST_1, endpoint.region);
+        assertNull(endpoint.uri);
+    }
+
+    private static OktaAwsCliEnvironment environment(Region awsRegion, String stsEndpoint) {
+        OktaAwsCliEnvironment environment = new OktaAwsCliEnvironment(false, null, null, null, null, null, null, null, 3600,
+                awsRegion, null, false, null);
+        environment.stsEndpoint = stsEndpoint;
+        return environment;
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2019 Okta
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.okta.tools.helpers;
+
+import com.sun.net.httpserver.HttpServer;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.auth.credentials.AnonymousCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.sts.StsClient;
+import software.amazon.awssdk.services.sts.model.AssumeRoleWithSamlResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimingsTest {
+    private static final String ASSUME_ROLE_RESPONSE =
+            "<AssumeRoleWithSAMLResponse xmlns=\"https://sts.amazonaws.com/doc/2011-06-15/\">" +
+            "<AssumeRoleWithSAMLResult><Credentials>" +
+            "<AccessKeyId>ASIAEXAMPLE</AccessKeyId>" +
+            "<SecretAccessKey>secret</SecretAccessKey>" +
+            "<SessionToken>session</SessionToken>" +
+            "<Expiration>2026-10-17T12:00:00Z</Expiration>" +
+            "</Credentials></AssumeRoleWithSAMLResult>" +
+            "<ResponseMetadata><RequestId>request</RequestId></ResponseMetadata>" +
+            "</AssumeRoleWithSAMLResponse>";
+
+    private final AtomicReference<String> requestBody = new AtomicReference<>();
+    private HttpServer server;
+
+    @BeforeEach
+    void startSts() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", exchange -> {
+            try (InputStream in = exchange.getRequestBody()) {
+                requestBody.set(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+            byte[] response = ASSUME_ROLE_RESPONSE.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "text/xml");
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        });
+        server.start();
+        Timings.setEnabled(true);
+    }
+
+    @AfterEach
+    void stopSts() {
+        Timings.setEnabled(false);
+        server.stop(0);
+    }
+
+    @Test
+    void reportHasPhasesAndStsExchanges() {
+        try (StsHttpClient httpClient = new StsHttpClient(1);
+             StsClient sts = StsClient.builder()
+                     .region(Region.US_EAST_1)
+                     .endpointOverride(URI.create("http://localhost:" + server.getAddress().getPort()))
+                     .credentialsProvider(AnonymousCredentialsProvider.create())
+                     .httpClient(httpClient)
+                     .build()) {
+            AssumeRoleWithSamlResponse response;
+            try (Timings.Phase phase = Timings.phase("assumeRole")) {
+                response = sts.assumeRoleWithSAML(builder -> builder
+                        .principalArn("arn:aws:iam::123456789012:saml-provider/Okta")
+                        .roleArn("arn:aws:iam::123456789012:role/Developer")
+                        .samlAssertion("assertion"));
+            }
+
+            assertEquals("ASIAEXAMPLE", response.credentials().accessKeyId());
+            assertTrue(requestBody.get().contains("Action=AssumeRoleWithSAML"), requestBody.get());
+        }
+
+        JSONObject report = Timings.getReport();
+        assertTrue(report.has("startedAt"));
+        assertTrue(report.has("elapsedMillis"));
+        assertNotNull(find(report.getJSONArray("phases"), "name", "assumeRole"));
+
+        JSONObject exchange = find(report.getJSONArray("http"), "host", "localhost");
+        assertNotNull(exchange, report.toString(2));
+        assertEquals("POST", exchange.getString("method"));
+        assertEquals("/", exchange.getString("path"));
+        assertEquals(200, exchange.getInt("status"));
+        for (String field : new String[] {"startMillis", "dnsMillis", "connectMillis", "tlsMillis", "ttfbMillis", "bodyMillis"}) {
+            assertTrue(exchange.getDouble(field) >= 0, field);
+        }
+    }
+
+    @Test
+    void nothingIsRecordedWhenDisabled() {
+        Timings.setEnabled(false);
+
+        assertFalse(Timings.isEnabled());
+        assertNull(Timings.startExchange("GET", "localhost", "/"));
+        try (Timings.Phase phase = Timings.phase("disabled")) {
+            assertNotNull(phase);
+        }
+        assertNull(find(Timings.getReport().getJSONArray("phases"), "name", "disabled"));
+    }
+
+    private static JSONObject find(JSONArray records, String key, String value) {
+        for (int i = 0; i < records.length(); i++) {
+            JSONObject record = records.getJSONObject(i);
+            if (value.equals(record.optString(key))) {
+                return record;
+            }
+        }
+        return null;
+    }
+}
@@ -43,7 +43,9 @@ class OktaSamlTest {
         OktaAuthnClient oktaAuthnClient = new OktaAuthnClientImpl();
         OktaAuthentication oktaAuthentication = new OktaAuthentication(environment, oktaMFA, userConsole, oktaAuthnClient);
         OktaAppClient oktaAppClient = mock(OktaAppClient.class);
-        OktaSaml oktaSaml = new OktaSaml(environment, oktaAuthentication, oktaAppClient);
+        OktaSessionManager oktaSessionManager = mock(OktaSessionManager.class);
+        when(oktaSessionManager.hasActiveSession()).thenReturn(true);
+        OktaSaml oktaSaml = new OktaSaml(environment, oktaAuthentication, oktaAppClient, oktaSessionManager);
 
         Document document = Jsoup.parse(
                 // Load a sanitized copy of the real Okta Amazon Web Services app response
@@ -58,4 +60,14 @@ class OktaSamlTest {
 
         assertEquals(EXPECTED_SAML_RESPONSE, samlResponse);
     }
+
+    @Test
+    void getSamlResponseWithoutBrowserLogin() {
+        OktaAwsCliEnvironment environment = new OktaAwsCliEnvironment(true, null, null, null, null, null, "https://acmecorp.oktapreview.com/home/amazon_aws/0oa5zrwfs815KJmVF0h7/137", null, 0, null, null, false, null);
+        OktaSaml oktaSaml = new OktaSaml(environment, null, mock(OktaAppClient.class), mock(OktaSessionManager.class));
+
+        IllegalStateException exception = assertThrows(IllegalStateException.class, oktaSaml::getSamlResponse);
+
+        assertTrue(exception.getMessage().contains(OktaSaml.BROWSER_LOGIN_JAR));
+    }
 }
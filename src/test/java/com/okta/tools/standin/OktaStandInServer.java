@@ -0,0 +1,596 @@
+/*
+ * Copyright 2019 Okta
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.okta.tools.standin;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * <p>An in-process stand-in for an Okta org, the AWS SAML sign-in page and STS, so full logins can be measured
+ * without a real tenant. It serves, over HTTPS on localhost:</p>
+ * <ul>
+ * <li>{@code POST /api/v1/authn}, answering SUCCESS or MFA_REQUIRED with an Okta Verify push factor</li>
+ * <li>the push factor's verify and poll link, answering WAITING a configurable number of times</li>
+ * <li>the AWS app launch page, with the SAMLResponse form once the session token or session cookie is valid</li>
+ * <li>{@code GET /api/v1/sessions/me} and {@code POST /api/v1/sessions/me/lifecycle/refresh} for the session cookie</li>
+ * <li>{@code POST /saml}, the AWS sign-in page listing the roles in the assertion</li>
+ * <li>STS {@code AssumeRoleWithSAML} at the root path, for use as OKTA_STS_ENDPOINT</li>
+ * </ul>
+ * <p>Every request can be delayed, failed with a 503 or rate limited with a 429, see {@link Options}.
+ * The certificate is generated for each server; clients have to trust {@link #getTrustStore()}.</p>
+ */
+public final class OktaStandInServer implements AutoCloseable {
+
+    public static final String TRUST_STORE_PASSWORD = "changeit";
+
+    private static final String APP_PATH = "/home/amazon_aws/0oastandin/272";
+    private static final String FACTOR_ID = "opfstandin";
+    private static final String SESSION_COOKIE = "sid";
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    /**
+     * Behaviour of the stand-in. Faults apply to every request, before it is routed.
+     */
+    public static final class Options {
+        public String username = "user@example.com";
+        public String password = "password";
+        public int roles = 1;
+        public boolean pushMfa;
+        public int pushWaitingPolls = 1;
+        public long latencyMillis;
+        public long jitterMillis;
+        public double errorRate;
+        public int rateLimitPerSecond;
+    }
+
+    private final Options options;
+    private final Path directory;
+    private final Path trustStore;
+    private final HttpsServer server;
+    private final ExecutorService executor;
+    private final String baseUrl;
+
+    private final Map<String, AtomicInteger> pushTransactions = new ConcurrentHashMap<>();
+    private final Set<String> sessionTokens = ConcurrentHashMap.newKeySet();
+    private final Set<String> sessions = ConcurrentHashMap.newKeySet();
+
+    private final Map<String, LongAdder> requests = new ConcurrentSkipListMap<>();
+    private final LongAdder rateLimited = new LongAdder();
+    private final LongAdder injectedErrors = new LongAdder();
+    private long rateLimitSecond;
+    private int rateLimitCount;
+
+    private OktaStandInServer(Options options) throws IOException, GeneralSecurityException {
+        this.options = options;
+        this.directory = Files.createTempDirectory("okta-stand-in");
+        Path keyStore = directory.resolve("stand-in.p12");
+        generateKeyStore(keyStore);
+        this.trustStore = directory.resolve("stand-in-trust.p12");
+        SSLContext sslContext = createSslContext(keyStore, trustStore);
+
+        this.server = HttpsServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.server.setHttpsConfigurator(new HttpsConfigurator(sslContext));
+        this.server.createContext("/", this::handle);
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "okta-stand-in");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server.setExecutor(executor);
+        this.baseUrl = "https://localhost:" + server.getAddress().getPort();
+    }
+
+    /**
+     * Starts a stand-in on an ephemeral localhost port
+     *
+     * @param options The behaviour of the stand-in
+     * @return The running server
+     * @throws IOException if the server or its certificate can't be created
+     */
+    public static OktaStandInServer start(Options options) throws IOException {
+        try {
+            OktaStandInServer standIn = new OktaStandInServer(options);
+            standIn.server.start();
+            return standIn;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return The value for OKTA_ORG
+     */
+    public String getOrg() {
+        return "localhost:" + server.getAddress().getPort();
+    }
+
+    /**
+     * @return The value for OKTA_AWS_APP_URL
+     */
+    public String getAppUrl() {
+        return baseUrl + APP_PATH;
+    }
+
+    /**
+     * @return The value for OKTA_STS_ENDPOINT
+     */
+    public String getStsEndpoint() {
+        return baseUrl;
+    }
+
+    /**
+     * @return A PKCS12 trust store holding the certificate of this server, protected by {@link #TRUST_STORE_PASSWORD}
+     */
+    public Path getTrustStore() {
+        return trustStore;
+    }
+
+    public static String getRoleName(int index) {
+        return "Role" + index;
+    }
+
+    public static String getRoleArn(int index) {
+        return "arn:aws:iam::" + getAccountId(index) + ":role/" + getRoleName(index);
+    }
+
+    /**
+     * @return The number of requests served per endpoint, including faulted ones
+     */
+    public Map<String, Long> getRequestCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        requests.forEach((endpoint, count) -> counts.put(endpoint, count.sum()));
+        return counts;
+    }
+
+    public long getRateLimitedCount() {
+        return rateLimited.sum();
+    }
+
+    public long getInjectedErrorCount() {
+        return injectedErrors.sum();
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.stop(0);
+        executor.shutdownNow();
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String endpoint = getEndpoint(exchange);
+            requests.computeIfAbsent(endpoint, key -> new LongAdder()).increment();
+            delay();
+            if (isRateLimited()) {
+                rateLimited.increment();
+                exchange.getResponseHeaders().add("X-Rate-Limit-Reset", Long.toString(Instant.now().getEpochSecond() + 1));
+                sendJson(exchange, 429, error("E0000047", "API call exceeded rate limit due to too many requests."));
+                return;
+            }
+            if (options.errorRate > 0 && ThreadLocalRandom.current().nextDouble() < options.errorRate) {
+                injectedErrors.increment();
+                sendJson(exchange, 503, error("E0000009", "Internal Server Error"));
+                return;
+            }
+            route(endpoint, exchange);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            sendJson(exchange, 500, error("E0000009", String.valueOf(e)));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private String getEndpoint(HttpExchange exchange) {
+        String path = exchange.getRequestURI().getPath();
+        if (path.equals("/api/v1/authn")) return "authn";
+        if (path.startsWith("/api/v1/authn/factors/")) return "verify";
+        if (path.equals("/api/v1/sessions/me") || path.equals("/api/v1/sessions/me/lifecycle/refresh")) return "session";
+        if (path.equals(APP_PATH)) return "launchApp";
+        if (path.equals("/saml")) return "signinPage";
+        if (path.equals("/")) return "sts";
+        return "unknown";
+    }
+
+    private void route(String endpoint, HttpExchange exchange) throws IOException {
+        switch (endpoint) {
+            case "authn":
+                authn(exchange);
+                break;
+            case "verify":
+                verify(exchange);
+                break;
+            case "session":
+                session(exchange);
+                break;
+            case "launchApp":
+                launchApp(exchange);
+                break;
+            case "signinPage":
+                signinPage(exchange);
+                break;
+            case "sts":
+                assumeRoleWithSaml(exchange);
+                break;
+            default:
+                sendJson(exchange, 404, error("E0000022", "The endpoint does not support the provided HTTP method"));
+        }
+    }
+
+    private void authn(HttpExchange exchange) throws IOException {
+        JSONObject request = new JSONObject(readBody(exchange));
+        if (!options.username.equals(request.optString("username")) || !options.password.equals(request.optString("password"))) {
+            sendJson(exchange, 401, error("E0000004", "Authentication failed"));
+            return;
+        }
+        if (!options.pushMfa) {
+            sendJson(exchange, 200, new JSONObject().put("status", "SUCCESS").put("sessionToken", newSessionToken()));
+            return;
+        }
+        String stateToken = newToken();
+        pushTransactions.put(stateToken, new AtomicInteger());
+        JSONObject factor = new JSONObject()
+                .put("id", FACTOR_ID)
+                .put("factorType", "push")
+                .put("provider", "OKTA")
+                .put("_links", new JSONObject().put("verify", new JSONObject().put("href", getVerifyUrl())));
+        sendJson(exchange, 200, new JSONObject()
+                .put("stateToken", stateToken)
+                .put("status", "MFA_REQUIRED")
+                .put("_embedded", new JSONObject().put("factors", new JSONArray().put(factor))));
+    }
+
+    // Okta verifies and polls push factors on the same link; the first request sends the push
+    private void verify(HttpExchange exchange) throws IOException {
+        String stateToken = new JSONObject(readBody(exchange)).optString("stateToken");
+        AtomicInteger polls = pushTransactions.get(stateToken);
+        if (polls == null) {
+            sendJson(exchange, 403, error("E0000011", "Invalid token provided"));
+            return;
+        }
+        if (polls.getAndIncrement() <= Math.max(1, options.pushWaitingPolls)) {
+            JSONObject poll = new JSONObject().put("name", "poll").put("href", getVerifyUrl());
+            sendJson(exchange, 200, new JSONObject()
+                    .put("stateToken", stateToken)
+                    .put("status", "MFA_CHALLENGE")
+                    .put("factorResult", "WAITING")
+                    .put("_links", new JSONObject().put("poll", poll)));
+            return;
+        }
+        pushTransactions.remove(stateToken);
+        sendJson(exchange, 200, new JSONObject().put("status", "SUCCESS").put("sessionToken", newSessionToken()));
+    }
+
+    // Sessions never end here, so checking and refreshing answer alike
+    private void session(HttpExchange exchange) throws IOException {
+        if (!hasSession(exchange)) {
+            sendJson(exchange, 404, error("E0000007", "Not found: Resource not found: me (Session)"));
+            return;
+        }
+        sendJson(exchange, 200, new JSONObject()
+                .put("id", "standin")
+                .put("status", "ACTIVE")
+                .put("expiresAt", Instant.now().plus(2, ChronoUnit.HOURS).truncatedTo(ChronoUnit.MILLIS).toString()));
+    }
+
+    private void launchApp(HttpExchange exchange) throws IOException {
+        String oneTimeToken = getQueryParameters(exchange.getRequestURI()).get("onetimetoken");
+        boolean authenticated;
+        if (oneTimeToken != null && sessionTokens.remove(oneTimeToken)) {
+            String session = newToken();
+            sessions.add(session);
+            exchange.getResponseHeaders().add("Set-Cookie", SESSION_COOKIE + "=" + session + "; Path=/; Secure; HttpOnly");
+            authenticated = true;
+        } else {
+            authenticated = hasSession(exchange);
+        }
+        if (!authenticated) {
+            sendHtml(exchange, "<!DOCTYPE html><html><body><div id=\"okta-sign-in\"></div></body></html>");
+            return;
+        }
+        sendHtml(exchange, "<!DOCTYPE html><html><body>" +
+                "<form id=\"appForm\" method=\"POST\" action=\"" + baseUrl + "/saml\">" +
+                "<input name=\"SAMLResponse\" type=\"hidden\" value=\"" + createSamlResponse() + "\"/>" +
+                "<input name=\"RelayState\" type=\"hidden\" value=\"\"/>" +
+                "</form></body></html>");
+    }
+
+    private void signinPage(HttpExchange exchange) throws IOException {
+        if (!parseForm(readBody(exchange)).containsKey("SAMLResponse")) {
+            sendHtml(exchange, 400, "<!DOCTYPE html><html><body>Missing SAMLResponse</body></html>");
+            return;
+        }
+        StringBuilder page = new StringBuilder("<!DOCTYPE html><html><body><form id=\"saml_form\"><fieldset>");
+        for (int i = 0; i < options.roles; i++) {
+            page.append("<div class=\"saml-account\"><div class=\"saml-account-name\">Account: account-").append(i)
+                    .append(" (").append(getAccountId(i)).append(")</div><div class=\"saml-account\"><div class=\"saml-role\">")
+                    .append("<label for=\"").append(getRoleArn(i)).append("\" class=\"saml-role-description\">")
+                    .append(getRoleName(i)).append("</label></div></div></div>");
+        }
+        sendHtml(exchange, page.append("</fieldset></form></body></html>").toString());
+    }
+
+    private void assumeRoleWithSaml(HttpExchange exchange) throws IOException {
+        Map<String, String> form = parseForm(readBody(exchange));
+        String roleArn = form.get("RoleArn");
+        if (!"AssumeRoleWithSAML".equals(form.get("Action")) || roleArn == null || !form.containsKey("SAMLAssertion")) {
+            sendXml(exchange, 400, "<ErrorResponse><Error><Type>Sender</Type><Code>InvalidAction</Code>" +
+                    "<Message>Unsupported request</Message></Error><RequestId>" + UUID.randomUUID() + "</RequestId></ErrorResponse>");
+            return;
+        }
+        long durationSeconds = Long.parseLong(form.getOrDefault("DurationSeconds", "3600"));
+        String account = roleArn.substring("arn:aws:iam::".length(), roleArn.indexOf(":role/"));
+        String roleName = roleArn.substring(roleArn.indexOf(":role/") + ":role/".length());
+        sendXml(exchange, 200, "<AssumeRoleWithSAMLResponse xmlns=\"https://sts.amazonaws.com/doc/2011-06-15/\">" +
+                "<AssumeRoleWithSAMLResult>" +
+                "<Credentials>" +
+                "<AccessKeyId>ASIA" + newToken().substring(0, 16).toUpperCase(Locale.ROOT) + "</AccessKeyId>" +
+                "<SecretAccessKey>" + newToken() + "</SecretAccessKey>" +
+                "<SessionToken>" + newToken() + newToken() + "</SessionToken>" +
+                "<Expiration>" + Instant.now().plusSeconds(durationSeconds).truncatedTo(ChronoUnit.SECONDS) + "</Expiration>" +
+                "</Credentials>" +
+                "<AssumedRoleUser>" +
+                "<Arn>arn:aws:sts::" + account + ":assumed-role/" + roleName + "/" + options.username + "</Arn>" +
+                "<AssumedRoleId>AROASTANDIN:" + options.username + "</AssumedRoleId>" +
+                "</AssumedRoleUser>" +
+                "<Subject>" + options.username + "</Subject>" +
+                "<SubjectType>persistent</SubjectType>" +
+                "<Issuer>http://www.okta.com/exkstandin</Issuer>" +
+                "<Audience>https://signin.aws.amazon.com/saml</Audience>" +
+                "</AssumeRoleWithSAMLResult>" +
+                "<ResponseMetadata><RequestId>" + UUID.randomUUID() + "</RequestId></ResponseMetadata>" +
+                "</AssumeRoleWithSAMLResponse>");
+    }
+
+    private String createSamlResponse() {
+        Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        StringBuilder xml = new StringBuilder()
+                .append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>")
+                .append("<saml2p:Response xmlns:saml2p=\"urn:oasis:names:tc:SAML:2.0:protocol\" Destination=\"")
+                .append(baseUrl).append("/saml\" ID=\"id").append(newToken()).append("\" IssueInstant=\"").append(now)
+                .append("\" Version=\"2.0\">")
+                .append("<saml2p:Status><saml2p:StatusCode Value=\"urn:oasis:names:tc:SAML:2.0:status:Success\"/></saml2p:Status>")
+                .append("<saml2:Assertion xmlns:saml2=\"urn:oasis:names:tc:SAML:2.0:assertion\" ID=\"id").append(newToken())
+                .append("\" IssueInstant=\"").append(now).append("\" Version=\"2.0\">")
+                .append("<saml2:Issuer>http://www.okta.com/exkstandin</saml2:Issuer>")
+                .append("<saml2:Subject><saml2:NameID>").append(options.username).append("</saml2:NameID></saml2:Subject>")
+                .append("<saml2:Conditions NotBefore=\"").append(now.minus(5, ChronoUnit.MINUTES))
+                .append("\" NotOnOrAfter=\"").append(now.plus(5, ChronoUnit.MINUTES)).append("\"/>")
+                .append("<saml2:AuthnStatement AuthnInstant=\"").append(now).append("\" SessionNotOnOrAfter=\"")
+                .append(now.plus(2, ChronoUnit.HOURS)).append("\"/>")
+                .append("<saml2:AttributeStatement>")
+                .append("<saml2:Attribute Name=\"https://aws.amazon.com/SAML/Attributes/Role\">");
+        for (int i = 0; i < options.roles; i++) {
+            xml.append("<saml2:AttributeValue>arn:aws:iam::").append(getAccountId(i)).append(":saml-provider/okta,")
+                    .append(getRoleArn(i)).append("</saml2:AttributeValue>");
+        }
+        xml.append("</saml2:Attribute>")
+                .append("<saml2:Attribute Name=\"https://aws.amazon.com/SAML/Attributes/RoleSessionName\">")
+                .append("<saml2:AttributeValue>").append(options.username).append("</saml2:AttributeValue></saml2:Attribute>")
+                .append("<saml2:Attribute Name=\"https://aws.amazon.com/SAML/Attributes/SessionDuration\">")
+                .append("<saml2:AttributeValue>3600</saml2:AttributeValue></saml2:Attribute>")
+                .append("</saml2:AttributeStatement></saml2:Assertion></saml2p:Response>");
+        return Base64.getEncoder().encodeToString(xml.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private boolean hasSession(HttpExchange exchange) {
+        for (String header : exchange.getRequestHeaders().getOrDefault("Cookie", Collections.emptyList())) {
+            for (String cookie : header.split(";")) {
+                String[] nameValue = cookie.trim().split("=", 2);
+                if (nameValue.length == 2 && SESSION_COOKIE.equals(nameValue[0]) && sessions.contains(nameValue[1])) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void delay() throws InterruptedException {
+        long delay = options.latencyMillis;
+        if (options.jitterMillis > 0) {
+            delay += ThreadLocalRandom.current().nextLong(options.jitterMillis + 1);
+        }
+        if (delay > 0) {
+            TimeUnit.MILLISECONDS.sleep(delay);
+        }
+    }
+
+    private synchronized boolean isRateLimited() {
+        if (options.rateLimitPerSecond <= 0) return false;
+        long second = System.currentTimeMillis() / 1000;
+        if (second != rateLimitSecond) {
+            rateLimitSecond = second;
+            rateLimitCount = 0;
+        }
+        return ++rateLimitCount > options.rateLimitPerSecond;
+    }
+
+    private String getVerifyUrl() {
+        return baseUrl + "/api/v1/authn/factors/" + FACTOR_ID + "/verify";
+    }
+
+    private String newSessionToken() {
+        String sessionToken = newToken();
+        sessionTokens.add(sessionToken);
+        return sessionToken;
+    }
+
+    private static String newToken() {
+        byte[] bytes = new byte[24];
+        RANDOM.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    private static String getAccountId(int index) {
+        return String.format("%012d", index);
+    }
+
+    private static JSONObject error(String errorCode, String errorSummary) {
+        return new JSONObject()
+                .put("errorCode", errorCode)
+                .put("errorSummary", errorSummary)
+                .put("errorId", newToken())
+                .put("errorCauses", new JSONArray());
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        try (InputStream body = exchange.getRequestBody()) {
+            return new String(body.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static Map<String, String> getQueryParameters(URI uri) {
+        return uri.getRawQuery() == null ? Collections.emptyMap() : parseForm(uri.getRawQuery());
+    }
+
+    private static Map<String, String> parseForm(String form) {
+        Map<String, String> parameters = new HashMap<>();
+        for (String pair : form.split("&")) {
+            if (pair.isEmpty()) continue;
+            String[] nameValue = pair.split("=", 2);
+            parameters.put(URLDecoder.decode(nameValue[0], StandardCharsets.UTF_8),
+                    nameValue.length == 2 ? URLDecoder.decode(nameValue[1], StandardCharsets.UTF_8) : "");
+        }
+        return parameters;
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, JSONObject body) throws IOException {
+        send(exchange, status, "application/json", body.toString());
+    }
+
+    private static void sendHtml(HttpExchange exchange, String body) throws IOException {
+        sendHtml(exchange, 200, body);
+    }
+
+    private static void sendHtml(HttpExchange exchange, int status, String body) throws IOException {
+        send(exchange, status, "text/html;charset=utf-8", body);
+    }
+
+    private static void sendXml(HttpExchange exchange, int status, String body) throws IOException {
+        send(exchange, status, "text/xml", body);
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream responseBody = exchange.getResponseBody()) {
+            responseBody.write(bytes);
+        }
+    }
+
+    // A throwaway certificate for localhost, made with the JDK's keytool so no test dependency is needed
+    private static void generateKeyStore(Path keyStore) throws IOException {
+        String keytool = Paths.get(System.getProperty("java.home"), "bin", "keytool").toString();
+        Process process = new ProcessBuilder(keytool, "-genkeypair", "-alias", "stand-in",
+                "-keyalg", "EC", "-groupname", "secp256r1", "-validity", "2",
+                "-dname", "CN=localhost", "-ext", "SAN=dns:localhost,ip:127.0.0.1",
+                "-storetype", "PKCS12", "-keystore", keyStore.toString(),
+                "-storepass", TRUST_STORE_PASSWORD, "-keypass", TRUST_STORE_PASSWORD)
+                .redirectErrorStream(true)
+                .start();
+        try {
+            String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            if (process.waitFor() != 0) {
+                throw new IllegalStateException("keytool failed: " + output);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+
+    private static SSLContext createSslContext(Path keyStorePath, Path trustStorePath) throws IOException, GeneralSecurityException {
+        char[] password = TRUST_STORE_PASSWORD.toCharArray();
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try (InputStream in = Files.newInputStream(keyStorePath)) {
+            keyStore.load(in, password);
+        }
+
+        KeyStore trustStore = KeyStore.getInstance("PKCS12");
+        trustStore.load(null, password);
+        trustStore.setCertificateEntry("stand-in", keyStore.getCertificate("stand-in"));
+        try (OutputStream out = Files.newOutputStream(trustStorePath)) {
+            trustStore.store(out, password);
+        }
+
+        KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(keyStore, password);
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(keyManagerFactory.getKeyManagers(), null, null);
+        return sslContext;
+    }
+
+    /**
+     * Builds a client SSL context trusting only the given stand-in trust store
+     *
+     * @param trustStorePath The trust store of a running stand-in
+     * @return An SSL context for clients of the stand-in
+     * @throws IOException if the trust store can't be read
+     */
+    public static SSLContext createClientSslContext(Path trustStorePath) throws IOException {
+        try {
+            KeyStore trustStore = KeyStore.getInstance("PKCS12");
+            try (InputStream in = Files.newInputStream(trustStorePath)) {
+                trustStore.load(in, TRUST_STORE_PASSWORD.toCharArray());
+            }
+            TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            trustManagerFactory.init(trustStore);
+            SSLContext sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(null, trustManagerFactory.getTrustManagers(), null);
+            return sslContext;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}